@@ -0,0 +1,88 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Measures how long it takes to build a thread-safe index from a directory of
+ * HTML files, for several numbers of worker threads. An index with a single
+ * shard, which has a single lock, is compared to one with
+ * {@link ThreadSafeInvertedIndex#DEFAULT_SHARDS} shards.
+ *
+ * Usage: java BuildBenchmark directory [rounds] [threads...]
+ */
+public class BuildBenchmark {
+
+	/** The default number of rounds, of which the fastest is reported. */
+	public static final int DEFAULT_ROUNDS = 3;
+
+	/** The default numbers of worker threads to measure. */
+	private static final int[] DEFAULT_THREADS = { 1, 2, 4, 8, 16, 32 };
+
+	/**
+	 * Returns the fastest time to build an index from a directory.
+	 *
+	 * @param path
+	 *            directory to build the index from
+	 * @param shards
+	 *            number of shards of the index
+	 * @param threads
+	 *            number of worker threads
+	 * @param rounds
+	 *            number of times to build the index
+	 * @return fastest build time in nanoseconds
+	 * @throws IOException
+	 *             if the directory cannot be read
+	 */
+	public static long build(Path path, int shards, int threads, int rounds) throws IOException {
+		long best = Long.MAX_VALUE;
+		for (int round = 0; round < rounds; round++) {
+			ThreadSafeInvertedIndex index = new ThreadSafeInvertedIndex(shards);
+			WorkQueue queue = new WorkQueue(threads);
+			try {
+				long start = System.nanoTime();
+				MultithreadedInvertedIndexBuilder.throughDirectory(path, index, queue);
+				best = Math.min(best, System.nanoTime() - start);
+			}
+			finally {
+				queue.shutdown();
+			}
+		}
+		return best;
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.out.println("Usage: java BuildBenchmark directory [rounds] [threads...]");
+			return;
+		}
+
+		Path path = Paths.get(args[0]);
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ROUNDS;
+		int[] threads = DEFAULT_THREADS;
+		if (args.length > 2) {
+			threads = new int[args.length - 2];
+			for (int i = 0; i < threads.length; i++) {
+				threads[i] = Integer.parseInt(args[i + 2]);
+			}
+		}
+
+		// builds once without measuring, so both indexes run on warmed up code
+		build(path, ThreadSafeInvertedIndex.DEFAULT_SHARDS, threads[0], 1);
+
+		System.out.printf("Best of %d builds of %s, in ms, by number of threads:%n", rounds, path);
+		System.out.printf("%-12s", "threads");
+		for (int count : threads) {
+			System.out.printf("%8d", count);
+		}
+		System.out.println();
+
+		int[] shards = { 1, ThreadSafeInvertedIndex.DEFAULT_SHARDS };
+		for (int shard : shards) {
+			System.out.printf("%-12s", shard == 1 ? "single lock" : shard + " shards");
+			for (int count : threads) {
+				System.out.printf("%8.0f", build(path, shard, count, rounds) / 1e6);
+			}
+			System.out.println();
+		}
+	}
+}
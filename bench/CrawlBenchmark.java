@@ -0,0 +1,116 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.Executors;
+
+/**
+ * Measures how many pages per second the crawler fetches and indexes from a
+ * {@link SlowServer} that answers every request after a delay, with pages
+ * fetched on the work queue that indexes them, compared to fetched on a
+ * separate executor with several numbers of fetches at once. The executor
+ * uses a virtual thread per fetch on Java 21 and later, and a pool of threads
+ * before, so the benchmark is worth running on both. Besides the pages per
+ * second, the most platform threads alive at once during each crawl are
+ * reported, and every crawl is checked to have indexed every page.
+ *
+ * Usage: java CrawlBenchmark [delay] [pages] [fetchers...]
+ */
+public class CrawlBenchmark {
+
+	/** The default number of rounds, of which the fastest is reported. */
+	public static final int DEFAULT_ROUNDS = 3;
+
+	/** The default number of milliseconds the server waits before answering. */
+	public static final int DEFAULT_DELAY = 50;
+
+	/** The default number of pages every crawl fetches. */
+	public static final int DEFAULT_PAGES = 1000;
+
+	/** The default numbers of fetches at once to measure, where 0 is none. */
+	private static final int[] DEFAULT_FETCHERS = { 0, 16, 64, 256 };
+
+	/**
+	 * Returns whether the running Java has virtual threads, which is when the
+	 * crawler fetches on them.
+	 *
+	 * @return true if there are virtual threads
+	 */
+	private static boolean virtual() {
+		try {
+			Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return true;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Crawls every page of a server a number of times.
+	 *
+	 * @param server
+	 *            server to crawl
+	 * @param fetchers
+	 *            largest number of pages to fetch at once, or 0 to fetch on the
+	 *            work queue
+	 * @param pages
+	 *            number of pages to crawl
+	 * @param rounds
+	 *            number of times to crawl
+	 * @return fastest time in nanoseconds, and the most platform threads alive
+	 *         at once during any crawl
+	 * @throws IOException
+	 *             if the URL of the server cannot be made
+	 */
+	public static long[] run(SlowServer server, int fetchers, int pages, int rounds) throws IOException {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		long best = Long.MAX_VALUE;
+		long peak = 0;
+		for (int round = 0; round < rounds; round++) {
+			ThreadSafeInvertedIndex index = new ThreadSafeInvertedIndex();
+			WebCrawler crawler = new WebCrawler(index, new WebPageSnippets(), fetchers);
+
+			threads.resetPeakThreadCount();
+			long start = System.nanoTime();
+			crawler.crawl(server.seed(), pages);
+			best = Math.min(best, System.nanoTime() - start);
+			peak = Math.max(peak, threads.getPeakThreadCount());
+			crawler.queue().shutdown();
+
+			int indexed = index.search(new String[] { SlowServer.WORD }, true, 0).size();
+			if (indexed != pages) {
+				throw new IllegalStateException("Crawled " + indexed + " of " + pages + " pages with " + fetchers
+						+ " fetchers");
+			}
+		}
+		return new long[] { best, peak };
+	}
+
+	public static void main(String[] args) throws IOException {
+		int delay = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_DELAY;
+		int pages = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PAGES;
+		int[] fetchers = DEFAULT_FETCHERS;
+		if (args.length > 2) {
+			fetchers = new int[args.length - 2];
+			for (int i = 0; i < fetchers.length; i++) {
+				fetchers[i] = Integer.parseInt(args[i + 2]);
+			}
+		}
+
+		try (SlowServer server = new SlowServer(delay, pages)) {
+			// crawls a few pages each way without measuring, so both run on warmed up code
+			for (int count : fetchers) {
+				run(server, count, Math.min(pages, 100), 1);
+			}
+
+			System.out.printf("Java %s, fetching on %s; best of %d crawls of %d pages, %d ms per page:%n",
+					System.getProperty("java.version"), virtual() ? "virtual threads" : "a pool of threads",
+					DEFAULT_ROUNDS, pages, delay);
+			System.out.printf("%8s %10s %10s %10s%n", "fetchers", "seconds", "pages/s", "threads");
+			for (int count : fetchers) {
+				long[] result = run(server, count, pages, DEFAULT_ROUNDS);
+				System.out.printf("%8d %10.2f %10.0f %10d%n", count, result[0] / 1e9, pages / (result[0] / 1e9),
+						result[1]);
+			}
+		}
+	}
+}
@@ -0,0 +1,90 @@
+
+/**
+ * A simple custom lock that allows simultaneously read operations, but
+ * disallows simultaneously write and read/write operations.
+ *
+ * Does not implement any form or priority to read or write operations. The
+ * first thread that acquires the appropriate lock should be allowed to
+ * continue.
+ *
+ * This is the lock as it was before {@link ReadWriteLock} preferred writers,
+ * kept unchanged so {@link ReadWriteLockBenchmark} can compare the two.
+ */
+public class MonitorReadWriteLock {
+	private int readers;
+	private int writers;
+
+	/**
+	 * Initializes a multi-reader single-writer lock.
+	 */
+	public MonitorReadWriteLock() {
+		readers = 0;
+		writers = 0;
+	}
+
+	/**
+	 * Will wait until there are no active writers in the system, and then will
+	 * increase the number of active readers.
+	 * @throws InterruptedException 
+	 */
+	public synchronized void lockReadOnly() {
+		while (writers > 0) {
+			try {
+				this.wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		readers++;
+	}
+
+	/**
+	 * Will decrease the number of active readers, and notify any waiting
+	 * threads if necessary.
+	 */
+	public synchronized void unlockReadOnly() {
+		readers--;
+		if (readers == 0) {
+			this.notifyAll();
+		}
+	}
+
+	/**
+	 * Will wait until there are no active readers or writers in the system, and
+	 * then will increase the number of active writers.
+	 * @throws InterruptedException 
+	 */
+	public synchronized void lockReadWrite() {
+		while (writers > 0 || readers > 0) {
+			try {
+				this.wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		writers++;
+	}
+
+	/**
+	 * Will increase the number of active writers if there are no active readers
+	 * or writers in the system, without waiting.
+	 *
+	 * @return true if the lock was acquired, false otherwise
+	 */
+	public synchronized boolean tryLockReadWrite() {
+		if (writers > 0 || readers > 0) {
+			return false;
+		}
+		writers++;
+		return true;
+	}
+
+	/**
+	 * Will decrease the number of active writers, and notify any waiting
+	 * threads if necessary.
+	 */
+	public synchronized void unlockReadWrite() {
+		writers--;
+		this.notifyAll();
+	}
+}
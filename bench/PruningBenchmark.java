@@ -0,0 +1,218 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+
+/**
+ * Measures how long top-k searches take with the blocks of postings that
+ * cannot enter the results skipped by a {@link MaxScoreMatcher}, compared to
+ * scoring every matching posting, on both a frozen and a mapped index. Before
+ * anything is measured, the results of both are checked to be the same for
+ * every query.
+ *
+ * The index is either a directory of HTML files, which is built, frozen, and
+ * written to a temporary segment file to map, or a segment file written with
+ * -save, which is mapped and also frozen. The queries are the first lines of a
+ * query file that have any words.
+ *
+ * Usage: java PruningBenchmark index queries [count] [rounds]
+ */
+public class PruningBenchmark {
+
+	/** The default number of rounds, of which the fastest is reported. */
+	public static final int DEFAULT_ROUNDS = 5;
+
+	/** The default number of queries to search. */
+	public static final int DEFAULT_QUERIES = 300;
+
+	/** Whether each measured case searches for exact matches, and its limit. */
+	private static final boolean[] EXACT = { true, true, false };
+	private static final int[] LIMITS = { 10, 100, 10 };
+
+	/**
+	 * The searches both indexes have, so the same queries can run on either
+	 * of them.
+	 */
+	private interface Index {
+		public ArrayList<SearchResult> search(String[] words, boolean exact, int limit, boolean pruned);
+	}
+
+	/**
+	 * Returns the searches of a frozen index.
+	 *
+	 * @param index
+	 *            index to search
+	 * @return searches of the index
+	 */
+	private static Index searches(final FrozenInvertedIndex index) {
+		return new Index() {
+			@Override
+			public ArrayList<SearchResult> search(String[] words, boolean exact, int limit, boolean pruned) {
+				return pruned ? index.search(words, exact, limit) : index.exhaustiveSearch(words, exact, limit);
+			}
+		};
+	}
+
+	/**
+	 * Returns the searches of a mapped index.
+	 *
+	 * @param index
+	 *            index to search
+	 * @return searches of the index
+	 */
+	private static Index searches(final MappedInvertedIndex index) {
+		return new Index() {
+			@Override
+			public ArrayList<SearchResult> search(String[] words, boolean exact, int limit, boolean pruned) {
+				return pruned ? index.search(words, exact, limit) : index.exhaustiveSearch(words, exact, limit);
+			}
+		};
+	}
+
+	/**
+	 * Reads the first queries of a query file.
+	 *
+	 * @param path
+	 *            query file
+	 * @param count
+	 *            number of queries to read
+	 * @return words of each query
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	private static ArrayList<String[]> readQueries(Path path, int count) throws IOException {
+		ArrayList<String[]> queries = new ArrayList<>();
+		try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+			String line;
+			while (queries.size() < count && (line = reader.readLine()) != null) {
+				String[] words = WordParser.parseWords(line);
+				if (words.length > 0) {
+					queries.add(words);
+				}
+			}
+		}
+		return queries;
+	}
+
+	/**
+	 * Returns the number of queries whose pruned results differ from their
+	 * exhaustive results.
+	 *
+	 * @param index
+	 *            index to search
+	 * @param queries
+	 *            queries to search
+	 * @param exact
+	 *            true if searching for exact matches
+	 * @param limit
+	 *            maximum number of results of each query
+	 * @return number of queries with different results
+	 */
+	public static int differences(Index index, ArrayList<String[]> queries, boolean exact, int limit) {
+		int different = 0;
+		for (String[] query : queries) {
+			String pruned = index.search(query, exact, limit, true).toString();
+			String exhaustive = index.search(query, exact, limit, false).toString();
+			if (!pruned.equals(exhaustive)) {
+				different++;
+			}
+		}
+		return different;
+	}
+
+	/**
+	 * Returns the fastest time to search every query.
+	 *
+	 * @param index
+	 *            index to search
+	 * @param queries
+	 *            queries to search
+	 * @param exact
+	 *            true if searching for exact matches
+	 * @param limit
+	 *            maximum number of results of each query
+	 * @param pruned
+	 *            true to skip the blocks that cannot enter the results, false
+	 *            to score every matching posting
+	 * @param rounds
+	 *            number of times to search the queries
+	 * @return fastest time in nanoseconds
+	 */
+	public static long run(Index index, ArrayList<String[]> queries, boolean exact, int limit, boolean pruned,
+			int rounds) {
+		long best = Long.MAX_VALUE;
+		long found = 0;
+		for (int round = 0; round < rounds; round++) {
+			long start = System.nanoTime();
+			for (String[] query : queries) {
+				found += index.search(query, exact, limit, pruned).size();
+			}
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		if (found < 0) {
+			System.out.println(found);
+		}
+		return best;
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.out.println("Usage: java PruningBenchmark index queries [count] [rounds]");
+			return;
+		}
+
+		Path path = Paths.get(args[0]);
+		int count = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_QUERIES;
+		int rounds = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_ROUNDS;
+
+		FrozenInvertedIndex frozen;
+		MappedInvertedIndex mapped;
+		if (Files.isDirectory(path)) {
+			InvertedIndex built = new InvertedIndex();
+			InvertedIndexBuilder.throughDirectory(path, built);
+			frozen = built.freeze();
+			built = null;
+
+			Path segment = Files.createTempFile("pruning", ".segment");
+			segment.toFile().deleteOnExit();
+			frozen.toSegment(segment);
+			mapped = new MappedInvertedIndex(segment);
+		}
+		else {
+			mapped = new MappedInvertedIndex(path);
+			frozen = mapped.toFrozen();
+		}
+
+		ArrayList<String[]> queries = readQueries(Paths.get(args[1]), count);
+		Index[] indexes = { searches(frozen), searches(mapped) };
+
+		// checks every case once, which also runs every search on warmed up code before measuring
+		for (int c = 0; c < LIMITS.length; c++) {
+			for (Index index : indexes) {
+				int different = differences(index, queries, EXACT[c], LIMITS[c]);
+				if (different > 0) {
+					System.out.printf("%d of %d queries have different pruned results%n", different, queries.size());
+					return;
+				}
+			}
+		}
+
+		System.out.printf("Best of %d rounds of %d queries over %d words, in microseconds per query:%n", rounds,
+				queries.size(), frozen.numWords());
+		System.out.printf("%-16s %12s %12s %12s %12s%n", "case", "frozen all", "frozen pruned", "mapped all",
+				"mapped pruned");
+		for (int c = 0; c < LIMITS.length; c++) {
+			System.out.printf("%-16s", (EXACT[c] ? "exact" : "partial") + " top " + LIMITS[c]);
+			for (Index index : indexes) {
+				for (boolean pruned : new boolean[] { false, true }) {
+					long time = run(index, queries, EXACT[c], LIMITS[c], pruned, rounds);
+					System.out.printf(" %12.1f", time / 1e3 / queries.size());
+				}
+			}
+			System.out.println();
+		}
+	}
+}
@@ -0,0 +1,324 @@
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures how the read/write lock behaves under contention, compared to the
+ * {@link MonitorReadWriteLock} it replaced, for several numbers of reader
+ * threads. One writer thread locks for writing about every
+ * {@link #WRITE_PAUSE} nanoseconds while the readers read as fast as they can,
+ * and the reads per second, writes per second and longest wait of the writer
+ * are reported. Two workloads are measured: lookups, where readers look up
+ * words in a map under the read lock, as {@link ThreadSafeInvertedIndex} does,
+ * and fields, where readers read two fields the writer changes together, which
+ * the current lock reads optimistically and the old lock under its read lock.
+ *
+ * Usage: java ReadWriteLockBenchmark [millis] [readers...]
+ */
+public class ReadWriteLockBenchmark {
+
+	/** The default number of milliseconds each measurement runs for. */
+	public static final int DEFAULT_MILLIS = 2000;
+
+	/** The default numbers of reader threads to measure. */
+	private static final int[] DEFAULT_READERS = { 1, 4, 16 };
+
+	/** The number of words in the map of the lookup workload. */
+	private static final int WORDS = 10000;
+
+	/** The number of nanoseconds the writer pauses between writes. */
+	private static final int WRITE_PAUSE = 200000;
+
+	/** Keeps the result of the reads, so they are not optimized away. */
+	private static volatile long sink;
+
+	/**
+	 * The operations both locks have, so the same workloads can run on either
+	 * of them.
+	 */
+	private interface Lock {
+		public void lockReadOnly();
+
+		public void unlockReadOnly();
+
+		public void lockReadWrite();
+
+		public void unlockReadWrite();
+
+		/** Returns a stamp to read optimistically with, or 0 to lock instead. */
+		public long tryOptimisticRead();
+
+		public boolean validate(long stamp);
+	}
+
+	/**
+	 * The state the readers read and the writer changes. The writer always
+	 * changes both fields together, so a consistent read sees total equal to
+	 * twice count.
+	 */
+	private static class State {
+		private final TreeMap<String, Integer> words;
+		private long count;
+		private long total;
+
+		public State() {
+			words = new TreeMap<>();
+			for (int i = 0; i < WORDS; i++) {
+				words.put("w" + i, i);
+			}
+		}
+	}
+
+	/**
+	 * Returns a new lock.
+	 *
+	 * @param monitor
+	 *            true for the old lock, false for the current one
+	 * @return lock
+	 */
+	private static Lock newLock(boolean monitor) {
+		if (monitor) {
+			final MonitorReadWriteLock lock = new MonitorReadWriteLock();
+			return new Lock() {
+				@Override
+				public void lockReadOnly() {
+					lock.lockReadOnly();
+				}
+
+				@Override
+				public void unlockReadOnly() {
+					lock.unlockReadOnly();
+				}
+
+				@Override
+				public void lockReadWrite() {
+					lock.lockReadWrite();
+				}
+
+				@Override
+				public void unlockReadWrite() {
+					lock.unlockReadWrite();
+				}
+
+				@Override
+				public long tryOptimisticRead() {
+					return 0;
+				}
+
+				@Override
+				public boolean validate(long stamp) {
+					return false;
+				}
+			};
+		}
+
+		final ReadWriteLock lock = new ReadWriteLock();
+		return new Lock() {
+			@Override
+			public void lockReadOnly() {
+				lock.lockReadOnly();
+			}
+
+			@Override
+			public void unlockReadOnly() {
+				lock.unlockReadOnly();
+			}
+
+			@Override
+			public void lockReadWrite() {
+				lock.lockReadWrite();
+			}
+
+			@Override
+			public void unlockReadWrite() {
+				lock.unlockReadWrite();
+			}
+
+			@Override
+			public long tryOptimisticRead() {
+				return lock.tryOptimisticRead();
+			}
+
+			@Override
+			public boolean validate(long stamp) {
+				return lock.validate(stamp);
+			}
+		};
+	}
+
+	/**
+	 * Looks up a word under the read lock.
+	 *
+	 * @param lock
+	 *            lock to read under
+	 * @param state
+	 *            state to read
+	 * @param word
+	 *            word to look up
+	 * @return true if the map has the word
+	 */
+	private static boolean lookup(Lock lock, State state, String word) {
+		lock.lockReadOnly();
+		try {
+			return state.words.containsKey(word);
+		}
+		finally {
+			lock.unlockReadOnly();
+		}
+	}
+
+	/**
+	 * Reads both fields, optimistically if the lock allows it, and under the
+	 * read lock otherwise.
+	 *
+	 * @param lock
+	 *            lock to read under
+	 * @param state
+	 *            state to read
+	 * @return count that was read
+	 */
+	private static long fields(Lock lock, State state) {
+		long stamp = lock.tryOptimisticRead();
+		long count = state.count;
+		long total = state.total;
+		if (!lock.validate(stamp)) {
+			lock.lockReadOnly();
+			try {
+				count = state.count;
+				total = state.total;
+			}
+			finally {
+				lock.unlockReadOnly();
+			}
+		}
+
+		if (total != 2 * count) {
+			throw new IllegalStateException("Read " + count + " and " + total + ", which were never written together");
+		}
+		return count;
+	}
+
+	/**
+	 * Runs readers and a writer on a lock for a while.
+	 *
+	 * @param monitor
+	 *            true for the old lock, false for the current one
+	 * @param lookups
+	 *            true for the lookup workload, false for the fields workload
+	 * @param readers
+	 *            number of reader threads
+	 * @param millis
+	 *            number of milliseconds to run for
+	 * @return reads per second, writes per second, and the longest wait of the
+	 *         writer in nanoseconds
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for the threads
+	 */
+	public static double[] run(boolean monitor, final boolean lookups, int readers, int millis)
+			throws InterruptedException {
+		final Lock lock = newLock(monitor);
+		final State state = new State();
+		final AtomicLong reads = new AtomicLong();
+		final long[] writes = new long[2];
+		final long end = System.nanoTime() + millis * 1000000L;
+
+		Thread[] threads = new Thread[readers + 1];
+		for (int r = 0; r < readers; r++) {
+			final int first = r;
+			threads[r] = new Thread() {
+				@Override
+				public void run() {
+					long count = 0;
+					long found = 0;
+					int word = first;
+					while (System.nanoTime() < end) {
+						for (int i = 0; i < 256; i++) {
+							if (lookups) {
+								// a fifth of the words are only added by the writer
+								found += lookup(lock, state, "w" + (word++ % (WORDS + WORDS / 5))) ? 1 : 0;
+							}
+							else {
+								found += fields(lock, state);
+							}
+						}
+						count += 256;
+					}
+					reads.addAndGet(count);
+					sink = found;
+				}
+			};
+		}
+
+		threads[readers] = new Thread() {
+			@Override
+			public void run() {
+				int i = 0;
+				while (System.nanoTime() < end) {
+					long start = System.nanoTime();
+					lock.lockReadWrite();
+					writes[1] = Math.max(writes[1], System.nanoTime() - start);
+					try {
+						if (lookups) {
+							state.words.put("w" + (WORDS + i % (WORDS / 5)), i);
+						}
+						else {
+							state.count++;
+							state.total += 2;
+						}
+					}
+					finally {
+						lock.unlockReadWrite();
+					}
+					writes[0]++;
+					i++;
+
+					try {
+						Thread.sleep(0, WRITE_PAUSE);
+					}
+					catch (InterruptedException e) {
+						return;
+					}
+				}
+			}
+		};
+
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		double seconds = millis / 1000.0;
+		return new double[] { reads.get() / seconds, writes[0] / seconds, writes[1] };
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		int millis = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_MILLIS;
+		int[] readers = DEFAULT_READERS;
+		if (args.length > 1) {
+			readers = new int[args.length - 1];
+			for (int i = 0; i < readers.length; i++) {
+				readers[i] = Integer.parseInt(args[i + 1]);
+			}
+		}
+
+		// runs every combination once without measuring, so all of them run on warmed up code
+		for (int i = 0; i < 4; i++) {
+			run(i < 2, i % 2 == 0, readers[0], millis / 4);
+		}
+
+		System.out.printf("%d ms each; reads in millions per second, longest writer wait in ms:%n", millis);
+		System.out.printf("%-9s %-5s %8s %10s %10s %12s%n", "workload", "lock", "readers", "reads/s", "writes/s",
+				"worst wait");
+		String[] workloads = { "lookups", "fields" };
+		for (int w = 0; w < workloads.length; w++) {
+			for (int count : readers) {
+				for (int l = 0; l < 2; l++) {
+					double[] result = run(l == 0, w == 0, count, millis);
+					System.out.printf("%-9s %-5s %8d %10.2f %10.0f %12.1f%n", workloads[w], l == 0 ? "old" : "new",
+							count, result[0] / 1e6, result[1], result[2] / 1e6);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,213 @@
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.MalformedURLException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves a fixed number of generated HTML pages over HTTP, each after a fixed
+ * delay, as a slow web server would, so crawls can be measured without the
+ * network. Page n links to pages {@link #LINKS} * n + 1 to {@link #LINKS} *
+ * (n + 1), wrapping around past the last page, so every page can be reached
+ * from the first one however deep a crawl goes first. Every page has the word
+ * {@link #WORD}, so the pages a crawl indexed can be counted.
+ *
+ * Requests are read on one thread and answered once their delay is over by a
+ * small scheduled pool, so waiting requests hold no threads, and the threads
+ * of the crawler are the only ones that grow with the number of fetches at
+ * once.
+ */
+public class SlowServer implements Closeable {
+
+	/** The number of links on every page. */
+	public static final int LINKS = 10;
+
+	/** The word every page has. */
+	public static final String WORD = "slow";
+
+	/** The number of threads answering requests. */
+	private static final int RESPONDERS = 2;
+
+	/**
+	 * Stores the milliseconds every request waits before its answer, and the
+	 * number of pages.
+	 */
+	private final int delay;
+	private final int pages;
+
+	/**
+	 * Stores the socket requests are accepted on, the thread accepting them,
+	 * and the threads answering them.
+	 */
+	private final ServerSocket socket;
+	private final Thread acceptor;
+	private final ScheduledExecutorService responder;
+
+	/**
+	 * Starts serving pages on a free port of the loopback address.
+	 *
+	 * @param delay
+	 *            milliseconds every request waits before its answer
+	 * @param pages
+	 *            number of pages to serve
+	 * @throws IOException
+	 *             if the socket cannot be opened
+	 */
+	public SlowServer(int delay, int pages) throws IOException {
+		this.delay = delay;
+		this.pages = Math.max(1, pages);
+		socket = new ServerSocket(0, 4096, InetAddress.getLoopbackAddress());
+		responder = Executors.newScheduledThreadPool(RESPONDERS);
+		acceptor = new Thread("acceptor") {
+			@Override
+			public void run() {
+				accept();
+			}
+		};
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	/**
+	 * Returns the URL of the first page, which every page is linked from.
+	 *
+	 * @return URL of the first page
+	 * @throws MalformedURLException
+	 *             if the URL cannot be made
+	 */
+	public URL seed() throws MalformedURLException {
+		return new URL("http", socket.getInetAddress().getHostAddress(), socket.getLocalPort(), "/page/0");
+	}
+
+	/**
+	 * Accepts requests until the server is closed, and schedules their
+	 * answers.
+	 */
+	private void accept() {
+		while (!socket.isClosed()) {
+			Socket client = null;
+			try {
+				client = socket.accept();
+				final Socket request = client;
+				final int page = readPage(client);
+				responder.schedule(new Runnable() {
+					@Override
+					public void run() {
+						respond(request, page);
+					}
+				}, delay, TimeUnit.MILLISECONDS);
+			} catch (IOException | RuntimeException e) {
+				close(client);
+			}
+		}
+	}
+
+	/**
+	 * Reads a request up to its blank line.
+	 *
+	 * @param client
+	 *            socket of the request
+	 * @return number of the page requested, or -1 if it is not a page
+	 * @throws IOException
+	 *             if the request cannot be read
+	 */
+	private int readPage(Socket client) throws IOException {
+		// the reader is not closed, since that would close the socket
+		BufferedReader reader = new BufferedReader(
+				new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+		String line = reader.readLine();
+		String header = line;
+		while (header != null && !header.isEmpty()) {
+			header = reader.readLine();
+		}
+
+		String[] parts = line == null ? new String[0] : line.split(" ");
+		if (parts.length < 2 || !parts[1].startsWith("/page/")) {
+			return -1;
+		}
+		try {
+			int page = Integer.parseInt(parts[1].substring("/page/".length()));
+			return page < pages ? page : -1;
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Answers a request with a page, and closes its socket.
+	 *
+	 * @param client
+	 *            socket of the request
+	 * @param page
+	 *            number of the page, or -1 if it is not a page
+	 */
+	private void respond(Socket client, int page) {
+		try {
+			String status = "200 OK";
+			StringBuilder body = new StringBuilder();
+			if (page < 0) {
+				status = "404 Not Found";
+			}
+			else {
+				body.append("<html><head><title>Page ").append(page).append("</title></head><body>");
+				body.append("<p>This is page ").append(page).append(" of a ").append(WORD);
+				body.append(" server, which waits before every answer.</p>");
+				for (int i = 1; i <= LINKS; i++) {
+					long link = ((long) LINKS * page + i) % pages;
+					body.append("<a href=\"/page/").append(link).append("\">page ").append(link).append("</a>");
+				}
+				body.append("</body></html>");
+			}
+
+			byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+			String headers = "HTTP/1.1 " + status + "\r\n" + "Content-Type: text/html\r\n" + "Content-Length: "
+					+ bytes.length + "\r\n" + "Connection: close\r\n\r\n";
+			OutputStream out = client.getOutputStream();
+			out.write(headers.getBytes(StandardCharsets.UTF_8));
+			out.write(bytes);
+			out.flush();
+		} catch (IOException e) {
+			// the crawler gave up on the page
+		} finally {
+			close(client);
+		}
+	}
+
+	/**
+	 * Closes a socket, if there is one.
+	 *
+	 * @param client
+	 *            socket to close, or null
+	 */
+	private static void close(Socket client) {
+		if (client == null) {
+			return;
+		}
+		try {
+			client.close();
+		} catch (IOException e) {
+			// nothing is left to answer
+		}
+	}
+
+	/**
+	 * Stops accepting requests, and drops the ones waiting for their answer.
+	 *
+	 * @throws IOException
+	 *             if the socket cannot be closed
+	 */
+	@Override
+	public void close() throws IOException {
+		socket.close();
+		responder.shutdownNow();
+	}
+}
@@ -0,0 +1,205 @@
+/**
+ * Measures how many small tasks per second the work queue runs, compared to
+ * the {@link SharedWorkQueue} it replaced, for several numbers of worker
+ * threads. Two workloads are measured: flat, where the main thread queues
+ * every task, and tree, where every task queues two more until a depth is
+ * reached, as crawl tasks queue the links they find.
+ *
+ * Usage: java WorkQueueBenchmark [rounds] [threads...]
+ */
+public class WorkQueueBenchmark {
+
+	/** The default number of rounds, of which the fastest is reported. */
+	public static final int DEFAULT_ROUNDS = 5;
+
+	/** The default numbers of worker threads to measure. */
+	private static final int[] DEFAULT_THREADS = { 1, 2, 4, 8, 32 };
+
+	/** The number of tasks queued by the main thread in the flat workload. */
+	private static final int FLAT_TASKS = 200000;
+
+	/** The depth of the tree workload, which runs 2^(depth + 1) - 1 tasks. */
+	private static final int TREE_DEPTH = 17;
+
+	/** The number of loop iterations of work every task does. */
+	private static final int WORK = 50;
+
+	/** Keeps the result of the work, so it is not optimized away. */
+	private static volatile long sink;
+
+	/**
+	 * The operations both work queues have, so the same workloads can run on
+	 * either of them.
+	 */
+	private interface Queue {
+		public void execute(Runnable r);
+
+		public void finish();
+
+		public void shutdown();
+	}
+
+	/**
+	 * Returns a new work queue.
+	 *
+	 * @param shared
+	 *            true for the old queue, false for the current one
+	 * @param threads
+	 *            number of worker threads
+	 * @return work queue
+	 */
+	private static Queue newQueue(boolean shared, int threads) {
+		if (shared) {
+			final SharedWorkQueue queue = new SharedWorkQueue(threads);
+			return new Queue() {
+				@Override
+				public void execute(Runnable r) {
+					queue.execute(r);
+				}
+
+				@Override
+				public void finish() {
+					queue.finish();
+				}
+
+				@Override
+				public void shutdown() {
+					queue.shutdown();
+				}
+			};
+		}
+
+		final WorkQueue queue = new WorkQueue(threads);
+		return new Queue() {
+			@Override
+			public void execute(Runnable r) {
+				queue.execute(r);
+			}
+
+			@Override
+			public void finish() {
+				queue.finish();
+			}
+
+			@Override
+			public void shutdown() {
+				queue.shutdown();
+			}
+		};
+	}
+
+	/**
+	 * Does a small amount of work.
+	 */
+	private static void work() {
+		long x = 0;
+		for (int i = 0; i < WORK; i++) {
+			x += i * 31L ^ x;
+		}
+		if (x == 42) {
+			sink = x;
+		}
+	}
+
+	/**
+	 * Queues a task that does some work and then queues two tasks of one less
+	 * depth, until the depth is 0.
+	 *
+	 * @param queue
+	 *            queue to queue the task on
+	 * @param depth
+	 *            depth of the task
+	 */
+	private static void tree(final Queue queue, final int depth) {
+		queue.execute(new Runnable() {
+			@Override
+			public void run() {
+				work();
+				if (depth > 0) {
+					tree(queue, depth - 1);
+					tree(queue, depth - 1);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Returns the fastest times of both workloads.
+	 *
+	 * @param shared
+	 *            true for the old queue, false for the current one
+	 * @param threads
+	 *            number of worker threads
+	 * @param rounds
+	 *            number of times to run the workloads
+	 * @return fastest time of the flat and tree workloads, in nanoseconds
+	 */
+	public static long[] run(boolean shared, int threads, int rounds) {
+		Runnable task = new Runnable() {
+			@Override
+			public void run() {
+				work();
+			}
+		};
+
+		long[] best = { Long.MAX_VALUE, Long.MAX_VALUE };
+		for (int round = 0; round < rounds; round++) {
+			Queue queue = newQueue(shared, threads);
+			try {
+				long start = System.nanoTime();
+				for (int i = 0; i < FLAT_TASKS; i++) {
+					queue.execute(task);
+				}
+				queue.finish();
+				best[0] = Math.min(best[0], System.nanoTime() - start);
+
+				start = System.nanoTime();
+				tree(queue, TREE_DEPTH);
+				queue.finish();
+				best[1] = Math.min(best[1], System.nanoTime() - start);
+			}
+			finally {
+				queue.shutdown();
+			}
+		}
+		return best;
+	}
+
+	public static void main(String[] args) {
+		int rounds = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ROUNDS;
+		int[] threads = DEFAULT_THREADS;
+		if (args.length > 1) {
+			threads = new int[args.length - 1];
+			for (int i = 0; i < threads.length; i++) {
+				threads[i] = Integer.parseInt(args[i + 1]);
+			}
+		}
+
+		// runs both once without measuring, so both run on warmed up code
+		run(true, threads[0], 1);
+		run(false, threads[0], 1);
+
+		int treeTasks = (1 << (TREE_DEPTH + 1)) - 1;
+		System.out.printf("Best of %d rounds, in thousands of tasks per second:%n", rounds);
+		System.out.printf("%8s %10s %10s %10s %10s%n", "threads", "old flat", "new flat", "old tree", "new tree");
+		for (int count : threads) {
+			long[] shared = run(true, count, rounds);
+			long[] current = run(false, count, rounds);
+			System.out.printf("%8d %10.0f %10.0f %10.0f %10.0f%n", count, rate(FLAT_TASKS, shared[0]),
+					rate(FLAT_TASKS, current[0]), rate(treeTasks, shared[1]), rate(treeTasks, current[1]));
+		}
+	}
+
+	/**
+	 * Returns a number of tasks per time as thousands of tasks per second.
+	 *
+	 * @param tasks
+	 *            number of tasks
+	 * @param nanos
+	 *            time in nanoseconds
+	 * @return thousands of tasks per second
+	 */
+	private static double rate(int tasks, long nanos) {
+		return tasks / (nanos / 1e9) / 1000;
+	}
+}
@@ -0,0 +1,78 @@
+/**
+ * Computes quantized BM25 impact scores for the postings of a frozen index.
+ * The score of a posting depends on how often its word appears in the
+ * document, how many documents contain the word, and the length of the
+ * document compared to the average. Scores are scaled so the best posting of
+ * the index has an impact of {@link #MAX_IMPACT} and rounded to integers, so
+ * ranking a document only takes adding the impacts of its postings.
+ *
+ * The length of a document is the number of words it was indexed with, which
+ * is the total frequency of its postings.
+ */
+public class BM25 {
+
+	/** Controls how quickly repeating a word stops raising its score. */
+	public static final double K1 = 1.2;
+
+	/** Controls how much longer documents are penalized, from 0 to 1. */
+	public static final double B = 0.75;
+
+	/** The impact of the best posting in the index. Every posting is at least 1. */
+	public static final int MAX_IMPACT = 255;
+
+	/**
+	 * Returns the number of words each document was indexed with.
+	 *
+	 * @param numDocuments
+	 *            number of documents
+	 * @param postings
+	 *            document id, frequency and first position of each posting
+	 * @return length of each document
+	 */
+	public static int[] lengths(int numDocuments, int[] postings) {
+		int[] lengths = new int[numDocuments];
+		for (int i = 0; i < postings.length; i += 3) {
+			lengths[postings[i]] += postings[i + 1];
+		}
+		return lengths;
+	}
+
+	/**
+	 * Returns the quantized impact of each posting.
+	 *
+	 * @param termOffsets
+	 *            start of the postings of each term, plus the total number of
+	 *            postings
+	 * @param postings
+	 *            document id, frequency and first position of each posting
+	 * @param lengths
+	 *            length of each document
+	 * @return impact of each posting, between 1 and {@link #MAX_IMPACT}
+	 */
+	public static int[] impacts(int[] termOffsets, int[] postings, int[] lengths) {
+		long total = 0;
+		for (int length : lengths) {
+			total += length;
+		}
+		double average = lengths.length == 0 ? 1 : Math.max(1, (double) total / lengths.length);
+
+		double[] scores = new double[postings.length / 3];
+		double best = 0;
+		for (int term = 0; term + 1 < termOffsets.length; term++) {
+			int documents = termOffsets[term + 1] - termOffsets[term];
+			double idf = Math.log(1 + (lengths.length - documents + 0.5) / (documents + 0.5));
+			for (int posting = termOffsets[term]; posting < termOffsets[term + 1]; posting++) {
+				double frequency = postings[3 * posting + 1];
+				double norm = K1 * (1 - B + B * lengths[postings[3 * posting]] / average);
+				scores[posting] = idf * frequency * (K1 + 1) / (frequency + norm);
+				best = Math.max(best, scores[posting]);
+			}
+		}
+
+		int[] impacts = new int[scores.length];
+		for (int posting = 0; posting < scores.length; posting++) {
+			impacts[posting] = Math.max(1, (int) Math.round(scores[posting] / best * MAX_IMPACT));
+		}
+		return impacts;
+	}
+}
@@ -1,7 +1,9 @@
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.net.URLEncoder;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.HashMap;
@@ -167,6 +169,100 @@ public class BaseServlet extends HttpServlet {
 		return status.toString();
 	}
 
+	/**
+	 * Returns whether a search query is surrounded by double quotes, in which
+	 * case its words are searched as a phrase.
+	 *
+	 * @param query
+	 *            query as it was entered
+	 * @return true if the query is a phrase
+	 */
+	protected static boolean isPhrase(String query) {
+		String trimmed = query.trim();
+		return trimmed.length() > 1 && trimmed.startsWith("\"") && trimmed.endsWith("\"");
+	}
+
+	/**
+	 * Returns a page of the results of a search query. Queries surrounded by
+	 * double quotes are searched as a phrase, and other queries for any or all
+	 * of their words.
+	 *
+	 * @param index
+	 *            index to search
+	 * @param rankings
+	 *            rankings of recent searches, which the cursor refers to
+	 * @param query
+	 *            query as it was entered
+	 * @param all
+	 *            true if only sources with every word match
+	 * @param cursor
+	 *            cursor of the page, or null for the first page
+	 * @param pageSize
+	 *            number of results on each page
+	 * @return page of results
+	 */
+	protected static RankingCache.Page searchPage(final InvertedIndexInterface index, RankingCache rankings,
+			String query, final boolean all, String cursor, int pageSize) {
+		// parse the words before escaping, so escaped quotes are not searched as words
+		final String[] words = WordParser.parseWords(query);
+		final boolean phrase = isPhrase(query);
+		String key = (phrase ? "phrase " : all ? "all " : "any ") + String.join(" ", words);
+
+		return rankings.page(key, cursor, pageSize, new RankingCache.Search() {
+			@Override
+			public ArrayList<SearchResult> run(int limit, QueryBudget budget) {
+				if (phrase) {
+					return index.phraseSearch(words, limit, budget);
+				}
+				return index.search(words, false, all, limit, budget);
+			}
+		});
+	}
+
+	/**
+	 * Prints which results are shown, whether the search was truncated, and
+	 * links to the previous and next pages of a search.
+	 *
+	 * @param out
+	 *            writer of the response
+	 * @param request
+	 *            request of the page, whose servlet the links point to
+	 * @param query
+	 *            query as it was entered
+	 * @param all
+	 *            true if only sources with every word match
+	 * @param page
+	 *            page that is shown
+	 * @throws IOException
+	 *             if the query cannot be encoded
+	 */
+	protected static void printPager(PrintWriter out, HttpServletRequest request, String query, boolean all,
+			RankingCache.Page page) throws IOException {
+		String link = request.getServletPath() + "?words=" + URLEncoder.encode(query, "UTF-8")
+				+ (all ? "&amp;all=on" : "") + "&amp;cursor=";
+
+		if (!page.results.isEmpty()) {
+			out.printf("<p class=\"text-muted\">Results %d to %d</p>%n", page.offset + 1,
+					page.offset + page.results.size());
+		}
+		if (page.truncated) {
+			out.println("<p class=\"text-warning\">Only part of the index was searched for this query, "
+					+ "so some results may be missing.</p>");
+		}
+		if (page.previous == null && page.next == null) {
+			return;
+		}
+
+		out.println("<nav><ul class=\"pager\">");
+		if (page.previous != null) {
+			out.printf("\t<li class=\"previous\"><a href=\"%s%s\">Previous</a></li>%n", link, page.previous);
+		}
+		if (page.next != null) {
+			out.printf("\t<li class=\"next\"><a href=\"%s%s\">Next</a></li>%n", link, page.next);
+		}
+		out.println("</ul></nav>");
+	}
+
 	protected String getUsername(HttpServletRequest request) {
 		Map<String, String> cookies = getCookieMap(request);
 
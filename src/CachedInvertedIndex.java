@@ -0,0 +1,476 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Index that remembers the results of recent searches of another index.
+ * Results are keyed by the sorted query words, the search mode and the
+ * result limit, so the same words in any order share one entry. The least
+ * recently used entries are evicted once the cache holds too many entries or
+ * too many estimated bytes. If the index is a {@link GenerationalInvertedIndex},
+ * the whole cache is dropped whenever a new generation is published, so
+ * results never come from an older generation than the one being searched.
+ * Concurrent searches for the same query that is not cached yet are
+ * coalesced, so only the first one searches the index and the others wait
+ * for its results.
+ */
+public class CachedInvertedIndex implements InvertedIndexInterface {
+
+	/** The default maximum number of cached queries. */
+	public static final int DEFAULT_ENTRIES = 1000;
+
+	/** The default maximum estimated size of the cached results, in bytes. */
+	public static final long DEFAULT_BYTES = 64L * 1024 * 1024;
+
+	/**
+	 * Estimated size of a cache entry without its key and results, and of
+	 * each cached result. Paths are shared with the index, so they are not
+	 * counted.
+	 */
+	private static final int ENTRY_BYTES = 96;
+	private static final int RESULT_BYTES = 40;
+
+	/**
+	 * Stores the index to search.
+	 */
+	private final InvertedIndexInterface index;
+
+	/**
+	 * Stores the cached results by query, from least to most recently used.
+	 */
+	private final LinkedHashMap<String, Entry> cache;
+
+	/**
+	 * Stores the searches that are currently running, by query.
+	 */
+	private final HashMap<String, Flight> inFlight;
+
+	/**
+	 * Stores the limits of the cache, and its current estimated size.
+	 */
+	private final int maxEntries;
+	private final long maxBytes;
+	private long bytes;
+
+	/**
+	 * Stores the generation the cached results were found in.
+	 */
+	private long generation;
+
+	/**
+	 * Stores the statistics of the cache.
+	 */
+	private long hits;
+	private long misses;
+	private long coalesced;
+	private long evictions;
+	private long invalidations;
+
+	/**
+	 * Initializes the cache with the default limits.
+	 *
+	 * @param index
+	 *            index to search
+	 */
+	public CachedInvertedIndex(InvertedIndexInterface index) {
+		this(index, DEFAULT_ENTRIES, DEFAULT_BYTES);
+	}
+
+	/**
+	 * Initializes the cache with the specified limits.
+	 *
+	 * @param index
+	 *            index to search
+	 * @param maxEntries
+	 *            maximum number of cached queries
+	 * @param maxBytes
+	 *            maximum estimated size of the cached results, in bytes
+	 */
+	public CachedInvertedIndex(InvertedIndexInterface index, int maxEntries, long maxBytes) {
+		this.index = index;
+		this.maxEntries = maxEntries;
+		this.maxBytes = maxBytes;
+		this.cache = new LinkedHashMap<>(16, 0.75f, true);
+		this.inFlight = new HashMap<>();
+		this.bytes = 0;
+		this.generation = generationOf(index);
+	}
+
+	/**
+	 * Returns the current generation of the index, or 0 if the index never
+	 * changes.
+	 *
+	 * @param index
+	 *            index to check
+	 * @return generation number
+	 */
+	private static long generationOf(InvertedIndexInterface index) {
+		if (index instanceof GenerationalInvertedIndex) {
+			return ((GenerationalInvertedIndex) index).generation();
+		}
+		return 0;
+	}
+
+	/**
+	 * Returns the cache key of a query. The words are sorted so that the key
+	 * does not depend on their order, which does not change the results.
+	 *
+	 * @param searchWords
+	 *            words to search for
+	 * @param exact
+	 *            true for exact matches, false for partial matches
+	 * @param all
+	 *            true if only documents with every word match
+	 * @param limit
+	 *            maximum number of results
+	 * @return cache key
+	 */
+	private static String key(String[] searchWords, boolean exact, boolean all, int limit) {
+		String[] sorted = Arrays.copyOf(searchWords, searchWords.length);
+		Arrays.sort(sorted);
+		return (exact ? "exact " : "partial ") + (all ? "all " : "") + Math.max(limit, 0) + " "
+				+ String.join(" ", sorted);
+	}
+
+	/**
+	 * Looks up a query, dropping every cached result first if the index has
+	 * published a new generation.
+	 *
+	 * @param key
+	 *            cache key of the query
+	 * @param current
+	 *            current generation of the index
+	 * @return cached results, or null if the query is not cached
+	 */
+	private synchronized ArrayList<SearchResult> lookup(String key, long current) {
+		if (current != generation) {
+			cache.clear();
+			bytes = 0;
+			generation = current;
+			invalidations++;
+		}
+
+		Entry entry = cache.get(key);
+		if (entry == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		return entry.results;
+	}
+
+	/**
+	 * Adds the results of a query, then evicts the least recently used
+	 * queries until the cache is within its limits. Results found in an older
+	 * generation than the cached ones are not added.
+	 *
+	 * @param key
+	 *            cache key of the query
+	 * @param results
+	 *            results of the query
+	 * @param found
+	 *            generation the results were found in
+	 */
+	private synchronized void store(String key, ArrayList<SearchResult> results, long found) {
+		if (found != generation || cache.containsKey(key)) {
+			return;
+		}
+
+		Entry entry = new Entry(results, ENTRY_BYTES + 2L * key.length() + (long) RESULT_BYTES * results.size());
+		cache.put(key, entry);
+		bytes += entry.size;
+
+		Iterator<Entry> eldest = cache.values().iterator();
+		while ((cache.size() > maxEntries || bytes > maxBytes) && eldest.hasNext()) {
+			bytes -= eldest.next().size;
+			eldest.remove();
+			evictions++;
+		}
+	}
+
+	/**
+	 * Returns the running search for a query that is not cached. If there is
+	 * none for the same generation, the given search becomes the running one.
+	 *
+	 * @param key
+	 *            cache key of the query
+	 * @param flight
+	 *            new search to run if there is none yet
+	 * @return running search, which is the given one if the caller must run it
+	 */
+	private synchronized Flight join(String key, Flight flight) {
+		Flight running = inFlight.get(key);
+		if (running != null && running.generation == flight.generation) {
+			coalesced++;
+			return running;
+		}
+		inFlight.put(key, flight);
+		return flight;
+	}
+
+	/**
+	 * Removes a finished search from the running searches, and caches its
+	 * results.
+	 *
+	 * @param key
+	 *            cache key of the query
+	 * @param flight
+	 *            search that finished
+	 * @param results
+	 *            results of the search, or null if it failed
+	 */
+	private synchronized void land(String key, Flight flight, ArrayList<SearchResult> results) {
+		if (inFlight.get(key) == flight) {
+			inFlight.remove(key);
+		}
+		if (results != null) {
+			store(key, results, flight.generation);
+		}
+	}
+
+	/**
+	 * Returns the cached results of a query, or runs the search and caches its
+	 * results. If the same query is already being searched, waits for its
+	 * results instead of searching again. Results that were truncated by the
+	 * budget of their search are neither cached nor shared, so searches that
+	 * waited for them search again with their own budgets.
+	 *
+	 * @param key
+	 *            cache key of the query
+	 * @param budget
+	 *            budget the search runs with
+	 * @param search
+	 *            search of the index to run if the query is not cached
+	 * @return copy of the results
+	 */
+	private ArrayList<SearchResult> cached(String key, QueryBudget budget, Search search) {
+		long current = generationOf(index);
+
+		ArrayList<SearchResult> results = lookup(key, current);
+		if (results != null) {
+			return new ArrayList<>(results);
+		}
+
+		Flight flight = new Flight(current);
+		Flight running = join(key, flight);
+		if (running != flight) {
+			results = running.await();
+			if (results == null) {
+				// the running search failed or this thread was interrupted, so search without the cache
+				results = search.run();
+			}
+			return new ArrayList<>(results);
+		}
+
+		try {
+			results = search.run();
+		}
+		finally {
+			ArrayList<SearchResult> complete = budget.truncated() ? null : results;
+			land(key, flight, complete);
+			flight.complete(complete);
+		}
+		return new ArrayList<>(results);
+	}
+
+	@Override
+	public ArrayList<SearchResult> search(String[] searchWords, boolean exact, int limit) {
+		return search(searchWords, exact, false, limit, new QueryBudget());
+	}
+
+	@Override
+	public ArrayList<SearchResult> search(String[] searchWords, boolean exact, boolean all, int limit) {
+		return search(searchWords, exact, all, limit, new QueryBudget());
+	}
+
+	@Override
+	public ArrayList<SearchResult> search(final String[] searchWords, final boolean exact, final boolean all,
+			final int limit, final QueryBudget budget) {
+		return cached(key(searchWords, exact, all, limit), budget, new Search() {
+			@Override
+			public ArrayList<SearchResult> run() {
+				return index.search(searchWords, exact, all, limit, budget);
+			}
+		});
+	}
+
+	@Override
+	public ArrayList<SearchResult> phraseSearch(String[] phraseWords, int limit) {
+		return phraseSearch(phraseWords, limit, new QueryBudget());
+	}
+
+	/**
+	 * Returns the cached results of a phrase. Unlike other queries, the words
+	 * are kept in order in the cache key, since their order changes the
+	 * results.
+	 */
+	@Override
+	public ArrayList<SearchResult> phraseSearch(final String[] phraseWords, final int limit,
+			final QueryBudget budget) {
+		String key = "phrase " + Math.max(limit, 0) + " " + String.join(" ", phraseWords);
+		return cached(key, budget, new Search() {
+			@Override
+			public ArrayList<SearchResult> run() {
+				return index.phraseSearch(phraseWords, limit, budget);
+			}
+		});
+	}
+
+	/**
+	 * Searches the whole batch in the index, without using or filling the
+	 * cache.
+	 */
+	@Override
+	public ArrayList<ArrayList<SearchResult>> searchAll(List<String[]> queries, boolean exact, int limit) {
+		return index.searchAll(queries, exact, limit);
+	}
+
+	@Override
+	public ArrayList<SearchResult> exactSearch(String[] searchWords) {
+		return search(searchWords, true, 0);
+	}
+
+	@Override
+	public ArrayList<SearchResult> exactSearch(String[] searchWords, boolean all) {
+		return search(searchWords, true, all, 0);
+	}
+
+	@Override
+	public ArrayList<SearchResult> partialSearch(String[] searchWords) {
+		return search(searchWords, false, 0);
+	}
+
+	@Override
+	public ArrayList<SearchResult> partialSearch(String[] searchWords, boolean all) {
+		return search(searchWords, false, all, 0);
+	}
+
+	@Override
+	public boolean containsWord(String word) {
+		return index.containsWord(word);
+	}
+
+	@Override
+	public boolean containsPath(String word, String path) {
+		return index.containsPath(word, path);
+	}
+
+	@Override
+	public boolean containsPosition(String word, String path, Integer position) {
+		return index.containsPosition(word, path, position);
+	}
+
+	@Override
+	public void toJSON(Path path) throws IOException {
+		index.toJSON(path);
+	}
+
+	/**
+	 * Returns the fraction of searches that were answered from the cache.
+	 *
+	 * @return hit ratio between 0 and 1
+	 */
+	public synchronized double hitRatio() {
+		long total = hits + misses;
+		return total == 0 ? 0 : (double) hits / total;
+	}
+
+	/**
+	 * Returns the fraction of searches that had to search the index.
+	 *
+	 * @return miss ratio between 0 and 1
+	 */
+	public synchronized double missRatio() {
+		long total = hits + misses;
+		return total == 0 ? 0 : (double) misses / total;
+	}
+
+	/**
+	 * Returns a summary of the size and statistics of the cache.
+	 */
+	@Override
+	public synchronized String toString() {
+		return String.format("entries: %d/%d, bytes: %d/%d, hits: %d, misses: %d, hit ratio: %.3f, "
+				+ "miss ratio: %.3f, coalesced: %d, evictions: %d, invalidations: %d", cache.size(), maxEntries, bytes,
+				maxBytes, hits, misses, hitRatio(), missRatio(), coalesced, evictions, invalidations);
+	}
+
+	/**
+	 * Search of the index to run when a query is not cached.
+	 */
+	private static interface Search {
+
+		/**
+		 * Searches the index.
+		 *
+		 * @return results of the search
+		 */
+		public ArrayList<SearchResult> run();
+	}
+
+	/**
+	 * Search that is running, which other searches for the same query can wait
+	 * for.
+	 */
+	private static class Flight {
+
+		private final long generation;
+		private ArrayList<SearchResult> results;
+		private boolean done;
+
+		public Flight(long generation) {
+			this.generation = generation;
+			this.done = false;
+		}
+
+		/**
+		 * Sets the results of the search and wakes up every waiting search.
+		 *
+		 * @param results
+		 *            results of the search, or null if it failed
+		 */
+		public synchronized void complete(ArrayList<SearchResult> results) {
+			this.results = results;
+			this.done = true;
+			this.notifyAll();
+		}
+
+		/**
+		 * Waits for the search to finish.
+		 *
+		 * @return results of the search, or null if it failed or the waiting
+		 *         thread was interrupted
+		 */
+		public synchronized ArrayList<SearchResult> await() {
+			while (!done) {
+				try {
+					this.wait();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return null;
+				}
+			}
+			return results;
+		}
+	}
+
+	/**
+	 * Cached results of a query and their estimated size.
+	 */
+	private static class Entry {
+
+		private final ArrayList<SearchResult> results;
+		private final long size;
+
+		public Entry(ArrayList<SearchResult> results, long size) {
+			this.results = results;
+			this.size = size;
+		}
+	}
+}
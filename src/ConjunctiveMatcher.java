@@ -0,0 +1,278 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Finds the documents that match every word of a query. Each word matches a
+ * range of terms, which is a single term for exact searches and every term
+ * starting with the word for partial searches. The postings of each term must
+ * be sorted by document id.
+ *
+ * Words that match more than one term are first combined into a single list
+ * sorted by document id. The lists are then intersected by a {@link Leapfrog}
+ * from the rarest word: every other word gallops forward to the first document
+ * at or after the current candidate, so most postings of frequent words are
+ * skipped instead of scanned, and the work depends mostly on the length of the
+ * shortest list.
+ *
+ * Results are ranked the same way as any-word searches, so a document has the
+ * same score, frequency and initial position it would have there.
+ */
+public abstract class ConjunctiveMatcher {
+
+	/**
+	 * Stores the number of documents in the index.
+	 */
+	private final int numDocuments;
+
+	/**
+	 * Stores the score, frequency and first position of each document while a
+	 * range is being combined, and the documents found so far. They are only
+	 * created once a range needs to be combined.
+	 */
+	private int[] scores;
+	private int[] frequencies;
+	private int[] firstPositions;
+	private int[] found;
+
+	/**
+	 * Initializes a matcher.
+	 *
+	 * @param numDocuments
+	 *            number of documents in the index
+	 */
+	public ConjunctiveMatcher(int numDocuments) {
+		this.numDocuments = numDocuments;
+	}
+
+	/**
+	 * Returns the number of postings of a term.
+	 *
+	 * @param term
+	 *            term id
+	 * @return number of documents the term was found in
+	 */
+	protected abstract int size(int term);
+
+	/**
+	 * Returns the document id of a posting.
+	 *
+	 * @param term
+	 *            term id
+	 * @param posting
+	 *            index of the posting, between 0 and {@link #size(int)}
+	 * @return document id
+	 */
+	protected abstract int document(int term, int posting);
+
+	/**
+	 * Returns the number of positions of a posting.
+	 *
+	 * @param term
+	 *            term id
+	 * @param posting
+	 *            index of the posting
+	 * @return number of positions
+	 */
+	protected abstract int frequency(int term, int posting);
+
+	/**
+	 * Returns the first position of a posting.
+	 *
+	 * @param term
+	 *            term id
+	 * @param posting
+	 *            index of the posting
+	 * @return first position
+	 */
+	protected abstract int initialPosition(int term, int posting);
+
+	/**
+	 * Returns the BM25 impact of a posting, or 0 if results are ranked by
+	 * frequency.
+	 *
+	 * @param term
+	 *            term id
+	 * @param posting
+	 *            index of the posting
+	 * @return score of the posting
+	 */
+	protected abstract int score(int term, int posting);
+
+	/**
+	 * Returns the path of a document.
+	 *
+	 * @param document
+	 *            document id
+	 * @return path
+	 */
+	protected abstract String path(int document);
+
+	/**
+	 * Combines the postings of a range of terms into (document id, frequency,
+	 * first position, score) tuples sorted by document id. Terms are no longer
+	 * added once the deadline of the budget has passed.
+	 *
+	 * @param start
+	 *            first term id of the range
+	 * @param end
+	 *            term id after the last one in the range
+	 * @param budget
+	 *            budget of the search
+	 * @return sorted tuples
+	 */
+	private int[] combine(int start, int end, QueryBudget budget) {
+		if (found == null) {
+			scores = new int[numDocuments];
+			frequencies = new int[numDocuments];
+			firstPositions = new int[numDocuments];
+			found = new int[numDocuments];
+		}
+
+		int numFound = 0;
+		for (int term = start; term < end && !budget.expired(); term++) {
+			int size = size(term);
+			for (int posting = 0; posting < size; posting++) {
+				int document = document(term, posting);
+				if (frequencies[document] == 0) {
+					scores[document] = score(term, posting);
+					frequencies[document] = frequency(term, posting);
+					firstPositions[document] = initialPosition(term, posting);
+					found[numFound++] = document;
+				}
+				else {
+					scores[document] += score(term, posting);
+					frequencies[document] += frequency(term, posting);
+					firstPositions[document] = Math.min(firstPositions[document], initialPosition(term, posting));
+				}
+			}
+		}
+
+		if (numFound > numDocuments / 16) {
+			// most documents were found, so listing them in order is faster than sorting them
+			numFound = 0;
+			for (int document = 0; document < numDocuments; document++) {
+				if (frequencies[document] != 0) {
+					found[numFound++] = document;
+				}
+			}
+		}
+		else {
+			Arrays.sort(found, 0, numFound);
+		}
+
+		int[] list = new int[4 * numFound];
+		for (int i = 0; i < numFound; i++) {
+			int document = found[i];
+			list[4 * i] = document;
+			list[4 * i + 1] = frequencies[document];
+			list[4 * i + 2] = firstPositions[document];
+			list[4 * i + 3] = scores[document];
+			frequencies[document] = 0;
+		}
+		return list;
+	}
+
+	/**
+	 * Returns the document id of a posting of a word.
+	 *
+	 * @param term
+	 *            term id of the word, if it matches a single term
+	 * @param list
+	 *            combined tuples of the word, or null if it matches a single
+	 *            term
+	 * @param posting
+	 *            index of the posting
+	 * @return document id
+	 */
+	private int document(int term, int[] list, int posting) {
+		return list == null ? document(term, posting) : list[4 * posting];
+	}
+
+	/**
+	 * Finds every document that matches all the words of a query.
+	 *
+	 * @param ranges
+	 *            start and end of the range of term ids matched by each word
+	 *            of the query, one pair after another; words that appear more
+	 *            than once should have their range repeated
+	 * @param limit
+	 *            maximum number of results to return, or 0 or less for all of
+	 *            them
+	 * @param budget
+	 *            budget of the search, whose deadline stops it early
+	 * @return sorted ArrayList of at most limit SearchResults
+	 */
+	public ArrayList<SearchResult> search(int[] ranges, int limit, QueryBudget budget) {
+		ArrayList<SearchResult> results = new ArrayList<>();
+		int length = ranges.length / 2;
+		if (length == 0) {
+			return results;
+		}
+
+		// words that match no terms are checked first, so nothing is combined for nothing
+		for (int word = 0; word < length; word++) {
+			if (ranges[2 * word] >= ranges[2 * word + 1]) {
+				return results;
+			}
+		}
+
+		int[] sizes = new int[length];
+		final int[] terms = new int[length];
+		final int[][] lists = new int[length][];
+		for (int word = 0; word < length; word++) {
+			int start = ranges[2 * word];
+			int end = ranges[2 * word + 1];
+			terms[word] = start;
+			if (end - start == 1) {
+				sizes[word] = size(start);
+			}
+			else {
+				lists[word] = combine(start, end, budget);
+				sizes[word] = lists[word].length / 4;
+			}
+
+			if (sizes[word] == 0) {
+				return results;
+			}
+		}
+
+		Leapfrog words = new Leapfrog() {
+			@Override
+			protected int document(int word, int posting) {
+				return ConjunctiveMatcher.this.document(terms[word], lists[word], posting);
+			}
+		};
+		words.start(sizes);
+		while (words.next(budget)) {
+			int target = words.document();
+			SearchResult result = null;
+			for (int word = 0; word < length; word++) {
+				int posting = words.posting(word);
+				int score;
+				int frequency;
+				int initialPosition;
+				if (lists[word] == null) {
+					score = score(terms[word], posting);
+					frequency = frequency(terms[word], posting);
+					initialPosition = initialPosition(terms[word], posting);
+				}
+				else {
+					score = lists[word][4 * posting + 3];
+					frequency = lists[word][4 * posting + 1];
+					initialPosition = lists[word][4 * posting + 2];
+				}
+
+				if (result == null) {
+					result = new SearchResult(score, frequency, initialPosition, target, path(target));
+				}
+				else {
+					result.addToScore(score);
+					result.addToFrequency(frequency);
+					result.updateInitialPosition(initialPosition);
+				}
+			}
+			results.add(result);
+		}
+		return SearchResult.top(results, limit);
+	}
+}
@@ -0,0 +1,79 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Table of paths and the document ids assigned to them. A table can be shared
+ * by several indexes so their document ids agree, so every method is
+ * synchronized.
+ */
+public class DocumentTable {
+
+	/**
+	 * Stores a mapping of paths to their document ids.
+	 */
+	private final HashMap<String, Integer> ids;
+
+	/**
+	 * Stores the path for each document id.
+	 */
+	private final ArrayList<String> paths;
+
+	/**
+	 * Initializes an empty table.
+	 */
+	public DocumentTable() {
+		ids = new HashMap<>();
+		paths = new ArrayList<>();
+	}
+
+	/**
+	 * Returns the document id of the path, adding the path to the table if it
+	 * is not already there.
+	 *
+	 * @param path
+	 *            path to look up
+	 * @return document id of the path
+	 */
+	public synchronized int add(String path) {
+		Integer id = ids.get(path);
+		if (id == null) {
+			id = paths.size();
+			ids.put(path, id);
+			paths.add(path);
+		}
+		return id;
+	}
+
+	/**
+	 * Returns the document id of the path, or -1 if the path is not in the
+	 * table.
+	 *
+	 * @param path
+	 *            path to look up
+	 * @return document id of the path or -1
+	 */
+	public synchronized int find(String path) {
+		Integer id = ids.get(path);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * Returns the path of the document id.
+	 *
+	 * @param id
+	 *            document id
+	 * @return path of the document
+	 */
+	public synchronized String path(int id) {
+		return paths.get(id);
+	}
+
+	/**
+	 * Returns the number of documents in the table.
+	 *
+	 * @return number of documents
+	 */
+	public synchronized int size() {
+		return paths.size();
+	}
+}
@@ -13,7 +13,7 @@ import org.eclipse.jetty.servlet.ServletHolder;
 /**
 * Driver class which takes in args and adds words from -path argument to an InvertedIndex and outputs to -index
 * argument. Parses through -query argument, if -exact flag is found searches for exact matches in the inverted index 
-* else searches for partial matches and outputs to -results argument.
+* else searches for partial matches and outputs to -results argument. The other flags are described where they are read.
 */
 
 public class Driver {
@@ -33,28 +33,50 @@ public class Driver {
 		WorkQueue queue = null;
 		WebCrawler crawler = null;
 		WebPageSnippets snippets = null;
+		StatsThread stats = null;
+		GenerationalInvertedIndex generational = null;
+		boolean streamed = false;
 		Logger logger = LogManager.getLogger();
-		
+		// -bm25 ranks by BM25 scores computed when the index is built instead of by how often the words appear
+		Scoring scoring = argumentMap.hasFlag("-bm25") ? Scoring.BM25 : Scoring.FREQUENCY;
 		
 		if (argumentMap.hasFlag("-threads") || argumentMap.hasFlag("-url") || argumentMap.hasFlag("-port")) {
-			ThreadSafeInvertedIndex threadSafeIndex = new ThreadSafeInvertedIndex();
+			ThreadSafeInvertedIndex threadSafeIndex;
+			if (argumentMap.hasFlag("-url") && argumentMap.hasFlag("-port") && !argumentMap.hasFlag("-load")) {
+				// the server searches published generations while the crawl is still writing
+				generational = new GenerationalInvertedIndex(GenerationalInvertedIndex.DEFAULT_BATCH, scoring);
+				threadSafeIndex = generational;
+			}
+			else {
+				threadSafeIndex = new ThreadSafeInvertedIndex();
+			}
 			index = threadSafeIndex;
 			
 			int num = argumentMap.getInteger("-threads", 5);
 			if (num <= 0) {
 				num = 5;
 			}
-			queue = new WorkQueue(num);
-			searchIndex = new ThreadSafeSearchIndex(threadSafeIndex, queue);
+			// -capacity bounds the files or query batches waiting at once, and reading more waits for room, or with
+			// -callerruns indexes or searches them on the reading thread
+			WorkQueue.Overflow overflow = argumentMap.hasFlag("-callerruns") ? WorkQueue.Overflow.CALLER_RUNS
+					: WorkQueue.Overflow.BLOCK;
+			queue = new WorkQueue(num, argumentMap.getInteger("-capacity", 0), overflow);
 			
-			if (argumentMap.hasFlag("-url")) {
+			if (argumentMap.hasFlag("-url") && !argumentMap.hasFlag("-load")) {
 				snippets = new WebPageSnippets();
-				crawler = new WebCrawler(threadSafeIndex, snippets);
+				// -fetchers fetches up to that many pages at once, on virtual threads where the running Java has them
+				crawler = new WebCrawler(threadSafeIndex, snippets, argumentMap.getInteger("-fetchers", 0));
+			}
+			
+			if (argumentMap.hasFlag("-stats")) {
+				// -stats prints the statistics of the work queues when the program exits, also if it is stopped,
+				// such as while the server is running
+				stats = new StatsThread(queue, crawler);
+				Runtime.getRuntime().addShutdownHook(stats);
 			}
 		}
 		else {
 			index = new InvertedIndex();
-			searchIndex = new SearchIndex(index);
 		}
 		
 		if (crawler != null) {
@@ -67,14 +89,22 @@ public class Driver {
 				URL seed;
 				try {
 					seed = new URL(argumentMap.getString("-url"));
-					crawler.crawl(seed, limit);
+					if (generational != null) {
+						// -save is written once the crawl is done, since the server keeps running after it
+						Path save = argumentMap.hasFlag("-save") ? Paths.get(argumentMap.getString("-save", "index.segment"))
+								: null;
+						new CrawlThread(crawler, seed, limit, generational, save).start();
+					}
+					else {
+						crawler.crawl(seed, limit);
+					}
 				} catch (MalformedURLException e) {
 					System.out.println("Could not create URL from seed provided");
 				}
 			}
 		} 
 
-		if (argumentMap.hasFlag("-path")) {
+		if (argumentMap.hasFlag("-path") && !argumentMap.hasFlag("-load")) {
 			if (!argumentMap.hasValue("-path")) {
 				System.out.println("No Path Provided");
 				return;
@@ -106,17 +136,90 @@ public class Driver {
 			}
 		}
 		
+		InvertedIndexInterface frozen;
+		if (generational != null) {
+			// still being crawled, so search the published generations instead of a single snapshot
+			frozen = generational;
+		}
+		else if (argumentMap.hasFlag("-load")) {
+			if (!argumentMap.hasValue("-load")) {
+				System.out.println("No Index File Provided");
+				return;
+			}
+			try {
+				frozen = new MappedInvertedIndex(Paths.get(argumentMap.getString("-load")), scoring);
+			} catch (IOException e) {
+				System.out.println("The index file you provided could not be loaded.");
+				return;
+			}
+		}
+		else {
+			// the index is not written to after this point, so search a frozen snapshot that needs no locking
+			FrozenInvertedIndex snapshot = index.freeze();
+			
+			// -save writes the snapshot as a segment file, which -load serves from disk instead of building an index
+			if (argumentMap.hasFlag("-save")) {
+				String output = argumentMap.getString("-save", "index.segment");
+				try {
+					snapshot.toSegment(Paths.get(output));
+				} catch (IOException e) {
+					System.out.println("Could not write to file.");
+				}
+			}
+			frozen = snapshot.scoredBy(scoring);
+		}
+		// let the mutable index be garbage collected
+		index = null;
+		
+		// -top keeps only that many of the best results of each query, and is the page size of the search pages
+		int top = argumentMap.getInteger("-top", 0);
+		// -phrase searches each query as a phrase, and -and only finds documents that contain every word of it
+		QueryMode mode = QueryMode.ANY;
+		if (argumentMap.hasFlag("-phrase")) {
+			mode = QueryMode.PHRASE;
+		}
+		else if (argumentMap.hasFlag("-and")) {
+			mode = QueryMode.ALL;
+		}
+		if (queue != null) {
+			searchIndex = new ThreadSafeSearchIndex(frozen, queue, top, mode);
+		}
+		else {
+			searchIndex = new SearchIndex(frozen, top, mode);
+		}
+		
 		if (argumentMap.hasFlag("-port")) {
 			int PORT = argumentMap.getInteger("-port", 8080);
 			
+			if (snippets == null) {
+				snippets = new WebPageSnippets();
+			}
+			
+			CachedInvertedIndex cache = null;
+			InvertedIndexInterface searchable = frozen;
+			// the search pages cache the results of up to -cache queries (0 to disable) in -cachemb megabytes
+			int entries = argumentMap.getInteger("-cache", CachedInvertedIndex.DEFAULT_ENTRIES);
+			if (entries > 0) {
+				long bytes = argumentMap.getInteger("-cachemb", (int) (CachedInvertedIndex.DEFAULT_BYTES >> 20)) * 1024L * 1024L;
+				cache = new CachedInvertedIndex(frozen, entries, bytes);
+				searchable = cache;
+			}
+			
 			Server server = new Server(PORT);
 
 			ServletHandler handler = new ServletHandler();
-			handler.addServletWithMapping(new ServletHolder(new SearchServlet(index, snippets)), "/");
+			int pageSize = top > 0 ? top : SearchServlet.DEFAULT_PAGE_SIZE;
+			// each search on the pages expands to at most -maxterms terms, reads at most -maxpostings postings and
+			// runs for at most -timeout milliseconds (0 for no limit), and is then shown as truncated
+			QueryLimits limits = new QueryLimits(argumentMap.getInteger("-maxterms", 0),
+					argumentMap.getInteger("-maxpostings", 0), argumentMap.getInteger("-timeout", 0));
+			RankingCache rankings = new RankingCache(limits);
+			handler.addServletWithMapping(new ServletHolder(new SearchServlet(searchable, snippets, pageSize, rankings)), "/");
 			handler.addServletWithMapping(LoginUserServlet.class, "/login");
 			handler.addServletWithMapping(RegisterServlet.class, "/register");
 			handler.addServletWithMapping(LoginWelcomeServlet.class, "/welcome");
-			handler.addServletWithMapping(new ServletHolder(new SearchUserServlet(index, snippets)), "/search");
+			handler.addServletWithMapping(new ServletHolder(new SearchUserServlet(searchable, snippets, pageSize, rankings)), "/search");
+			handler.addServletWithMapping(new ServletHolder(new StatsServlet(cache, limits)), "/stats");
 			handler.addServletWithMapping(SettingsServlet.class, "/settings");
 			handler.addServletWithMapping(VisitedResultsServlet.class, "/save");
 			handler.addServletWithMapping(VisitedResultsServlet.class, "/visitedresults");
@@ -138,7 +241,7 @@ public class Driver {
 			Path outputPath = Paths.get(output);
 			logger.debug("outputing to JSON");
 			try {
-				index.toJSON(outputPath);
+				frozen.toJSON(outputPath);
 
 			} catch (IOException e) {
 				System.out.println("Could not write to file.");
@@ -155,7 +258,15 @@ public class Driver {
 				Path path = Paths.get(input);
 				
 				try {
-					searchIndex.addFromFile(path, argumentMap.hasFlag("-exact"));
+					if (argumentMap.hasFlag("-results") && !streamed) {
+						// write each result as soon as it is found instead of keeping all of them until the end
+						Path output = Paths.get(argumentMap.getString("-results", "results.json"));
+						searchIndex.streamFromFile(path, argumentMap.hasFlag("-exact"), output);
+						streamed = true;
+					}
+					else {
+						searchIndex.addFromFile(path, argumentMap.hasFlag("-exact"));
+					}
 					
 				} catch (IOException e) {
 					System.out.println("The path you provided could not be read through.");
@@ -164,7 +275,7 @@ public class Driver {
 			}
 		}
 		
-		if (argumentMap.hasFlag("-results")) {
+		if (argumentMap.hasFlag("-results") && !streamed) {
 			String output = argumentMap.getString("-results", "results.json");
 			Path path = Paths.get(output);
 			logger.debug("Outputing to JSON");
@@ -176,10 +287,78 @@ public class Driver {
 			}
 		}
 		
+		if (stats != null) {
+			stats.run();
+		}
+		
 		if (queue != null) {
 			queue.shutdown();
 		}
 		
 	}
+	
+	/**
+	 * Thread that crawls in the background and publishes the last generation
+	 * of the index once the crawl is finished, after which nothing is left to
+	 * publish, and then writes it as a segment file if one was asked for.
+	 */
+	private static class CrawlThread extends Thread {
+		
+		private final WebCrawler crawler;
+		private final URL seed;
+		private final int limit;
+		private final GenerationalInvertedIndex index;
+		private final Path save;
+		
+		public CrawlThread(WebCrawler crawler, URL seed, int limit, GenerationalInvertedIndex index, Path save) {
+			this.crawler = crawler;
+			this.seed = seed;
+			this.limit = limit;
+			this.index = index;
+			this.save = save;
+		}
+		
+		@Override
+		public void run() {
+			crawler.crawl(seed, limit);
+			index.publish();
+			index.shutdown();
+			if (save != null) {
+				try {
+					index.freeze().toSegment(save);
+				} catch (IOException e) {
+					System.out.println("Could not write to file.");
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Thread that prints the statistics of the work queues once, either when
+	 * the program is done or when it is stopped.
+	 */
+	private static class StatsThread extends Thread {
+		
+		private final WorkQueue queue;
+		private final WebCrawler crawler;
+		private boolean printed;
+		
+		public StatsThread(WorkQueue queue, WebCrawler crawler) {
+			this.queue = queue;
+			this.crawler = crawler;
+		}
+		
+		@Override
+		public synchronized void run() {
+			if (printed) {
+				return;
+			}
+			printed = true;
+			System.out.println("Work queue: " + queue);
+			if (crawler != null) {
+				System.out.println("Crawl queue: " + crawler.queue());
+			}
+		}
+	}
 
 }
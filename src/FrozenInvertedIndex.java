@@ -0,0 +1,743 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+
+/**
+ * Immutable, array-backed snapshot of an {@link InvertedIndex}. Words are kept
+ * in a {@link TermDictionary}, and the postings of each word are a contiguous
+ * range of the posting arrays. Since nothing can change after the snapshot is built,
+ * it can be searched by any number of threads without locking.
+ *
+ * @see InvertedIndex#freeze()
+ */
+public class FrozenInvertedIndex implements InvertedIndexInterface {
+
+	/**
+	 * Stores the sorted words, and for each word the range of postings that
+	 * belong to it.
+	 */
+	private final TermDictionary words;
+	private final int[] termOffsets;
+
+	/**
+	 * Stores the document id, frequency and first position of each posting as
+	 * three consecutive ints, so searches can rank postings without reading
+	 * their positions.
+	 */
+	private final int[] postings;
+
+	/**
+	 * Stores for each word the range of its blocks of postings, and the
+	 * largest frequency in each block, so top results can be found without
+	 * reading every posting.
+	 *
+	 * @see MaxScoreMatcher
+	 */
+	private final int[] blockOffsets;
+	private final int[] blockMaxima;
+
+	/**
+	 * Stores the BM25 impact of each posting, and the largest impact in each
+	 * block of postings.
+	 *
+	 * @see BM25
+	 */
+	private final int[] impacts;
+	private final int[] impactMaxima;
+
+	/**
+	 * Stores how searches rank their results.
+	 */
+	private final Scoring scoring;
+
+	/**
+	 * Stores for each posting the range of positions that belong to it.
+	 */
+	private final int[] positionOffsets;
+	private final int[] positions;
+
+	/**
+	 * Stores the sorted paths. The document id of a path is its index.
+	 */
+	private final String[] paths;
+
+	/**
+	 * Initializes the snapshot from already sorted arrays, and computes the
+	 * block maxima and BM25 impacts of the postings. Results are ranked by
+	 * frequency. Use {@link InvertedIndex#freeze()} to create a snapshot.
+	 *
+	 * @param words
+	 *            dictionary of the sorted words
+	 * @param termOffsets
+	 *            start of the postings of each word, plus the total number of
+	 *            postings
+	 * @param postings
+	 *            document id, frequency and first position of each posting,
+	 *            sorted by document id within each word
+	 * @param positionOffsets
+	 *            start of the positions of each posting, plus the total number
+	 *            of positions
+	 * @param positions
+	 *            sorted positions of each posting
+	 * @param paths
+	 *            sorted paths
+	 */
+	FrozenInvertedIndex(TermDictionary words, int[] termOffsets, int[] postings, int[] positionOffsets, int[] positions,
+			String[] paths) {
+		this.words = words;
+		this.termOffsets = termOffsets;
+		this.postings = postings;
+		this.blockOffsets = MaxScoreMatcher.blockOffsets(termOffsets);
+		this.blockMaxima = MaxScoreMatcher.blockMaxima(termOffsets, blockOffsets, postings, 3, 1);
+		this.impacts = BM25.impacts(termOffsets, postings, BM25.lengths(paths.length, postings));
+		this.impactMaxima = MaxScoreMatcher.blockMaxima(termOffsets, blockOffsets, impacts, 1, 0);
+		this.positionOffsets = positionOffsets;
+		this.positions = positions;
+		this.paths = paths;
+		this.scoring = Scoring.FREQUENCY;
+	}
+
+	/**
+	 * Initializes a view of a snapshot that shares its arrays but ranks
+	 * results differently.
+	 *
+	 * @param other
+	 *            snapshot to share
+	 * @param scoring
+	 *            how to rank results
+	 */
+	private FrozenInvertedIndex(FrozenInvertedIndex other, Scoring scoring) {
+		this.words = other.words;
+		this.termOffsets = other.termOffsets;
+		this.postings = other.postings;
+		this.blockOffsets = other.blockOffsets;
+		this.blockMaxima = other.blockMaxima;
+		this.impacts = other.impacts;
+		this.impactMaxima = other.impactMaxima;
+		this.positionOffsets = other.positionOffsets;
+		this.positions = other.positions;
+		this.paths = other.paths;
+		this.scoring = scoring;
+	}
+
+	/**
+	 * Returns a snapshot with the same contents that ranks results as
+	 * specified. Phrase searches are always ranked by the number of times the
+	 * phrase appears.
+	 *
+	 * @param scoring
+	 *            how to rank results
+	 * @return this snapshot if it already ranks results that way, or a view
+	 *         of it that shares its arrays
+	 */
+	public FrozenInvertedIndex scoredBy(Scoring scoring) {
+		return scoring == this.scoring ? this : new FrozenInvertedIndex(this, scoring);
+	}
+
+	/**
+	 * Returns a snapshot with the contents of this snapshot and another one,
+	 * such as one of the words added to an index since this snapshot was
+	 * created. Both are walked in sorted order, word by word and document by
+	 * document, so merging takes time linear in their sizes instead of
+	 * freezing everything again. Neither snapshot is changed, and the merged
+	 * snapshot ranks results like this one.
+	 *
+	 * @param other
+	 *            snapshot to merge with this one
+	 * @return merged snapshot
+	 */
+	public FrozenInvertedIndex merge(FrozenInvertedIndex other) {
+		// both path arrays are sorted, so the document ids of each map to increasing merged ids
+		String[] mergedPaths = new String[paths.length + other.paths.length];
+		int[] mine = new int[paths.length];
+		int[] theirs = new int[other.paths.length];
+		int numPaths = 0;
+		for (int i = 0, j = 0; i < paths.length || j < other.paths.length; numPaths++) {
+			int compare = i == paths.length ? 1 : j == other.paths.length ? -1 : paths[i].compareTo(other.paths[j]);
+			mergedPaths[numPaths] = compare <= 0 ? paths[i] : other.paths[j];
+			if (compare <= 0) {
+				mine[i++] = numPaths;
+			}
+			if (compare >= 0) {
+				theirs[j++] = numPaths;
+			}
+		}
+
+		String[] myWords = words.toArray();
+		String[] theirWords = other.words.toArray();
+		String[] mergedWords = new String[myWords.length + theirWords.length];
+		int[] mergedTermOffsets = new int[mergedWords.length + 1];
+		int[] mergedPostings = new int[postings.length + other.postings.length];
+		int[] mergedPositionOffsets = new int[mergedPostings.length / 3 + 1];
+		int[] mergedPositions = new int[positions.length + other.positions.length];
+
+		int term = 0;
+		int posting = 0;
+		int position = 0;
+		for (int i = 0, j = 0; i < myWords.length || j < theirWords.length; term++) {
+			int compare = i == myWords.length ? 1 : j == theirWords.length ? -1 : myWords[i].compareTo(theirWords[j]);
+			mergedWords[term] = compare <= 0 ? myWords[i] : theirWords[j];
+			mergedTermOffsets[term] = posting;
+
+			int x = compare <= 0 ? termOffsets[i] : 0;
+			int xEnd = compare <= 0 ? termOffsets[++i] : 0;
+			int y = compare >= 0 ? other.termOffsets[j] : 0;
+			int yEnd = compare >= 0 ? other.termOffsets[++j] : 0;
+
+			while (x < xEnd || y < yEnd) {
+				int myDocument = x < xEnd ? mine[postings[3 * x]] : Integer.MAX_VALUE;
+				int theirDocument = y < yEnd ? theirs[other.postings[3 * y]] : Integer.MAX_VALUE;
+				int start = position;
+
+				if (myDocument < theirDocument) {
+					for (int k = positionOffsets[x]; k < positionOffsets[x + 1]; k++) {
+						mergedPositions[position++] = positions[k];
+					}
+					x++;
+				}
+				else if (theirDocument < myDocument) {
+					for (int k = other.positionOffsets[y]; k < other.positionOffsets[y + 1]; k++) {
+						mergedPositions[position++] = other.positions[k];
+					}
+					y++;
+				}
+				else {
+					// the same word in the same document, so merge the positions of both
+					int k = positionOffsets[x];
+					int kEnd = positionOffsets[x + 1];
+					int l = other.positionOffsets[y];
+					int lEnd = other.positionOffsets[y + 1];
+					while (k < kEnd || l < lEnd) {
+						int value;
+						if (l == lEnd || (k < kEnd && positions[k] < other.positions[l])) {
+							value = positions[k++];
+						}
+						else if (k == kEnd || other.positions[l] < positions[k]) {
+							value = other.positions[l++];
+						}
+						else {
+							value = positions[k++];
+							l++;
+						}
+						mergedPositions[position++] = value;
+					}
+					x++;
+					y++;
+				}
+
+				mergedPostings[3 * posting] = Math.min(myDocument, theirDocument);
+				mergedPostings[3 * posting + 1] = position - start;
+				mergedPostings[3 * posting + 2] = mergedPositions[start];
+				mergedPositionOffsets[posting] = start;
+				posting++;
+			}
+		}
+		mergedTermOffsets[term] = posting;
+		mergedPositionOffsets[posting] = position;
+
+		FrozenInvertedIndex merged = new FrozenInvertedIndex(
+				new TermDictionary(Arrays.copyOf(mergedWords, term)), Arrays.copyOf(mergedTermOffsets, term + 1),
+				Arrays.copyOf(mergedPostings, 3 * posting), Arrays.copyOf(mergedPositionOffsets, posting + 1),
+				Arrays.copyOf(mergedPositions, position), Arrays.copyOf(mergedPaths, numPaths));
+		return merged.scoredBy(scoring);
+	}
+
+	/**
+	 * Returns the posting of the word and path, or -1 if there is none.
+	 *
+	 * @param word
+	 *            word to find
+	 * @param path
+	 *            path to find
+	 * @return index of the posting or -1
+	 */
+	private int findPosting(String word, String path) {
+		int term = words.find(word);
+		int document = Arrays.binarySearch(paths, path);
+		if (term < 0 || document < 0) {
+			return -1;
+		}
+		int low = termOffsets[term];
+		int high = termOffsets[term + 1] - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int value = postings[3 * middle];
+			if (value < document) {
+				low = middle + 1;
+			}
+			else if (value > document) {
+				high = middle - 1;
+			}
+			else {
+				return middle;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public boolean containsWord(String word) {
+		return words.find(word) >= 0;
+	}
+
+	@Override
+	public boolean containsPath(String word, String path) {
+		return findPosting(word, path) >= 0;
+	}
+
+	@Override
+	public boolean containsPosition(String word, String path, Integer position) {
+		int posting = findPosting(word, path);
+		return posting >= 0
+				&& Arrays.binarySearch(positions, positionOffsets[posting], positionOffsets[posting + 1], position) >= 0;
+	}
+
+	/**
+	 * Helper method for exact and partial search, which goes through each posting of the term and adds the
+	 * path, frequency, and initial position of the term and if the document is already in map, adds to
+	 * frequency and updates initial position if necessary.
+	 *
+	 * @param term
+	 *            index of the word to search for
+	 * @param resultMap
+	 * 			  results indexed by document id to add to or update
+	 * @param results
+	 * 			  list of results to add new results to
+	 */
+	private void wordSearch(int term, SearchResult[] resultMap, ArrayList<SearchResult> results) {
+		int end = 3 * termOffsets[term + 1];
+		for (int i = 3 * termOffsets[term]; i < end; i += 3) {
+			int document = postings[i];
+			int frequency = postings[i + 1];
+			int initialPosition = postings[i + 2];
+			int score = scoring == Scoring.BM25 ? impacts[i / 3] : 0;
+
+			SearchResult searchResult = resultMap[document];
+			if (searchResult == null) {
+				searchResult = new SearchResult(score, frequency, initialPosition, document, paths[document]);
+				resultMap[document] = searchResult;
+				results.add(searchResult);
+			}
+			else {
+				searchResult.addToScore(score);
+				searchResult.addToFrequency(frequency);
+				searchResult.updateInitialPosition(initialPosition);
+			}
+		}
+	}
+
+	/**
+	 * Finds every document that matches a range of terms, without sorting the
+	 * results. The terms are searched in order until the deadline of the
+	 * budget passes.
+	 *
+	 * @param ranges
+	 *            start and end of the range of term ids matched by each word
+	 * @param budget
+	 *            budget of the search
+	 * @return unsorted ArrayList of SearchResults
+	 */
+	private ArrayList<SearchResult> collect(int[] ranges, QueryBudget budget) {
+		ArrayList<SearchResult> results = new ArrayList<>();
+		SearchResult[] resultMap = new SearchResult[paths.length];
+
+		for (int r = 0; r < ranges.length; r += 2) {
+			for (int term = ranges[r]; term < ranges[r + 1]; term++) {
+				if (budget.expired()) {
+					return results;
+				}
+				wordSearch(term, resultMap, results);
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Returns the range of term ids each word matches. The range of each word
+	 * ends at the first term the budget does not admit.
+	 *
+	 * @param searchWords
+	 *            words to match
+	 * @param exact
+	 *            true to only match each word itself, false to match every word starting with it
+	 * @param budget
+	 *            budget that admits the terms to search
+	 * @return start and end of the range of each word, one pair after another, with an empty range for words
+	 *         that match nothing
+	 */
+	private int[] ranges(String[] searchWords, boolean exact, QueryBudget budget) {
+		int[] ranges = new int[2 * searchWords.length];
+		for (int i = 0; i < searchWords.length; i++) {
+			int start;
+			int end;
+			if (exact) {
+				start = words.find(searchWords[i]);
+				end = start < 0 ? start : start + 1;
+			}
+			else {
+				start = words.prefixStart(searchWords[i]);
+				end = words.prefixEnd(searchWords[i]);
+			}
+
+			int admitted = start;
+			while (admitted < end && budget.admit(termOffsets[admitted + 1] - termOffsets[admitted])) {
+				admitted++;
+			}
+			ranges[2 * i] = start;
+			ranges[2 * i + 1] = admitted;
+		}
+		return ranges;
+	}
+
+	/**
+	 * Finds the best results of a query by skipping the blocks of postings
+	 * that cannot enter them.
+	 *
+	 * @param ranges
+	 *            start and end of the range of term ids matched by each word
+	 * @param limit
+	 *            maximum number of results to return, which must be more than 0
+	 * @param budget
+	 *            budget of the search
+	 * @return sorted ArrayList of at most limit SearchResults
+	 * @see MaxScoreMatcher
+	 */
+	private ArrayList<SearchResult> topSearch(int[] ranges, int limit, QueryBudget budget) {
+		MaxScoreMatcher matcher = new MaxScoreMatcher(scoring) {
+			@Override
+			protected int size(int term) {
+				return termOffsets[term + 1] - termOffsets[term];
+			}
+
+			@Override
+			protected int document(int term, int posting) {
+				return postings[3 * (termOffsets[term] + posting)];
+			}
+
+			@Override
+			protected int frequency(int term, int posting) {
+				return postings[3 * (termOffsets[term] + posting) + 1];
+			}
+
+			@Override
+			protected int initialPosition(int term, int posting) {
+				return postings[3 * (termOffsets[term] + posting) + 2];
+			}
+
+			@Override
+			protected int score(int term, int posting) {
+				if (scoring == Scoring.BM25) {
+					return impacts[termOffsets[term] + posting];
+				}
+				return postings[3 * (termOffsets[term] + posting) + 1];
+			}
+
+			@Override
+			protected int blockMaximum(int term, int block) {
+				if (scoring == Scoring.BM25) {
+					return impactMaxima[blockOffsets[term] + block];
+				}
+				return blockMaxima[blockOffsets[term] + block];
+			}
+
+			@Override
+			protected String path(int document) {
+				return paths[document];
+			}
+		};
+		return matcher.search(ranges, limit, budget);
+	}
+
+	@Override
+	public ArrayList<SearchResult> search(String[] searchWords, boolean exact, int limit) {
+		return search(searchWords, exact, false, limit, new QueryBudget());
+	}
+
+	@Override
+	public ArrayList<SearchResult> search(String[] searchWords, boolean exact, boolean all, int limit) {
+		return search(searchWords, exact, all, limit, new QueryBudget());
+	}
+
+	@Override
+	public ArrayList<SearchResult> search(String[] searchWords, boolean exact, boolean all, int limit,
+			QueryBudget budget) {
+		int[] ranges = ranges(searchWords, exact, budget);
+		if (all) {
+			return conjunctiveSearch(ranges, limit, budget);
+		}
+		if (limit <= 0 || MaxScoreMatcher.countTerms(ranges) > MaxScoreMatcher.MAX_TERMS) {
+			return SearchResult.top(collect(ranges, budget), limit);
+		}
+		return topSearch(ranges, limit, budget);
+	}
+
+	/**
+	 * Finds the best results of a query by scoring every matching posting,
+	 * as searches that are not worth pruning do, so that pruning can be
+	 * compared against it.
+	 *
+	 * @param searchWords
+	 *            words to search for
+	 * @param exact
+	 *            true if searching for exact matches, false to search for
+	 *            partial matches
+	 * @param limit
+	 *            maximum number of results to return, or 0 or less for all of
+	 *            them
+	 * @return sorted ArrayList of at most limit SearchResults
+	 */
+	ArrayList<SearchResult> exhaustiveSearch(String[] searchWords, boolean exact, int limit) {
+		QueryBudget budget = new QueryBudget();
+		return SearchResult.top(collect(ranges(searchWords, exact, budget), budget), limit);
+	}
+
+	/**
+	 * Finds the documents that match every word of a query.
+	 *
+	 * @param ranges
+	 *            start and end of the range of term ids matched by each word
+	 * @param limit
+	 *            maximum number of results to return, or 0 or less for all of them
+	 * @param budget
+	 *            budget of the search
+	 * @return sorted ArrayList of at most limit SearchResults
+	 * @see ConjunctiveMatcher
+	 */
+	private ArrayList<SearchResult> conjunctiveSearch(int[] ranges, int limit, QueryBudget budget) {
+		ConjunctiveMatcher matcher = new ConjunctiveMatcher(paths.length) {
+			@Override
+			protected int size(int term) {
+				return termOffsets[term + 1] - termOffsets[term];
+			}
+
+			@Override
+			protected int document(int term, int posting) {
+				return postings[3 * (termOffsets[term] + posting)];
+			}
+
+			@Override
+			protected int frequency(int term, int posting) {
+				return postings[3 * (termOffsets[term] + posting) + 1];
+			}
+
+			@Override
+			protected int initialPosition(int term, int posting) {
+				return postings[3 * (termOffsets[term] + posting) + 2];
+			}
+
+			@Override
+			protected int score(int term, int posting) {
+				return scoring == Scoring.BM25 ? impacts[termOffsets[term] + posting] : 0;
+			}
+
+			@Override
+			protected String path(int document) {
+				return paths[document];
+			}
+		};
+		return matcher.search(ranges, limit, budget);
+	}
+
+	@Override
+	public ArrayList<SearchResult> phraseSearch(String[] phraseWords, int limit) {
+		return phraseSearch(phraseWords, limit, new QueryBudget());
+	}
+
+	@Override
+	public ArrayList<SearchResult> phraseSearch(String[] phraseWords, int limit, QueryBudget budget) {
+		// the postings of each word start at termOffsets[term], and each posting's positions at positionOffsets
+		final int[] starts = new int[phraseWords.length];
+		final int[] sizes = new int[phraseWords.length];
+		for (int i = 0; i < phraseWords.length; i++) {
+			int term = words.find(phraseWords[i]);
+			if (term < 0) {
+				return new ArrayList<>();
+			}
+			starts[i] = termOffsets[term];
+			sizes[i] = termOffsets[term + 1] - termOffsets[term];
+		}
+		for (int size : sizes) {
+			if (!budget.admit(size)) {
+				return new ArrayList<>();
+			}
+		}
+
+		PhraseMatcher matcher = new PhraseMatcher(phraseWords.length) {
+			@Override
+			protected int size(int word) {
+				return sizes[word];
+			}
+
+			@Override
+			protected int document(int word, int posting) {
+				return postings[3 * (starts[word] + posting)];
+			}
+
+			@Override
+			protected int frequency(int word, int posting) {
+				return postings[3 * (starts[word] + posting) + 1];
+			}
+
+			@Override
+			protected int openPositions(int word, int posting) {
+				return positionOffsets[starts[word] + posting];
+			}
+
+			@Override
+			protected int position(int word, int index) {
+				return positions[index];
+			}
+
+			@Override
+			protected String path(int document) {
+				return paths[document];
+			}
+		};
+		return matcher.search(limit, budget);
+	}
+
+	@Override
+	public ArrayList<ArrayList<SearchResult>> searchAll(List<String[]> queries, boolean exact, int limit) {
+		QueryBatch batch = new QueryBatch(paths.length) {
+			@Override
+			protected void visit(int term) {
+				int end = 3 * termOffsets[term + 1];
+				for (int i = 3 * termOffsets[term]; i < end; i += 3) {
+					addPosting(postings[i], postings[i + 1], postings[i + 2]);
+				}
+			}
+
+			@Override
+			protected String path(int document) {
+				return paths[document];
+			}
+		};
+
+		ArrayList<ArrayList<SearchResult>> results = new ArrayList<>();
+		for (String[] query : queries) {
+			// queries that match few terms are faster to prune on their own than to combine, and batches
+			// only combine frequencies
+			int[] ranges = ranges(query, exact, new QueryBudget());
+			if (scoring == Scoring.BM25) {
+				results.add(search(query, exact, limit));
+			}
+			else if (limit > 0 && MaxScoreMatcher.countTerms(ranges) <= MaxScoreMatcher.MAX_TERMS) {
+				results.add(topSearch(ranges, limit, new QueryBudget()));
+			}
+			else {
+				results.add(batch.search(ranges, limit));
+			}
+		}
+		return results;
+	}
+
+	@Override
+	public ArrayList<SearchResult> exactSearch(String[] searchWords) {
+		return search(searchWords, true, 0);
+	}
+
+	@Override
+	public ArrayList<SearchResult> exactSearch(String[] searchWords, boolean all) {
+		return search(searchWords, true, all, 0);
+	}
+
+	@Override
+	public ArrayList<SearchResult> partialSearch(String[] searchWords) {
+		return search(searchWords, false, 0);
+	}
+
+	@Override
+	public ArrayList<SearchResult> partialSearch(String[] searchWords, boolean all) {
+		return search(searchWords, false, all, 0);
+	}
+
+	/**
+	 * Returns the number of words in the snapshot.
+	 *
+	 * @return number of words
+	 */
+	public int numWords() {
+		return words.size();
+	}
+
+	/**
+	 * Returns the word at the specified index, in sorted order.
+	 *
+	 * @param term
+	 *            index of the word
+	 * @return word
+	 */
+	public String word(int term) {
+		return words.word(term);
+	}
+
+	/**
+	 * Returns the postings of the word at the specified index as a mapping of
+	 * paths to positions, sorted by path.
+	 *
+	 * @param term
+	 *            index of the word
+	 * @return mapping of paths to positions
+	 */
+	public TreeMap<String, Iterable<Integer>> postings(int term) {
+		TreeMap<String, Iterable<Integer>> byPath = new TreeMap<>();
+		for (int posting = termOffsets[term]; posting < termOffsets[term + 1]; posting++) {
+			byPath.put(paths[postings[3 * posting]], new Positions(posting));
+		}
+		return byPath;
+	}
+
+	@Override
+	public void toJSON(Path path) throws IOException {
+		JSONWriter.asDoubleNestedObject(this, path);
+	}
+
+	/**
+	 * Writes the snapshot to specified path as a segment file that can be
+	 * served by a {@link MappedInvertedIndex}.
+	 *
+	 * @param path
+	 *            path to write to
+	 */
+	public void toSegment(Path path) throws IOException {
+		MappedInvertedIndex.write(words.toArray(), termOffsets, postings, impacts, blockOffsets, blockMaxima,
+				impactMaxima, positionOffsets, positions, paths, path);
+	}
+
+	/**
+	 * View of the positions of a single posting.
+	 */
+	private class Positions implements Iterable<Integer> {
+
+		private final int posting;
+
+		public Positions(int posting) {
+			this.posting = posting;
+		}
+
+		@Override
+		public Iterator<Integer> iterator() {
+			return new Iterator<Integer>() {
+				private int index = positionOffsets[posting];
+
+				@Override
+				public boolean hasNext() {
+					return index < positionOffsets[posting + 1];
+				}
+
+				@Override
+				public Integer next() {
+					if (!hasNext()) {
+						throw new NoSuchElementException();
+					}
+					return positions[index++];
+				}
+			};
+		}
+	}
+}
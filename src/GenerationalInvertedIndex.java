@@ -0,0 +1,391 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Thread-safe index that can be searched without locking while it is still
+ * being written to. Writes go to a small index of the writes since the last
+ * publish. Once a batch of indexes (such as one per crawled page) has been
+ * merged, a background thread takes over the small index, freezes it, merges
+ * it into the current generation and publishes the result by swapping a
+ * single volatile reference. Searches use whichever generation was current
+ * when they started, so they never wait for writers, and writers never wait
+ * for a generation to be built, at the cost of searches not seeing writes
+ * made since the last publish.
+ *
+ * The inherited shards are never written to, so apart from the writes since
+ * the last publish, the index is only held once, in the frozen form of the
+ * current generation. Reading the whole index, such as with
+ * {@link #freeze()} or {@link #toJSON(Path)}, reads the current generation,
+ * so {@link #publish()} should be called first once writing is finished.
+ */
+public class GenerationalInvertedIndex extends ThreadSafeInvertedIndex {
+
+	/** The default number of merged indexes between published generations. */
+	public static final int DEFAULT_BATCH = 10;
+
+	/**
+	 * Stores the current generation and its number. These are two separate
+	 * volatiles: publish replaces the generation first and then increases the
+	 * number, so the two may briefly not match.
+	 */
+	private volatile FrozenInvertedIndex current;
+	private volatile long generation;
+
+	/**
+	 * Stores the number of merged indexes between published generations, and
+	 * the number merged since the last publish. Single words added with
+	 * {@link #add(String, String, int)} are not counted, and only become
+	 * visible with the next publish.
+	 */
+	private final int batchSize;
+	private int pending;
+
+	/**
+	 * Stores how the published generations rank results.
+	 */
+	private final Scoring scoring;
+
+	/**
+	 * Stores the writes made since the last publish, and the lock that writers
+	 * hold for reading while they add to it, so that publish can take it over
+	 * once no writer is using it.
+	 */
+	private ThreadSafeInvertedIndex recent;
+	private final ReadWriteLock swap;
+
+	/**
+	 * Stores the lock held while a generation is published, the thread that
+	 * publishes once a batch is merged, and whether that thread should stop.
+	 */
+	private final Object publishing;
+	private final Thread publisher;
+	private boolean shutdown;
+
+	/**
+	 * Initializes the index with the default batch size.
+	 */
+	public GenerationalInvertedIndex() {
+		this(DEFAULT_BATCH);
+	}
+
+	/**
+	 * Initializes the index with the specified batch size.
+	 *
+	 * @param batchSize
+	 *            number of merged indexes between published generations
+	 */
+	public GenerationalInvertedIndex(int batchSize) {
+		this(batchSize, Scoring.FREQUENCY);
+	}
+
+	/**
+	 * Initializes the index with the specified batch size and scoring, and
+	 * starts the thread that publishes its generations.
+	 *
+	 * @param batchSize
+	 *            number of merged indexes between published generations
+	 * @param scoring
+	 *            how the published generations rank results
+	 */
+	public GenerationalInvertedIndex(int batchSize, Scoring scoring) {
+		super();
+		this.batchSize = Math.max(1, batchSize);
+		this.pending = 0;
+		this.scoring = scoring;
+		this.current = super.freeze().scoredBy(scoring);
+		this.generation = 0;
+		this.recent = new ThreadSafeInvertedIndex();
+		this.swap = new ReadWriteLock();
+		this.publishing = new Object();
+		this.shutdown = false;
+		this.publisher = new Publisher();
+		this.publisher.start();
+	}
+
+	/**
+	 * Counts a merged index, and wakes up the publisher once a whole batch
+	 * has been merged.
+	 */
+	private void written() {
+		synchronized (this) {
+			pending++;
+			if (pending >= batchSize) {
+				this.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Freezes everything written since the last publish, merges it into the
+	 * current generation, and makes the result the current generation. Only
+	 * the writes since the last publish are frozen, and no shard is locked,
+	 * so writers do not wait while the generation is built. Is called by the
+	 * publisher thread once a batch has been merged, and should also be called
+	 * once writing is finished, so the last partial batch becomes visible to
+	 * searches.
+	 */
+	public void publish() {
+		synchronized (publishing) {
+			ThreadSafeInvertedIndex batch;
+			swap.lockReadWrite();
+			try {
+				batch = recent;
+				recent = new ThreadSafeInvertedIndex();
+			}
+			finally {
+				swap.unlockReadWrite();
+			}
+
+			synchronized (this) {
+				pending = 0;
+			}
+
+			// no writer can still be adding to the batch, so it is frozen without waiting for anyone
+			FrozenInvertedIndex frozen = batch.freeze();
+			if (frozen.numWords() > 0) {
+				current = current.merge(frozen);
+				generation++;
+			}
+		}
+	}
+
+	/**
+	 * Stops the publisher thread once it is done publishing. Writes made after
+	 * the last publish only become visible if {@link #publish()} is called.
+	 */
+	public void shutdown() {
+		synchronized (this) {
+			shutdown = true;
+			this.notifyAll();
+		}
+	}
+
+	/**
+	 * Returns the number of the current generation, which increases every time
+	 * a new generation is published.
+	 *
+	 * @return generation number
+	 */
+	public long generation() {
+		return generation;
+	}
+
+	/**
+	 * Adds all the contents of given InvertedIndex to this InvertedIndex. The
+	 * contents become visible to searches when the next generation is
+	 * published.
+	 *
+	 * @param other
+	 *            given InvertedIndex
+	 */
+	@Override
+	public void addAll(InvertedIndex other) {
+		swap.lockReadOnly();
+		try {
+			recent.addAll(other);
+		}
+		finally {
+			swap.unlockReadOnly();
+		}
+		written();
+	}
+
+	/**
+	 * Adds the word and the file it was found in and the position it was in the
+	 * file to the index. The word becomes visible to searches when the next
+	 * generation is published.
+	 *
+	 * @param word
+	 *            word to clean and add to index
+	 * @param position
+	 *            position word was found
+	 */
+	@Override
+	public void add(String word, String file, int position) {
+		swap.lockReadOnly();
+		try {
+			recent.add(word, file, position);
+		}
+		finally {
+			swap.unlockReadOnly();
+		}
+	}
+
+	/**
+	 * Returns the current generation. Writes since the last publish are not
+	 * included.
+	 *
+	 * @return current generation
+	 */
+	@Override
+	public FrozenInvertedIndex freeze() {
+		return current;
+	}
+
+	/**
+	 * Writes the current generation to specified path in JSON format. Writes
+	 * since the last publish are not included.
+	 *
+	 * @param path
+	 *            path to write to
+	 */
+	@Override
+	public void toJSON(Path path) throws IOException {
+		current.toJSON(path);
+	}
+
+	/**
+	 * Adds all the contents of the current generation to another index.
+	 *
+	 * @param index
+	 *            index to add to
+	 * @param copy
+	 *            ignored, since the contents are always copied out of the
+	 *            generation
+	 */
+	@Override
+	protected void mergeInto(InvertedIndex index, boolean copy) {
+		index.moveAll(thaw());
+	}
+
+	/**
+	 * Splits the current generation into parts by
+	 * {@link #partitionOf(String, int)}.
+	 *
+	 * @param parts
+	 *            number of parts
+	 * @return array of parts, with null for parts that have no words
+	 */
+	@Override
+	public InvertedIndex[] partition(int parts) {
+		return thaw().partition(parts);
+	}
+
+	/**
+	 * Returns a string representation of the current generation.
+	 */
+	@Override
+	public String toString() {
+		return thaw().toString();
+	}
+
+	/**
+	 * Copies the current generation into a new mutable index, word by word,
+	 * for the rare uses that need the contents as an {@link InvertedIndex}.
+	 *
+	 * @return mutable copy of the current generation
+	 */
+	private InvertedIndex thaw() {
+		FrozenInvertedIndex generation = current;
+		InvertedIndex index = new InvertedIndex();
+		for (int term = 0; term < generation.numWords(); term++) {
+			String word = generation.word(term);
+			for (Map.Entry<String, Iterable<Integer>> entry : generation.postings(term).entrySet()) {
+				for (int position : entry.getValue()) {
+					index.add(word, entry.getKey(), position);
+				}
+			}
+		}
+		return index;
+	}
+
+	@Override
+	public boolean containsWord(String word) {
+		return current.containsWord(word);
+	}
+
+	@Override
+	public boolean containsPath(String word, String path) {
+		return current.containsPath(word, path);
+	}
+
+	@Override
+	public boolean containsPosition(String word, String path, Integer position) {
+		return current.containsPosition(word, path, position);
+	}
+
+	@Override
+	public ArrayList<SearchResult> exactSearch(String[] searchWords) {
+		return current.exactSearch(searchWords);
+	}
+
+	@Override
+	public ArrayList<SearchResult> partialSearch(String[] searchWords) {
+		return current.partialSearch(searchWords);
+	}
+
+	@Override
+	public ArrayList<SearchResult> exactSearch(String[] searchWords, boolean all) {
+		return current.exactSearch(searchWords, all);
+	}
+
+	@Override
+	public ArrayList<SearchResult> partialSearch(String[] searchWords, boolean all) {
+		return current.partialSearch(searchWords, all);
+	}
+
+	@Override
+	public ArrayList<SearchResult> search(String[] searchWords, boolean exact, int limit) {
+		return current.search(searchWords, exact, limit);
+	}
+
+	@Override
+	public ArrayList<SearchResult> search(String[] searchWords, boolean exact, boolean all, int limit) {
+		return current.search(searchWords, exact, all, limit);
+	}
+
+	@Override
+	public ArrayList<SearchResult> search(String[] searchWords, boolean exact, boolean all, int limit,
+			QueryBudget budget) {
+		return current.search(searchWords, exact, all, limit, budget);
+	}
+
+	@Override
+	public ArrayList<SearchResult> phraseSearch(String[] phraseWords, int limit) {
+		return current.phraseSearch(phraseWords, limit);
+	}
+
+	@Override
+	public ArrayList<SearchResult> phraseSearch(String[] phraseWords, int limit, QueryBudget budget) {
+		return current.phraseSearch(phraseWords, limit, budget);
+	}
+
+	@Override
+	public ArrayList<ArrayList<SearchResult>> searchAll(List<String[]> queries, boolean exact, int limit) {
+		return current.searchAll(queries, exact, limit);
+	}
+
+	/**
+	 * Thread that publishes a new generation every time a batch of indexes has
+	 * been merged, until the index is shut down.
+	 */
+	private class Publisher extends Thread {
+
+		public Publisher() {
+			super("publisher");
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			while (true) {
+				synchronized (GenerationalInvertedIndex.this) {
+					while (pending < batchSize && !shutdown) {
+						try {
+							GenerationalInvertedIndex.this.wait();
+						} catch (InterruptedException e) {
+							return;
+						}
+					}
+					if (shutdown) {
+						return;
+					}
+				}
+				publish();
+			}
+		}
+	}
+}
@@ -1,46 +1,100 @@
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.TreeMap;
-import java.util.TreeSet;
 
 /**
- * Data structure to store words, their path, and their positions.
+ * Data structure to store words, their path, and their positions. Words and
+ * paths are each stored once in a dictionary that assigns them an integer id,
+ * and the postings only refer to those ids.
  */
-public class InvertedIndex {
+public class InvertedIndex implements InvertedIndexInterface {
 	/**
-	 * Stores a mapping of words to the positions the words were found.
+	 * Stores a mapping of words to their term ids, sorted by word.
 	 */
-	private final TreeMap<String, TreeMap<String, TreeSet<Integer>>> index;
+	private final TreeMap<String, Integer> terms;
+
+	/**
+	 * Stores the word for each term id.
+	 */
+	private final ArrayList<String> words;
+
+	/**
+	 * Stores, for each term id, the document ids and positions the word was
+	 * found.
+	 */
+	private final ArrayList<TermPostings> postings;
+
+	/**
+	 * Stores the paths and their document ids.
+	 */
+	private final DocumentTable documents;
 
 	/**
 	 * Initializes the index.
 	 */
 	public InvertedIndex() {
-		index = new TreeMap<>();
+		this(new DocumentTable());
+	}
+
+	/**
+	 * Initializes the index with a document table that may be shared with
+	 * other indexes, so their document ids agree.
+	 *
+	 * @param documents
+	 *            table of paths and document ids to use
+	 */
+	public InvertedIndex(DocumentTable documents) {
+		terms = new TreeMap<>();
+		words = new ArrayList<>();
+		postings = new ArrayList<>();
+		this.documents = documents;
 	}
 
 	/**
-	 * Private helper method that adds the word and the file it was found in and 
-	 * the position it was in the file to the index.
+	 * Returns the term id of the word, adding the word to the term dictionary
+	 * if it is not already there.
+	 *
+	 * @param word
+	 *            word to look up
+	 * @return term id of the word
+	 */
+	private int termId(String word) {
+		Integer id = terms.get(word);
+		if (id == null) {
+			id = words.size();
+			terms.put(word, id);
+			words.add(word);
+			postings.add(new TermPostings());
+		}
+		return id;
+	}
+
+	/**
+	 * Private helper method that adds the word and the document it was found in
+	 * and the position it was in the document to the index.
 	 *
 	 * @param word
 	 *            word to clean and add to index
-	 * @param file	
-	 * 			  file word was found in
+	 * @param document	
+	 * 			  id of document word was found in
 	 * @param position
 	 *            position word was found
 	 */
-	private void addHelper(String word, String file, int position) {
-		if (index.get(word) == null) {
-			index.put(word, new TreeMap<>());
-		} 
-		if (index.get(word).get(file) == null) {
-			index.get(word).put(file, new TreeSet<>());
+	private void addHelper(String word, int document, int position) {
+		TermPostings termPostings = postings.get(termId(word));
+		PostingList list = termPostings.get(document);
+		if (list == null) {
+			list = new PostingList();
+			termPostings.put(document, list);
 		}
-		index.get(word).get(file).add(position);
+		list.add(position);
 	}
 	
 	/**
@@ -55,7 +109,7 @@ public class InvertedIndex {
 	 *            position word was found
 	 */
 	public void add(String word, String file, int position) {
-	  	addHelper(word, file, position);
+	  	addHelper(word, documents.add(file), position);
 	}
 
 	/**
@@ -81,35 +135,216 @@ public class InvertedIndex {
 	 *            starting position
 	 */
 	public void addAll(String[] words, String filename, int start) {
+		int document = documents.add(filename);
 		int i = start;
 		for (String word : words) {
-			addHelper(word, filename, i);
+			addHelper(word, document, i);
 			i++;
 		}
 	}
 	
 	/**
-	 * Adds all the contents of given InvertedIndex to this InvertedIndex
+	 * Adds all the contents of given InvertedIndex to this InvertedIndex. The
+	 * term and document ids of the other index are translated to the ids of
+	 * this index. Posting lists are copied, so the other index is not changed
+	 * by later changes to this index.
 	 * 
 	 * @param other
 	 *            given InvertedIndex
 	 */
 	public void addAll(InvertedIndex other) {
-		for (String word : other.index.keySet()) {
-			if (!this.index.containsKey(word)) {
-				this.index.put(word, other.index.get(word));
+		other.mergeInto(this, true);
+	}
+
+	/**
+	 * Adds all the contents of given InvertedIndex to this InvertedIndex, and
+	 * takes over its posting lists instead of copying them. The other index is
+	 * consumed by the merge and must not be used afterwards, such as the parts
+	 * returned by {@link #partition(int)}.
+	 * 
+	 * @param other
+	 *            index to consume
+	 */
+	protected void moveAll(InvertedIndex other) {
+		other.mergeInto(this, false);
+	}
+
+	/**
+	 * Adds all the contents of this index to another index. Indexes that do
+	 * not keep their contents in the inherited fields override this to add
+	 * them from wherever they are kept.
+	 * 
+	 * @param index
+	 *            index to add to
+	 * @param copy
+	 *            true to copy the posting lists of this index, false if this
+	 *            index is consumed by the merge
+	 */
+	protected void mergeInto(InvertedIndex index, boolean copy) {
+		index.merge(this, copy);
+	}
+
+	/**
+	 * Adds all the contents of given InvertedIndex to this InvertedIndex.
+	 * 
+	 * @param other
+	 *            given InvertedIndex
+	 * @param copy
+	 *            true to copy the posting lists of the other index that are
+	 *            not merged into an existing list, false to take them over
+	 */
+	private void merge(InvertedIndex other, boolean copy) {
+		int[] documentMap = new int[other.documents.size()];
+		for (int i = 0; i < documentMap.length; i++) {
+			documentMap[i] = documents.add(other.documents.path(i));
+		}
+		
+		for (int otherTerm = 0; otherTerm < other.words.size(); otherTerm++) {
+			TermPostings termPostings = postings.get(termId(other.words.get(otherTerm)));
+			TermPostings otherPostings = other.postings.get(otherTerm);
+			for (int i = 0; i < otherPostings.size(); i++) {
+				int document = documentMap[otherPostings.document(i)];
+				PostingList list = termPostings.get(document);
+				if (list == null) {
+					list = otherPostings.list(i);
+					termPostings.put(document, copy ? new PostingList(list) : list);
+				}
+				else {
+					list.addAll(otherPostings.list(i));
+				}
 			}
-			else {
-				for (String path : other.index.get(word).keySet()) {
-					if (!this.index.get(word).containsKey(path)) {
-						this.index.get(word).put(path, other.index.get(word).get(path));
-					}
-					else {
-						this.index.get(word).get(path).addAll(other.index.get(word).get(path));
-					}
+		}
+	}
+
+	/**
+	 * Returns the part a word belongs to when an index is partitioned. Words
+	 * are assigned by their first two characters, so all words that share a
+	 * prefix of at least two characters are in the same part.
+	 *
+	 * @param word
+	 *            word to assign
+	 * @param parts
+	 *            number of parts
+	 * @return part of the word, between 0 and parts - 1
+	 */
+	public static int partitionOf(String word, int parts) {
+		int hash = 0;
+		for (int i = 0; i < word.length() && i < 2; i++) {
+			hash = 31 * hash + word.charAt(i);
+		}
+		return Math.floorMod(hash, parts);
+	}
+
+	/**
+	 * Splits this index into parts by {@link #partitionOf(String, int)}. The
+	 * parts share the document table of this index, but have their own copies
+	 * of its posting lists.
+	 *
+	 * @param parts
+	 *            number of parts
+	 * @return array of parts, with null for parts that have no words
+	 */
+	public InvertedIndex[] partition(int parts) {
+		InvertedIndex[] partitions = new InvertedIndex[parts];
+		for (int term = 0; term < words.size(); term++) {
+			String word = words.get(term);
+			int part = partitionOf(word, parts);
+			if (partitions[part] == null) {
+				partitions[part] = new InvertedIndex(documents);
+			}
+			partitions[part].postings.set(partitions[part].termId(word), new TermPostings(postings.get(term)));
+		}
+		return partitions;
+	}
+
+	/**
+	 * Creates an immutable, array-backed snapshot of this index for searching.
+	 * Documents are renumbered in path order, so the postings of each word are
+	 * sorted by both document id and path. Changes made to this index after
+	 * the snapshot is created are not reflected in the snapshot.
+	 *
+	 * @return frozen snapshot of this index
+	 */
+	public FrozenInvertedIndex freeze() {
+		return freeze(Collections.singletonList(this), documents);
+	}
+
+	/**
+	 * Creates an immutable, array-backed snapshot of several indexes that share
+	 * a document table and do not share any words, such as the parts returned
+	 * by {@link #partition(int)}.
+	 *
+	 * @param parts
+	 *            indexes to include in the snapshot
+	 * @param documents
+	 *            document table shared by the indexes
+	 * @return frozen snapshot of the indexes
+	 */
+	protected static FrozenInvertedIndex freeze(List<InvertedIndex> parts, DocumentTable documents) {
+		String[] paths = new String[documents.size()];
+		for (int i = 0; i < paths.length; i++) {
+			paths[i] = documents.path(i);
+		}
+		Arrays.sort(paths);
+		int[] renumbered = new int[paths.length];
+		for (int i = 0; i < renumbered.length; i++) {
+			renumbered[i] = Arrays.binarySearch(paths, documents.path(i));
+		}
+		
+		TreeMap<String, TermPostings> sorted = new TreeMap<>();
+		for (InvertedIndex part : parts) {
+			for (Map.Entry<String, Integer> entry : part.terms.entrySet()) {
+				sorted.put(entry.getKey(), part.postings.get(entry.getValue()));
+			}
+		}
+		
+		int numPostings = 0;
+		int numPositions = 0;
+		for (TermPostings termPostings : sorted.values()) {
+			numPostings += termPostings.size();
+			for (int i = 0; i < termPostings.size(); i++) {
+				numPositions += termPostings.list(i).size();
+			}
+		}
+		
+		String[] sortedWords = new String[sorted.size()];
+		int[] termOffsets = new int[sorted.size() + 1];
+		int[] postingStatistics = new int[3 * numPostings];
+		int[] positionOffsets = new int[numPostings + 1];
+		int[] positions = new int[numPositions];
+		
+		int term = 0;
+		int posting = 0;
+		int position = 0;
+		for (Map.Entry<String, TermPostings> entry : sorted.entrySet()) {
+			sortedWords[term] = entry.getKey();
+			termOffsets[term] = posting;
+			
+			// sort the postings by their new document id, keeping track of their old index
+			TermPostings termPostings = entry.getValue();
+			long[] order = new long[termPostings.size()];
+			for (int i = 0; i < order.length; i++) {
+				order[i] = ((long) renumbered[termPostings.document(i)] << 32) | i;
+			}
+			Arrays.sort(order);
+			
+			for (long key : order) {
+				PostingList list = termPostings.list((int) key);
+				postingStatistics[3 * posting] = (int) (key >>> 32);
+				postingStatistics[3 * posting + 1] = list.size();
+				postingStatistics[3 * posting + 2] = list.first();
+				positionOffsets[posting] = position;
+				for (int value : list.toArray()) {
+					positions[position++] = value;
 				}
+				posting++;
 			}
+			term++;
 		}
+		termOffsets[term] = posting;
+		positionOffsets[posting] = position;
+		
+		return new FrozenInvertedIndex(new TermDictionary(sortedWords), termOffsets, postingStatistics, positionOffsets, positions, paths);
 	}
 
 	/**
@@ -119,7 +354,7 @@ public class InvertedIndex {
 	 *            path to write to
 	 */
 	public void toJSON(Path path) throws IOException {
-		JSONWriter.asDoubleNestedObject(index, path);
+		JSONWriter.asDoubleNestedObject(terms, postings, documents, path);
 	}
 
 	/**
@@ -127,7 +362,16 @@ public class InvertedIndex {
 	 */
 	@Override
 	public String toString() {
-		return index.toString();
+		TreeMap<String, TreeMap<String, PostingList>> readable = new TreeMap<>();
+		for (Map.Entry<String, Integer> entry : terms.entrySet()) {
+			TreeMap<String, PostingList> paths = new TreeMap<>();
+			TermPostings termPostings = postings.get(entry.getValue());
+			for (int i = 0; i < termPostings.size(); i++) {
+				paths.put(documents.path(termPostings.document(i)), termPostings.list(i));
+			}
+			readable.put(entry.getKey(), paths);
+		}
+		return readable.toString();
 	}
 	
 	/**
@@ -138,7 +382,7 @@ public class InvertedIndex {
 	 * @return true if index contains word, false otherwise
 	 */
 	public boolean containsWord(String word) {
-		return index.containsKey(word);
+		return terms.containsKey(word);
 	}
 	
 	/**
@@ -151,7 +395,9 @@ public class InvertedIndex {
 	 * @return true if index contains word, false otherwise
 	 */
 	public boolean containsPath(String word, String path) {
-		return (containsWord(word) && index.get(word).containsKey(path));
+		Integer term = terms.get(word);
+		int document = documents.find(path);
+		return term != null && document >= 0 && postings.get(term).contains(document);
 	}
 	
 	/**
@@ -166,36 +412,313 @@ public class InvertedIndex {
 	 * @return true if index contains word, false otherwise
 	 */
 	public boolean containsPosition(String word, String path, Integer position) {
-		return containsPath(word, path) && index.get(word).get(path).contains(position);
+		return containsPath(word, path) 
+				&& postings.get(terms.get(word)).get(documents.find(path)).contains(position);
 	}
 	
 	/**
-	 * Helper method for exact and partial search, which goes through each path of word in index and adds the 
-	 * path, frequency, and initial position of word and if path is already in map, adds to frequency and updates
-	 * initial position if necessary.
+	 * Helper method for exact and partial search, which goes through each document of the term in index and adds 
+	 * the path, frequency, and initial position of the term and if the document is already in map, adds to 
+	 * frequency and updates initial position if necessary.
 	 *
-	 * @param word
-	 *            word to search for
+	 * @param term
+	 *            term id to search for
 	 * @param resultMap
-	 * 			  map to add to or update
+	 * 			  map of document ids to results to add to or update
+	 * @param results
+	 * 			  list of results to add new results to
 	 */
-	private void wordSearch(String word, HashMap<String, SearchResult> resultMap, ArrayList<SearchResult> words) {
-		for (String path : index.get(word).keySet()) {
-			int frequency = index.get(word).get(path).size();
-			int initialPosition = index.get(word).get(path).first();
+	protected void wordSearch(int term, HashMap<Integer, SearchResult> resultMap, ArrayList<SearchResult> results) {
+		TermPostings termPostings = postings.get(term);
+		for (int i = 0; i < termPostings.size(); i++) {
+			int document = termPostings.document(i);
+			int frequency = termPostings.list(i).size();
+			int initialPosition = termPostings.list(i).first();
 			
-			if (!resultMap.containsKey(path)) {
-				resultMap.put(path, new SearchResult(frequency, initialPosition, path));
-				words.add(resultMap.get(path));
+			SearchResult searchResult = resultMap.get(document);
+			if (searchResult == null) {
+				searchResult = new SearchResult(frequency, initialPosition, document, documents.path(document));
+				resultMap.put(document, searchResult);
+				results.add(searchResult);
 			}
 			else {
-				SearchResult searchResult = resultMap.get(path);
 				searchResult.addToFrequency(frequency);
 				searchResult.updateInitialPosition(initialPosition);
 			}
 		}
 	}
 	
+	/**
+	 * Finds every document that matches the search words, without sorting the
+	 * results.
+	 *
+	 * @param searchWords
+	 *            words to search for
+	 * @param exact
+	 *            true to search for exact matches, false to search for partial matches
+	 * @param budget
+	 *            budget that admits the terms to search
+	 * @return unsorted ArrayList of SearchResults
+	 */
+	protected ArrayList<SearchResult> collect(String[] searchWords, boolean exact, QueryBudget budget) {
+		ArrayList<SearchResult> results = new ArrayList<>();
+		HashMap<Integer, SearchResult> resultMap = new HashMap<>();
+		for (String word : searchWords) {
+			if (exact) {
+				Integer term = terms.get(word);
+				if (term != null && budget.admit(postings.get(term).size())) {
+					wordSearch(term, resultMap, results);
+				}
+				continue;
+			}
+
+			for (Map.Entry<String, Integer> entry : terms.tailMap(word, true).entrySet()) {
+				if (entry.getKey().startsWith(word) && budget.admit(postings.get(entry.getValue()).size())) {
+					wordSearch(entry.getValue(), resultMap, results);
+				}
+				else {
+					break;
+				}
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Returns the postings of the word, or null if the word is not in the
+	 * index.
+	 *
+	 * @param word
+	 *            word to find
+	 * @return postings of the word or null
+	 */
+	protected TermPostings termPostings(String word) {
+		Integer term = terms.get(word);
+		return term == null ? null : postings.get(term);
+	}
+
+	/**
+	 * Returns the postings of the term with the specified id.
+	 *
+	 * @param term
+	 *            id of the term
+	 * @return postings of the term
+	 */
+	protected TermPostings termPostings(int term) {
+		return postings.get(term);
+	}
+
+	/**
+	 * Returns the terms from the word on, in sorted order, with their term
+	 * ids, so that the terms a word matches can be walked in the same order
+	 * across several indexes.
+	 *
+	 * @param word
+	 *            first word to return, if it is in the index
+	 * @return iterator over the terms and their ids
+	 */
+	protected Iterator<Map.Entry<String, Integer>> termsFrom(String word) {
+		return terms.tailMap(word, true).entrySet().iterator();
+	}
+
+	/**
+	 * Finds the documents a phrase appears in, given the postings of each of
+	 * its words. The positions of a posting are only decoded once every word
+	 * was found in its document.
+	 *
+	 * @param phrase
+	 *            postings of each word of the phrase, in order, or null for
+	 *            words that are not in the index
+	 * @param documents
+	 *            table of paths the postings refer to
+	 * @param limit
+	 *            maximum number of results to return, or 0 or less for all of them
+	 * @param budget
+	 *            budget that must admit every word of the phrase
+	 * @return sorted ArrayList of at most limit SearchResults
+	 */
+	protected static ArrayList<SearchResult> phraseSearch(final TermPostings[] phrase, final DocumentTable documents,
+			int limit, QueryBudget budget) {
+		for (TermPostings termPostings : phrase) {
+			if (termPostings == null) {
+				return new ArrayList<>();
+			}
+		}
+		for (TermPostings termPostings : phrase) {
+			if (!budget.admit(termPostings.size())) {
+				return new ArrayList<>();
+			}
+		}
+
+		final int[][] decoded = new int[phrase.length][];
+
+		PhraseMatcher matcher = new PhraseMatcher(phrase.length) {
+			@Override
+			protected int size(int word) {
+				return phrase[word].size();
+			}
+
+			@Override
+			protected int document(int word, int posting) {
+				return phrase[word].document(posting);
+			}
+
+			@Override
+			protected int frequency(int word, int posting) {
+				return phrase[word].list(posting).size();
+			}
+
+			@Override
+			protected int openPositions(int word, int posting) {
+				decoded[word] = phrase[word].list(posting).toArray();
+				return 0;
+			}
+
+			@Override
+			protected int position(int word, int index) {
+				return decoded[word][index];
+			}
+
+			@Override
+			protected String path(int document) {
+				return documents.path(document);
+			}
+		};
+		return matcher.search(limit, budget);
+	}
+
+	@Override
+	public ArrayList<SearchResult> phraseSearch(String[] phraseWords, int limit) {
+		return phraseSearch(phraseWords, limit, new QueryBudget());
+	}
+
+	@Override
+	public ArrayList<SearchResult> phraseSearch(String[] phraseWords, int limit, QueryBudget budget) {
+		TermPostings[] phrase = new TermPostings[phraseWords.length];
+		for (int i = 0; i < phraseWords.length; i++) {
+			phrase[i] = termPostings(phraseWords[i]);
+		}
+		return phraseSearch(phrase, documents, limit, budget);
+	}
+
+	@Override
+	public ArrayList<SearchResult> search(String[] searchWords, boolean exact, int limit) {
+		return SearchResult.top(collect(searchWords, exact, new QueryBudget()), limit);
+	}
+
+	/**
+	 * Adds the postings of every term that matches the word.
+	 *
+	 * @param word
+	 *            word to match
+	 * @param exact
+	 *            true to only match the word itself, false to match every word starting with it
+	 * @param matched
+	 *            list to add the postings to
+	 * @param budget
+	 *            budget that admits the terms to add
+	 */
+	protected void matchPostings(String word, boolean exact, ArrayList<TermPostings> matched, QueryBudget budget) {
+		if (exact) {
+			Integer term = terms.get(word);
+			if (term != null && budget.admit(postings.get(term).size())) {
+				matched.add(postings.get(term));
+			}
+			return;
+		}
+
+		for (Map.Entry<String, Integer> entry : terms.tailMap(word, true).entrySet()) {
+			if (!entry.getKey().startsWith(word) || !budget.admit(postings.get(entry.getValue()).size())) {
+				break;
+			}
+			matched.add(postings.get(entry.getValue()));
+		}
+	}
+
+	/**
+	 * Finds the documents that match every word of a query, given the postings
+	 * of the terms each word matches.
+	 *
+	 * @param matched
+	 *            postings of every matched term
+	 * @param ranges
+	 *            start and end of the matched postings of each word, one pair
+	 *            after another
+	 * @param documents
+	 *            table of paths the postings refer to
+	 * @param limit
+	 *            maximum number of results to return, or 0 or less for all of them
+	 * @param budget
+	 *            budget of the search, whose deadline stops it early
+	 * @return sorted ArrayList of at most limit SearchResults
+	 */
+	protected static ArrayList<SearchResult> conjunctiveSearch(final ArrayList<TermPostings> matched, int[] ranges,
+			final DocumentTable documents, int limit, QueryBudget budget) {
+		ConjunctiveMatcher matcher = new ConjunctiveMatcher(documents.size()) {
+			@Override
+			protected int size(int term) {
+				return matched.get(term).size();
+			}
+
+			@Override
+			protected int document(int term, int posting) {
+				return matched.get(term).document(posting);
+			}
+
+			@Override
+			protected int frequency(int term, int posting) {
+				return matched.get(term).list(posting).size();
+			}
+
+			@Override
+			protected int initialPosition(int term, int posting) {
+				return matched.get(term).list(posting).first();
+			}
+
+			@Override
+			protected int score(int term, int posting) {
+				return 0;
+			}
+
+			@Override
+			protected String path(int document) {
+				return documents.path(document);
+			}
+		};
+		return matcher.search(ranges, limit, budget);
+	}
+
+	@Override
+	public ArrayList<SearchResult> search(String[] searchWords, boolean exact, boolean all, int limit) {
+		return search(searchWords, exact, all, limit, new QueryBudget());
+	}
+
+	@Override
+	public ArrayList<SearchResult> search(String[] searchWords, boolean exact, boolean all, int limit,
+			QueryBudget budget) {
+		if (!all) {
+			return SearchResult.top(collect(searchWords, exact, budget), limit);
+		}
+
+		ArrayList<TermPostings> matched = new ArrayList<>();
+		int[] ranges = new int[2 * searchWords.length];
+		for (int i = 0; i < searchWords.length; i++) {
+			ranges[2 * i] = matched.size();
+			matchPostings(searchWords[i], exact, matched, budget);
+			ranges[2 * i + 1] = matched.size();
+		}
+		return conjunctiveSearch(matched, ranges, documents, limit, budget);
+	}
+
+	@Override
+	public ArrayList<ArrayList<SearchResult>> searchAll(List<String[]> queries, boolean exact, int limit) {
+		ArrayList<ArrayList<SearchResult>> results = new ArrayList<>();
+		for (String[] query : queries) {
+			results.add(search(query, exact, limit));
+		}
+		return results;
+	}
+
 	/**
 	 * Searches for exact matches of specified words given and returns a list of SearchResults 
 	 *
@@ -204,17 +727,12 @@ public class InvertedIndex {
 	 * @return ArrayList of SearchResults
 	 */
 	public ArrayList<SearchResult> exactSearch(String[] searchWords) {
-		ArrayList<SearchResult> words = new ArrayList<>();
-		HashMap<String, SearchResult> resultMap = new HashMap<>();
-		
-		for (String word : searchWords) {
-			if (containsWord(word)) {
-				wordSearch(word, resultMap, words);
-			}
-		}
-		
-		Collections.sort(words);
-		return words;
+		return search(searchWords, true, 0);
+	}
+
+	@Override
+	public ArrayList<SearchResult> exactSearch(String[] searchWords, boolean all) {
+		return search(searchWords, true, all, 0);
 	}
 	
 	/**
@@ -225,20 +743,11 @@ public class InvertedIndex {
 	 * @return ArrayList of SearchResults
 	 */
 	public ArrayList<SearchResult> partialSearch(String[] searchWords) {
-		ArrayList<SearchResult> words = new ArrayList<>();
-		HashMap<String, SearchResult> resultMap = new HashMap<>();
-		for (String word : searchWords) {
-			for (String key : index.tailMap(word, true).navigableKeySet()) {
-				if (key.startsWith(word)) {
-					wordSearch(key, resultMap, words);
-				}
-				else {
-					break;
-				}
-			}
-		}
-		
-		Collections.sort(words);
-		return words;
+		return search(searchWords, false, 0);
+	}
+
+	@Override
+	public ArrayList<SearchResult> partialSearch(String[] searchWords, boolean all) {
+		return search(searchWords, false, all, 0);
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,184 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+public interface InvertedIndexInterface {
+
+	/**
+	 * Checks to see if index contains word given
+	 *
+	 * @param word
+	 *            word to find in index
+	 * @return true if index contains word, false otherwise
+	 */
+	public boolean containsWord(String word);
+
+	/**
+	 * Checks to see if index contains path given for the specified word
+	 *
+	 * @param word
+	 *            word to find in index
+	 * @param path
+	 *            path to find in index
+	 * @return true if index contains word, false otherwise
+	 */
+	public boolean containsPath(String word, String path);
+
+	/**
+	 * Checks to see if index contains position given for the specified word and path
+	 *
+	 * @param word
+	 *            word to find in index
+	 * @param path
+	 *            path to find in index
+	 * @param position
+	 *            position to find in index
+	 * @return true if index contains word, false otherwise
+	 */
+	public boolean containsPosition(String word, String path, Integer position);
+
+	/**
+	 * Searches for exact matches of specified words given and returns a list of SearchResults 
+	 *
+	 * @param searchWords
+	 *            words to find exact searches for
+	 * @return ArrayList of SearchResults
+	 */
+	public ArrayList<SearchResult> exactSearch(String[] searchWords);
+
+	/**
+	 * Searches for partial matches of specified words given and returns a list of SearchResults 
+	 *
+	 * @param searchWords
+	 *            words to find partial searches for
+	 * @return ArrayList of SearchResults
+	 */
+	public ArrayList<SearchResult> partialSearch(String[] searchWords);
+
+	/**
+	 * Searches for exact matches of specified words given and returns a list of SearchResults, either of every
+	 * document with any of the words or only of documents with all of them
+	 *
+	 * @param searchWords
+	 *            words to find exact searches for
+	 * @param all
+	 *            true to only find documents that contain every word, false to find documents with any of them
+	 * @return ArrayList of SearchResults
+	 */
+	public ArrayList<SearchResult> exactSearch(String[] searchWords, boolean all);
+
+	/**
+	 * Searches for partial matches of specified words given and returns a list of SearchResults, either of every
+	 * document with any of the words or only of documents with all of them
+	 *
+	 * @param searchWords
+	 *            words to find partial searches for
+	 * @param all
+	 *            true to only find documents that contain every word, false to find documents with any of them
+	 * @return ArrayList of SearchResults
+	 */
+	public ArrayList<SearchResult> partialSearch(String[] searchWords, boolean all);
+
+	/**
+	 * Searches for exact or partial matches of specified words given and returns only the best SearchResults,
+	 * without sorting every match.
+	 *
+	 * @param searchWords
+	 *            words to search for
+	 * @param exact
+	 *            true to search for exact matches, false to search for partial matches
+	 * @param limit
+	 *            maximum number of results to return, or 0 or less for all of them
+	 * @return sorted ArrayList of at most limit SearchResults
+	 */
+	public ArrayList<SearchResult> search(String[] searchWords, boolean exact, int limit);
+
+	/**
+	 * Searches for exact or partial matches of specified words given and returns only the best SearchResults. If
+	 * all is true, only documents that match every word are found, and they are ranked the same as they would be
+	 * when matching any word.
+	 *
+	 * @param searchWords
+	 *            words to search for
+	 * @param exact
+	 *            true to search for exact matches, false to search for partial matches
+	 * @param all
+	 *            true to only find documents that contain every word, false to find documents with any of them
+	 * @param limit
+	 *            maximum number of results to return, or 0 or less for all of them
+	 * @return sorted ArrayList of at most limit SearchResults
+	 */
+	public ArrayList<SearchResult> search(String[] searchWords, boolean exact, boolean all, int limit);
+
+	/**
+	 * Searches like {@link #search(String[], boolean, boolean, int)}, but only searches the terms the budget
+	 * admits, and stops once its deadline has passed. If the budget runs out, the results are only the ones found
+	 * until then, and {@link QueryBudget#truncated()} is true.
+	 *
+	 * @param searchWords
+	 *            words to search for
+	 * @param exact
+	 *            true to search for exact matches, false to search for partial matches
+	 * @param all
+	 *            true to only find documents that contain every word, false to find documents with any of them
+	 * @param limit
+	 *            maximum number of results to return, or 0 or less for all of them
+	 * @param budget
+	 *            work the search may do
+	 * @return sorted ArrayList of at most limit SearchResults
+	 */
+	public ArrayList<SearchResult> search(String[] searchWords, boolean exact, boolean all, int limit,
+			QueryBudget budget);
+
+	/**
+	 * Searches for documents that contain every word of a phrase next to each other and in the same order, and
+	 * returns only the best SearchResults. Each word must match exactly. The frequency of a result is the number of
+	 * times the phrase appears in the document, and its initial position is where the first appearance starts.
+	 *
+	 * @param phraseWords
+	 *            words of the phrase, in order
+	 * @param limit
+	 *            maximum number of results to return, or 0 or less for all of them
+	 * @return sorted ArrayList of at most limit SearchResults
+	 */
+	public ArrayList<SearchResult> phraseSearch(String[] phraseWords, int limit);
+
+	/**
+	 * Searches like {@link #phraseSearch(String[], int)}, but only if the budget admits every word of the phrase,
+	 * and stops once its deadline has passed.
+	 *
+	 * @param phraseWords
+	 *            words of the phrase, in order
+	 * @param limit
+	 *            maximum number of results to return, or 0 or less for all of them
+	 * @param budget
+	 *            work the search may do
+	 * @return sorted ArrayList of at most limit SearchResults
+	 */
+	public ArrayList<SearchResult> phraseSearch(String[] phraseWords, int limit, QueryBudget budget);
+
+	/**
+	 * Searches for exact or partial matches of every query in a batch, and returns the best SearchResults of each
+	 * query. Indexes may search the whole batch at once, which is faster than searching one query at a time when
+	 * queries share words.
+	 *
+	 * @param queries
+	 *            words of each query to search for
+	 * @param exact
+	 *            true to search for exact matches, false to search for partial matches
+	 * @param limit
+	 *            maximum number of results to return for each query, or 0 or less for all of them
+	 * @return sorted ArrayList of at most limit SearchResults for each query, in the same order as the queries
+	 */
+	public ArrayList<ArrayList<SearchResult>> searchAll(List<String[]> queries, boolean exact, int limit);
+
+	/**
+	 * Writes index to specified path in JSON format.
+	 *
+	 * @param path
+	 *            path to write to
+	 */
+	public void toJSON(Path path) throws IOException;
+
+}
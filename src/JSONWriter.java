@@ -6,6 +6,7 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 import java.util.TreeMap;
 import java.util.TreeSet;
 
@@ -49,11 +50,12 @@ public class JSONWriter {
 	 *            number of times to indent the array itself
 	 * @throws IOException
 	 */
-	private static void asArray(BufferedWriter writer, TreeSet<Integer> elements, int level) throws IOException {
+	private static void asArray(BufferedWriter writer, Iterable<Integer> elements, int level) throws IOException {
 		writer.write("[");
 		writer.newLine();
 		
 		Iterator<Integer> iterator = elements.iterator();
+		boolean empty = !iterator.hasNext();
 		if (iterator.hasNext()){
 			writer.write(indent(level) + iterator.next());
 		}
@@ -62,7 +64,7 @@ public class JSONWriter {
 			writer.newLine();
 			writer.write(indent(level) + iterator.next());
 		}
-		if (!elements.isEmpty()) {
+		if (!empty) {
 			writer.newLine();
 		}
 		writer.write(indent(level - 1) + "]");
@@ -79,7 +81,7 @@ public class JSONWriter {
 	 *            number of times to indent the nested set itself
 	 * @throws IOException
 	 */
-	public static void asNestedSet(TreeMap<String, TreeSet<Integer>> elements, BufferedWriter writer, int level) throws IOException {
+	public static void asNestedSet(TreeMap<String, ? extends Iterable<Integer>> elements, BufferedWriter writer, int level) throws IOException {
 		writer.write("{");
 		writer.newLine();
 		
@@ -99,30 +101,89 @@ public class JSONWriter {
 	}
 	
 	/**
-	 * Writes a DoubleNestedObject to file in JSON format
+	 * Returns the postings of a single term as a mapping of paths to positions,
+	 * sorted by path.
 	 *
-	 * @param index
-	 *            double nested object to write to file
+	 * @param postings
+	 *            document ids and positions of the term
+	 * @param documents
+	 *            path of each document id
+	 * @return mapping of paths to positions
+	 */
+	private static TreeMap<String, PostingList> byPath(TermPostings postings, DocumentTable documents) {
+		TreeMap<String, PostingList> paths = new TreeMap<>();
+		for (int i = 0; i < postings.size(); i++) {
+			paths.put(documents.path(postings.document(i)), postings.list(i));
+		}
+		return paths;
+	}
+
+	/**
+	 * Writes a DoubleNestedObject to file in JSON format. Term and document ids
+	 * are turned back into words and paths as they are written.
+	 *
+	 * @param terms
+	 *            mapping of words to term ids, sorted by word
+	 * @param postings
+	 *            document ids and positions for each term id
+	 * @param documents
+	 *            path of each document id
 	 * @param path
 	 *            path to write to
 	 */
-	public static void asDoubleNestedObject(TreeMap<String, TreeMap<String, TreeSet<Integer>>> index, Path path)
+	public static void asDoubleNestedObject(TreeMap<String, Integer> terms, 
+			List<TermPostings> postings, DocumentTable documents, Path path)
 			throws IOException {
 		try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
 			writer.write("{");
 			writer.flush();
 			writer.newLine();
 			
-			if (!index.isEmpty()) {
-				for (String word : index.headMap(index.lastKey(), false).navigableKeySet()) {
+			if (!terms.isEmpty()) {
+				for (String word : terms.headMap(terms.lastKey(), false).navigableKeySet()) {
 					writer.write(indent(1) + quote(word) + ": ");
-					asNestedSet(index.get(word), writer, 2);
+					asNestedSet(byPath(postings.get(terms.get(word)), documents), writer, 2);
 					writer.write(",");
 					writer.flush();
 					writer.newLine();
 				}
-				writer.write(indent(1) + quote(index.lastKey()) + ": ");
-				asNestedSet(index.get(index.lastKey()), writer, 1);
+				writer.write(indent(1) + quote(terms.lastKey()) + ": ");
+				asNestedSet(byPath(postings.get(terms.get(terms.lastKey())), documents), writer, 1);
+				writer.newLine();
+			}
+			writer.write("}");
+			writer.flush();
+			writer.newLine();
+			writer.close();
+		}
+	}
+	
+	/**
+	 * Writes a frozen index to file in JSON format, in the same format as
+	 * {@link #asDoubleNestedObject(TreeMap, List, DocumentTable, Path)}.
+	 *
+	 * @param index
+	 *            frozen index to write to file
+	 * @param path
+	 *            path to write to
+	 */
+	public static void asDoubleNestedObject(FrozenInvertedIndex index, Path path) throws IOException {
+		try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+			writer.write("{");
+			writer.flush();
+			writer.newLine();
+			
+			int last = index.numWords() - 1;
+			for (int term = 0; term < last; term++) {
+				writer.write(indent(1) + quote(index.word(term)) + ": ");
+				asNestedSet(index.postings(term), writer, 2);
+				writer.write(",");
+				writer.flush();
+				writer.newLine();
+			}
+			if (last >= 0) {
+				writer.write(indent(1) + quote(index.word(last)) + ": ");
+				asNestedSet(index.postings(last), writer, 1);
 				writer.newLine();
 			}
 			writer.write("}");
@@ -151,6 +212,54 @@ public class JSONWriter {
 			
 	}
 	
+	/**
+	 * Writes the results of a single query as a JSON object, without a
+	 * trailing comma or line break.
+	 *
+	 * @param writer
+	 *            writer to write to
+	 * @param query
+	 *            query the results were found for
+	 * @param results
+	 *            sorted results of the query
+	 * @throws IOException
+	 */
+	public static void asQueryObject(BufferedWriter writer, String query, List<SearchResult> results) throws IOException {
+		writer.write(indent(1) + "{");
+		writer.newLine();
+		writer.write(indent(2) + quote("queries") + ": " + quote(query) + ",");
+		writer.newLine();
+		writer.write(indent(2) + quote("results") + ": [");
+		writer.newLine();
+		
+		for (int i = 0; i < results.size(); i++) {
+			SearchResult result = results.get(i);
+			writer.write(indent(3) + "{");
+			writer.newLine();
+
+			writer.write(indent(4) + quote("where") + ": "+ quote(result.path) + ",");
+			writer.newLine();
+
+			writer.write(indent(4) + quote("count") + ": " + result.frequency() + ",");
+			writer.newLine();
+
+			if (result.score() > 0) {
+				writer.write(indent(4) + quote("score") + ": " + result.score() + ",");
+				writer.newLine();
+			}
+
+			writer.write(indent(4) + quote("index") + ": " + result.initialPosition());
+			writer.newLine();
+
+			writer.write(indent(3) + (i < results.size() - 1 ? "}," : "}"));
+			writer.newLine();
+		}
+		
+		writer.write(indent(2) + "]");
+		writer.newLine();
+		writer.write(indent(1) + "}");
+	}
+
 	/**
 	 * Writes a NestedObject to file in JSON format
 	 *
@@ -162,74 +271,18 @@ public class JSONWriter {
 	public static void asNestedObject(TreeMap<String, ArrayList<SearchResult>> index, Path path) throws IOException {
 		try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
 			writer.write("[");
-			writer.flush();
 			writer.newLine();
 			for (String query : index.keySet()) {
-				writer.write(indent(1) + "{");
-				writer.flush();
-				writer.newLine();
-				writer.write(indent(2) + quote("queries") + ": " + quote(query) + ",");
-				writer.newLine();
-				writer.write(indent(2) + quote("results") + ": [");
-				writer.newLine();
-				
-				if (!index.get(query).isEmpty()) {
-					for (SearchResult result : index.get(query).subList(0, index.get(query).size() - 1)) {
-						writer.write(indent(3) + "{");
-						writer.flush();
-						writer.newLine();
-
-						writer.write(indent(4) + quote("where") + ": "+ quote(result.path) + ",");
-						writer.newLine();
-
-						writer.write(indent(4) + quote("count") + ": " + result.frequency() + ",");
-						writer.newLine();
-
-						writer.write(indent(4) + quote("index") + ": " + result.initialPosition());
-						writer.newLine();
-
-						writer.write(indent(3) + "},");
-						writer.flush();
-						writer.newLine();
-					}
-					SearchResult result = index.get(query).get(index.get(query).size() - 1);
-					writer.write(indent(3) + "{");
-					writer.flush();
-					writer.newLine();
-
-					writer.write(indent(4) + quote("where") + ": "+ quote(result.path) + ",");
-					writer.newLine();
-
-					writer.write(indent(4) + quote("count") + ": " + result.frequency() + ",");
-					writer.newLine();
-
-					writer.write(indent(4) + quote("index") + ": " + result.initialPosition());
-					writer.newLine();
-
-					writer.write(indent(3) + "}");
-					writer.flush();
-					writer.newLine();
-				}
-				
-				writer.write(indent(2) + "]");
-				writer.newLine();
-				writer.write(indent(1) + "}");
+				asQueryObject(writer, query, index.get(query));
 				
 				if (!query.equals(index.lastKey())) {
 					writer.write(",");
 				}
-				writer.flush();
 				writer.newLine();
 			}
 			
 			writer.write("]");
-			writer.flush();
 			writer.newLine();
-			writer.close();
 		}
 	}
 }
-
-
-
-
@@ -0,0 +1,214 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations in nanoseconds, laid out like HdrHistogram. Every
+ * power of two is split into {@link #SUB_BUCKETS} buckets of equal width, so
+ * any duration is counted in a bucket whose width is at most about 3% of the
+ * duration, from nanoseconds up to centuries, in under two thousand counts.
+ *
+ * Only one thread may record into a histogram at a time, so recording a
+ * duration is a few shifts and plain stores, without locking or atomic
+ * updates. Threads that record the same kind of duration each keep their own
+ * histogram, and {@link #add(LatencyHistogram)} them together to read them.
+ * Any thread may read a histogram while it is recorded into, so percentiles
+ * are only as exact as the buckets and the moment they are read at.
+ */
+public class LatencyHistogram {
+
+	/** The number of bits of each duration that are kept exactly. */
+	private static final int SUB_BITS = 5;
+
+	/** The number of buckets each power of two is split into. */
+	public static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+	/**
+	 * Stores the number of durations in each bucket.
+	 */
+	private final AtomicLongArray counts;
+
+	/**
+	 * Stores the number of durations, their sum and the largest one.
+	 */
+	private final AtomicLong count;
+	private final AtomicLong total;
+	private final AtomicLong max;
+
+	/**
+	 * Initializes an empty histogram.
+	 */
+	public LatencyHistogram() {
+		this.counts = new AtomicLongArray((64 - SUB_BITS) * SUB_BUCKETS);
+		this.count = new AtomicLong();
+		this.total = new AtomicLong();
+		this.max = new AtomicLong();
+	}
+
+	/**
+	 * Returns the bucket of a duration. Durations below twice
+	 * {@link #SUB_BUCKETS} have a bucket each, and every power of two above
+	 * that is split into {@link #SUB_BUCKETS} buckets.
+	 *
+	 * @param value
+	 *            duration, at least 0
+	 * @return index of the bucket
+	 */
+	private static int bucket(long value) {
+		int shift = Math.max(0, 63 - Long.numberOfLeadingZeros(value) - SUB_BITS);
+		return (shift << SUB_BITS) + (int) (value >>> shift);
+	}
+
+	/**
+	 * Returns the largest duration counted in a bucket.
+	 *
+	 * @param bucket
+	 *            index of the bucket
+	 * @return largest duration of the bucket
+	 */
+	private static long highest(int bucket) {
+		if (bucket < 2 * SUB_BUCKETS) {
+			return bucket;
+		}
+		int shift = (bucket >>> SUB_BITS) - 1;
+		long sub = (bucket & (SUB_BUCKETS - 1)) + SUB_BUCKETS;
+		return ((sub + 1) << shift) - 1;
+	}
+
+	/**
+	 * Counts a duration. Must only be called by the thread that records into
+	 * this histogram.
+	 *
+	 * @param nanos
+	 *            duration in nanoseconds, where negative durations are counted
+	 *            as 0
+	 */
+	public void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		// only this thread writes, so ordered stores are enough for readers to see the counts
+		int bucket = bucket(nanos);
+		counts.lazySet(bucket, counts.get(bucket) + 1);
+		count.lazySet(count.get() + 1);
+		total.lazySet(total.get() + nanos);
+		if (nanos > max.get()) {
+			max.lazySet(nanos);
+		}
+	}
+
+	/**
+	 * Adds the durations counted by another histogram to this one. Must only
+	 * be called by the thread that records into this histogram.
+	 *
+	 * @param other
+	 *            histogram to add
+	 */
+	public void add(LatencyHistogram other) {
+		long added = 0;
+		for (int i = 0; i < counts.length(); i++) {
+			long n = other.counts.get(i);
+			if (n > 0) {
+				counts.lazySet(i, counts.get(i) + n);
+				added += n;
+			}
+		}
+		// counted from the buckets, so the count matches them even if the other is being recorded into
+		count.lazySet(count.get() + added);
+		total.lazySet(total.get() + other.total.get());
+		if (other.max.get() > max.get()) {
+			max.lazySet(other.max.get());
+		}
+	}
+
+	/**
+	 * Returns the number of durations counted.
+	 *
+	 * @return number of durations
+	 */
+	public long count() {
+		return count.get();
+	}
+
+	/**
+	 * Returns the sum of the durations counted.
+	 *
+	 * @return sum in nanoseconds
+	 */
+	public long total() {
+		return total.get();
+	}
+
+	/**
+	 * Returns the mean of the durations counted.
+	 *
+	 * @return mean in nanoseconds, or 0 if there are none
+	 */
+	public double mean() {
+		long n = count.get();
+		return n == 0 ? 0 : (double) total.get() / n;
+	}
+
+	/**
+	 * Returns the largest duration counted.
+	 *
+	 * @return largest duration in nanoseconds, or 0 if there are none
+	 */
+	public long max() {
+		return max.get();
+	}
+
+	/**
+	 * Returns the duration that the specified percentage of the durations
+	 * counted are at most, to within the width of its bucket.
+	 *
+	 * @param percentile
+	 *            percentage of the durations, from 0 to 100
+	 * @return duration in nanoseconds, or 0 if there are none
+	 */
+	public long percentile(double percentile) {
+		long n = count.get();
+		if (n == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(Math.min(100, percentile) / 100 * n));
+		long seen = 0;
+		for (int i = 0; i < counts.length(); i++) {
+			seen += counts.get(i);
+			if (seen >= rank) {
+				return Math.min(highest(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	/**
+	 * Returns a duration as text in the largest unit it has a whole number of.
+	 *
+	 * @param nanos
+	 *            duration in nanoseconds
+	 * @return duration as text
+	 */
+	public static String format(double nanos) {
+		if (nanos >= 1e9) {
+			return String.format("%.2f s", nanos / 1e9);
+		}
+		if (nanos >= 1e6) {
+			return String.format("%.2f ms", nanos / 1e6);
+		}
+		if (nanos >= 1e3) {
+			return String.format("%.1f us", nanos / 1e3);
+		}
+		return String.format("%.0f ns", nanos);
+	}
+
+	/**
+	 * Returns a summary of the number, mean, percentiles and largest of the
+	 * durations.
+	 */
+	@Override
+	public String toString() {
+		return String.format("count: %d, mean: %s, p50: %s, p90: %s, p99: %s, p99.9: %s, max: %s", count(),
+				format(mean()), format(percentile(50)), format(percentile(90)), format(percentile(99)),
+				format(percentile(99.9)), format(max()));
+	}
+}
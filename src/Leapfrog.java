@@ -0,0 +1,188 @@
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Intersects lists of postings sorted by document id, such as the postings of
+ * the words of a query, by leapfrogging from the rarest list: every other list
+ * gallops forward to the first document at or after the current candidate, so
+ * most postings of long lists are skipped instead of scanned, and the work
+ * depends mostly on the length of the shortest list. Subclasses say where the
+ * document ids of the lists are, and may also use {@link #seek} on its own.
+ */
+public abstract class Leapfrog {
+
+	/**
+	 * Stores the number of postings of each list, the lists from the fewest to
+	 * the most postings, and the current posting of each list.
+	 */
+	private int[] sizes;
+	private int[] order;
+	private int[] postings;
+
+	/**
+	 * Stores the document all lists are at, and whether the lists are at it,
+	 * so the next search starts after it.
+	 */
+	private int document;
+	private boolean aligned;
+
+	/**
+	 * Returns the document id of a posting.
+	 *
+	 * @param list
+	 *            index of the list
+	 * @param posting
+	 *            index of the posting
+	 * @return document id
+	 */
+	protected abstract int document(int list, int posting);
+
+	/**
+	 * Returns the first posting of a list at or after the given one whose
+	 * document id is at least the target, by galloping forward and then
+	 * binary searching the last step.
+	 *
+	 * @param list
+	 *            index of the list
+	 * @param size
+	 *            number of postings of the list
+	 * @param from
+	 *            posting to start from
+	 * @param target
+	 *            document id to find
+	 * @return index of the posting, or size if there is none
+	 */
+	public int seek(int list, int size, int from, int target) {
+		if (from >= size || document(list, from) >= target) {
+			return from;
+		}
+
+		// the document at low is before the target throughout
+		int low = from;
+		int step = 1;
+		while (low + step < size && document(list, low + step) < target) {
+			low += step;
+			step <<= 1;
+		}
+
+		int high = Math.min(low + step, size);
+		while (high - low > 1) {
+			int middle = (low + high) >>> 1;
+			if (document(list, middle) < target) {
+				low = middle;
+			}
+			else {
+				high = middle;
+			}
+		}
+		return high;
+	}
+
+	/**
+	 * Starts intersecting lists from their first postings. The rarest list
+	 * leads, since every document must be in it.
+	 *
+	 * @param sizes
+	 *            number of postings of each list
+	 */
+	public void start(final int[] sizes) {
+		Integer[] byRarity = new Integer[sizes.length];
+		for (int list = 0; list < sizes.length; list++) {
+			byRarity[list] = list;
+		}
+		Arrays.sort(byRarity, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return Integer.compare(sizes[a], sizes[b]);
+			}
+		});
+
+		this.sizes = sizes;
+		this.order = new int[sizes.length];
+		for (int i = 0; i < sizes.length; i++) {
+			order[i] = byRarity[i];
+		}
+		this.postings = new int[sizes.length];
+		this.aligned = false;
+	}
+
+	/**
+	 * Moves every list to the next document they all have. Each candidate
+	 * taken from the lead takes a step of the budget.
+	 *
+	 * @param budget
+	 *            budget of the search, whose deadline stops it early
+	 * @return true if the lists are at a document they all have, false if a
+	 *         list ran out or the budget stopped the search
+	 */
+	public boolean next(QueryBudget budget) {
+		if (sizes.length == 0) {
+			return false;
+		}
+
+		int lead = order[0];
+		if (aligned) {
+			postings[lead]++;
+			aligned = false;
+		}
+
+		while (postings[lead] < sizes[lead] && !budget.step()) {
+			int target = document(lead, postings[lead]);
+			boolean found = true;
+			for (int i = 1; i < order.length; i++) {
+				int list = order[i];
+				postings[list] = seek(list, sizes[list], postings[list], target);
+				if (postings[list] >= sizes[list]) {
+					return false;
+				}
+
+				int next = document(list, postings[list]);
+				if (next > target) {
+					// the lead skips ahead to the first document this list has
+					postings[lead] = seek(lead, sizes[lead], postings[lead], next);
+					found = false;
+					break;
+				}
+			}
+
+			if (found) {
+				document = target;
+				aligned = true;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the document all lists are at after {@link #next(QueryBudget)}
+	 * found one.
+	 *
+	 * @return document id
+	 */
+	public int document() {
+		return document;
+	}
+
+	/**
+	 * Returns the current posting of a list.
+	 *
+	 * @param list
+	 *            index of the list
+	 * @return index of the posting
+	 */
+	public int posting(int list) {
+		return postings[list];
+	}
+
+	/**
+	 * Returns a list by its rank from the fewest to the most postings.
+	 *
+	 * @param rank
+	 *            0 for the rarest list
+	 * @return index of the list
+	 */
+	public int list(int rank) {
+		return order[rank];
+	}
+}
@@ -0,0 +1,816 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read-only inverted index served directly from a memory-mapped segment file.
+ * Opening a segment only maps the file, so startup does not depend on the size
+ * of the index, and the pages are shared by every process that maps the same
+ * file. Searches return the same results as the {@link FrozenInvertedIndex}
+ * the segment was written from.
+ *
+ * The segment is a header of six ints (magic number, version, number of words,
+ * postings, positions and paths), followed by these sections:
+ * <ol>
+ * <li>start of each word in the word bytes, plus the total length</li>
+ * <li>sorted words encoded in UTF-8</li>
+ * <li>start of the postings of each word, plus the number of postings</li>
+ * <li>document id, frequency and first position of each posting</li>
+ * <li>BM25 impact of each posting</li>
+ * <li>start of the blocks of postings of each word, plus the number of
+ * blocks</li>
+ * <li>largest frequency in each block of postings</li>
+ * <li>largest impact in each block of postings</li>
+ * <li>start of the positions of each posting, plus the number of positions</li>
+ * <li>positions of each posting</li>
+ * <li>start of each path in the path bytes, plus the total length</li>
+ * <li>sorted paths encoded in UTF-8</li>
+ * </ol>
+ *
+ * All ints are big-endian.
+ *
+ * @see FrozenInvertedIndex#toSegment(Path)
+ */
+public class MappedInvertedIndex implements InvertedIndexInterface {
+
+	/** Identifies a segment file. */
+	public static final int MAGIC = 0x53494458;
+
+	/** Version of the segment format. */
+	public static final int VERSION = 4;
+
+	/** Mapped contents of the segment file. */
+	private final MappedByteBuffer buffer;
+
+	/** How searches rank their results. */
+	private final Scoring scoring;
+
+	/** Number of words, postings, positions and paths in the segment. */
+	private final int numWords;
+	private final int numPostings;
+	private final int numPositions;
+	private final int numPaths;
+
+	/** Byte offsets of each section in the segment. */
+	private final int wordOffsetsStart;
+	private final int wordBytesStart;
+	private final int termOffsetsStart;
+	private final int postingsStart;
+	private final int impactsStart;
+	private final int blockOffsetsStart;
+	private final int blockMaximaStart;
+	private final int impactMaximaStart;
+	private final int positionOffsetsStart;
+	private final int positionsStart;
+	private final int pathOffsetsStart;
+	private final int pathBytesStart;
+
+	/**
+	 * Maps the segment file at the specified path, ranking results by
+	 * frequency.
+	 *
+	 * @param path
+	 *            segment file to map
+	 * @throws IOException
+	 *             if the file cannot be mapped or is not a segment file
+	 */
+	public MappedInvertedIndex(Path path) throws IOException {
+		this(path, Scoring.FREQUENCY);
+	}
+
+	/**
+	 * Maps the segment file at the specified path. Phrase searches are always
+	 * ranked by the number of times the phrase appears.
+	 *
+	 * @param path
+	 *            segment file to map
+	 * @param scoring
+	 *            how to rank results
+	 * @throws IOException
+	 *             if the file cannot be mapped or is not a segment file
+	 */
+	public MappedInvertedIndex(Path path, Scoring scoring) throws IOException {
+		this.scoring = scoring;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Segment file is too large to map: " + path);
+			}
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+
+		if (buffer.capacity() < 24 || buffer.getInt(0) != MAGIC) {
+			throw new IOException("Not a segment file: " + path);
+		}
+		if (buffer.getInt(4) != VERSION) {
+			throw new IOException("Unsupported segment version " + buffer.getInt(4) + ": " + path);
+		}
+
+		numWords = buffer.getInt(8);
+		numPostings = buffer.getInt(12);
+		numPositions = buffer.getInt(16);
+		numPaths = buffer.getInt(20);
+
+		wordOffsetsStart = 24;
+		wordBytesStart = wordOffsetsStart + 4 * (numWords + 1);
+		termOffsetsStart = wordBytesStart + intAt(wordOffsetsStart, numWords);
+		postingsStart = termOffsetsStart + 4 * (numWords + 1);
+		impactsStart = postingsStart + 12 * numPostings;
+		blockOffsetsStart = impactsStart + 4 * numPostings;
+		blockMaximaStart = blockOffsetsStart + 4 * (numWords + 1);
+		impactMaximaStart = blockMaximaStart + 4 * intAt(blockOffsetsStart, numWords);
+		positionOffsetsStart = impactMaximaStart + 4 * intAt(blockOffsetsStart, numWords);
+		positionsStart = positionOffsetsStart + 4 * (numPostings + 1);
+		pathOffsetsStart = positionsStart + 4 * numPositions;
+		pathBytesStart = pathOffsetsStart + 4 * (numPaths + 1);
+
+		if (pathBytesStart + intAt(pathOffsetsStart, numPaths) != buffer.capacity()) {
+			throw new IOException("Segment file is truncated or corrupt: " + path);
+		}
+	}
+
+	/**
+	 * Writes the arrays of a frozen index as a segment file.
+	 *
+	 * @see FrozenInvertedIndex#toSegment(Path)
+	 */
+	static void write(String[] words, int[] termOffsets, int[] postings, int[] impacts, int[] blockOffsets,
+			int[] blockMaxima, int[] impactMaxima, int[] positionOffsets, int[] positions, String[] paths, Path path)
+			throws IOException {
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(words.length);
+			out.writeInt(postings.length / 3);
+			out.writeInt(positions.length);
+			out.writeInt(paths.length);
+
+			writeStrings(out, words);
+			writeInts(out, termOffsets);
+			writeInts(out, postings);
+			writeInts(out, impacts);
+			writeInts(out, blockOffsets);
+			writeInts(out, blockMaxima);
+			writeInts(out, impactMaxima);
+			writeInts(out, positionOffsets);
+			writeInts(out, positions);
+			writeStrings(out, paths);
+		}
+	}
+
+	/**
+	 * Writes the array of ints.
+	 *
+	 * @param out
+	 *            stream to write to
+	 * @param values
+	 *            values to write
+	 * @throws IOException
+	 */
+	private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+		for (int value : values) {
+			out.writeInt(value);
+		}
+	}
+
+	/**
+	 * Writes the start offset of each string followed by the strings encoded
+	 * in UTF-8.
+	 *
+	 * @param out
+	 *            stream to write to
+	 * @param strings
+	 *            strings to write
+	 * @throws IOException
+	 */
+	private static void writeStrings(DataOutputStream out, String[] strings) throws IOException {
+		byte[][] encoded = new byte[strings.length][];
+		int offset = 0;
+		for (int i = 0; i < strings.length; i++) {
+			encoded[i] = strings[i].getBytes(StandardCharsets.UTF_8);
+			out.writeInt(offset);
+			offset += encoded[i].length;
+		}
+		out.writeInt(offset);
+
+		for (byte[] bytes : encoded) {
+			out.write(bytes);
+		}
+	}
+
+	/**
+	 * Returns the int at the specified index of a section.
+	 *
+	 * @param section
+	 *            byte offset of the section
+	 * @param index
+	 *            index of the int in the section
+	 * @return int value
+	 */
+	private int intAt(int section, int index) {
+		return buffer.getInt(section + 4 * index);
+	}
+
+	/**
+	 * Decodes the string at the specified index of a string section.
+	 *
+	 * @param offsetsStart
+	 *            byte offset of the string offsets
+	 * @param bytesStart
+	 *            byte offset of the string bytes
+	 * @param index
+	 *            index of the string
+	 * @return decoded string
+	 */
+	private String stringAt(int offsetsStart, int bytesStart, int index) {
+		int from = intAt(offsetsStart, index);
+		byte[] bytes = new byte[intAt(offsetsStart, index + 1) - from];
+
+		// work on a duplicate so concurrent searches do not share a position
+		ByteBuffer view = buffer.duplicate();
+		view.position(bytesStart + from);
+		view.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Returns the word at the specified index.
+	 *
+	 * @param term
+	 *            index of the word
+	 * @return word
+	 */
+	private String word(int term) {
+		return stringAt(wordOffsetsStart, wordBytesStart, term);
+	}
+
+	/**
+	 * Returns the path with the specified document id.
+	 *
+	 * @param document
+	 *            document id
+	 * @return path
+	 */
+	private String path(int document) {
+		return stringAt(pathOffsetsStart, pathBytesStart, document);
+	}
+
+	/**
+	 * Binary searches the sorted words for the specified word.
+	 *
+	 * @param word
+	 *            word to find
+	 * @return index of the word, or (-(insertion point) - 1)
+	 */
+	private int findWord(String word) {
+		int low = 0;
+		int high = numWords - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int compare = word(middle).compareTo(word);
+			if (compare < 0) {
+				low = middle + 1;
+			}
+			else if (compare > 0) {
+				high = middle - 1;
+			}
+			else {
+				return middle;
+			}
+		}
+		return -(low + 1);
+	}
+
+	/**
+	 * Binary searches the sorted paths for the specified path.
+	 *
+	 * @param path
+	 *            path to find
+	 * @return document id of the path, or a negative value if not found
+	 */
+	private int findPath(String path) {
+		int low = 0;
+		int high = numPaths - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int compare = path(middle).compareTo(path);
+			if (compare < 0) {
+				low = middle + 1;
+			}
+			else if (compare > 0) {
+				high = middle - 1;
+			}
+			else {
+				return middle;
+			}
+		}
+		return -(low + 1);
+	}
+
+	/**
+	 * Binary searches a range of a sorted int section.
+	 *
+	 * @param section
+	 *            byte offset of the section
+	 * @param from
+	 *            first index to search, inclusive
+	 * @param to
+	 *            last index to search, exclusive
+	 * @param key
+	 *            value to find
+	 * @return index of the value, or a negative value if not found
+	 */
+	private int binarySearch(int section, int from, int to, int key) {
+		int low = from;
+		int high = to - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int value = intAt(section, middle);
+			if (value < key) {
+				low = middle + 1;
+			}
+			else if (value > key) {
+				high = middle - 1;
+			}
+			else {
+				return middle;
+			}
+		}
+		return -(low + 1);
+	}
+
+	/**
+	 * Returns the posting of the word and path, or -1 if there is none.
+	 *
+	 * @param word
+	 *            word to find
+	 * @param path
+	 *            path to find
+	 * @return index of the posting or -1
+	 */
+	private int findPosting(String word, String path) {
+		int term = findWord(word);
+		int document = findPath(path);
+		if (term < 0 || document < 0) {
+			return -1;
+		}
+		int low = intAt(termOffsetsStart, term);
+		int high = intAt(termOffsetsStart, term + 1) - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int value = intAt(postingsStart, 3 * middle);
+			if (value < document) {
+				low = middle + 1;
+			}
+			else if (value > document) {
+				high = middle - 1;
+			}
+			else {
+				return middle;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public boolean containsWord(String word) {
+		return findWord(word) >= 0;
+	}
+
+	@Override
+	public boolean containsPath(String word, String path) {
+		return findPosting(word, path) >= 0;
+	}
+
+	@Override
+	public boolean containsPosition(String word, String path, Integer position) {
+		int posting = findPosting(word, path);
+		return posting >= 0 && binarySearch(positionsStart, intAt(positionOffsetsStart, posting),
+				intAt(positionOffsetsStart, posting + 1), position) >= 0;
+	}
+
+	/**
+	 * Helper method for exact and partial search, which goes through each posting of the term and adds the
+	 * path, frequency, and initial position of the term and if the document is already in map, adds to
+	 * frequency and updates initial position if necessary.
+	 *
+	 * @param term
+	 *            index of the word to search for
+	 * @param resultMap
+	 * 			  results indexed by document id to add to or update
+	 * @param results
+	 * 			  list of results to add new results to
+	 */
+	private void wordSearch(int term, SearchResult[] resultMap, ArrayList<SearchResult> results) {
+		int end = 3 * intAt(termOffsetsStart, term + 1);
+		for (int i = 3 * intAt(termOffsetsStart, term); i < end; i += 3) {
+			int document = intAt(postingsStart, i);
+			int frequency = intAt(postingsStart, i + 1);
+			int initialPosition = intAt(postingsStart, i + 2);
+			int score = scoring == Scoring.BM25 ? intAt(impactsStart, i / 3) : 0;
+
+			SearchResult searchResult = resultMap[document];
+			if (searchResult == null) {
+				searchResult = new SearchResult(score, frequency, initialPosition, document, path(document));
+				resultMap[document] = searchResult;
+				results.add(searchResult);
+			}
+			else {
+				searchResult.addToScore(score);
+				searchResult.addToFrequency(frequency);
+				searchResult.updateInitialPosition(initialPosition);
+			}
+		}
+	}
+
+	/**
+	 * Finds every document that matches a range of terms, without sorting the
+	 * results. The terms are searched in order until the deadline of the
+	 * budget passes.
+	 *
+	 * @param ranges
+	 *            start and end of the range of term ids matched by each word
+	 * @param budget
+	 *            budget of the search
+	 * @return unsorted ArrayList of SearchResults
+	 */
+	private ArrayList<SearchResult> collect(int[] ranges, QueryBudget budget) {
+		ArrayList<SearchResult> results = new ArrayList<>();
+		SearchResult[] resultMap = new SearchResult[numPaths];
+
+		for (int r = 0; r < ranges.length; r += 2) {
+			for (int term = ranges[r]; term < ranges[r + 1]; term++) {
+				if (budget.expired()) {
+					return results;
+				}
+				wordSearch(term, resultMap, results);
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Returns the range of term ids each word matches. The range of each word
+	 * ends at the first term the budget does not admit, so the words of a
+	 * partial search are only compared until then.
+	 *
+	 * @param searchWords
+	 *            words to match
+	 * @param exact
+	 *            true to only match each word itself, false to match every word starting with it
+	 * @param budget
+	 *            budget that admits the terms to search
+	 * @return start and end of the range of each word, one pair after another, with an empty range for words
+	 *         that match nothing
+	 */
+	private int[] ranges(String[] searchWords, boolean exact, QueryBudget budget) {
+		int[] ranges = new int[2 * searchWords.length];
+		for (int i = 0; i < searchWords.length; i++) {
+			int term = findWord(searchWords[i]);
+			if (exact) {
+				ranges[2 * i] = term;
+				ranges[2 * i + 1] = term >= 0 && budget.admit(size(term)) ? term + 1 : term;
+				continue;
+			}
+
+			int start = term < 0 ? -(term + 1) : term;
+			int end = start;
+			while (end < numWords && word(end).startsWith(searchWords[i]) && budget.admit(size(end))) {
+				end++;
+			}
+			ranges[2 * i] = start;
+			ranges[2 * i + 1] = end;
+		}
+		return ranges;
+	}
+
+	/**
+	 * Returns the number of postings of a term.
+	 *
+	 * @param term
+	 *            term id
+	 * @return number of documents the term was found in
+	 */
+	private int size(int term) {
+		return intAt(termOffsetsStart, term + 1) - intAt(termOffsetsStart, term);
+	}
+
+	/**
+	 * Finds the best results of a query by skipping the blocks of postings
+	 * that cannot enter them.
+	 *
+	 * @param ranges
+	 *            start and end of the range of term ids matched by each word
+	 * @param limit
+	 *            maximum number of results to return, which must be more than 0
+	 * @param budget
+	 *            budget of the search
+	 * @return sorted ArrayList of at most limit SearchResults
+	 * @see MaxScoreMatcher
+	 */
+	private ArrayList<SearchResult> topSearch(int[] ranges, int limit, QueryBudget budget) {
+		MaxScoreMatcher matcher = new MaxScoreMatcher(scoring) {
+			@Override
+			protected int size(int term) {
+				return intAt(termOffsetsStart, term + 1) - intAt(termOffsetsStart, term);
+			}
+
+			@Override
+			protected int document(int term, int posting) {
+				return intAt(postingsStart, 3 * (intAt(termOffsetsStart, term) + posting));
+			}
+
+			@Override
+			protected int frequency(int term, int posting) {
+				return intAt(postingsStart, 3 * (intAt(termOffsetsStart, term) + posting) + 1);
+			}
+
+			@Override
+			protected int initialPosition(int term, int posting) {
+				return intAt(postingsStart, 3 * (intAt(termOffsetsStart, term) + posting) + 2);
+			}
+
+			@Override
+			protected int score(int term, int posting) {
+				if (scoring == Scoring.BM25) {
+					return intAt(impactsStart, intAt(termOffsetsStart, term) + posting);
+				}
+				return intAt(postingsStart, 3 * (intAt(termOffsetsStart, term) + posting) + 1);
+			}
+
+			@Override
+			protected int blockMaximum(int term, int block) {
+				if (scoring == Scoring.BM25) {
+					return intAt(impactMaximaStart, intAt(blockOffsetsStart, term) + block);
+				}
+				return intAt(blockMaximaStart, intAt(blockOffsetsStart, term) + block);
+			}
+
+			@Override
+			protected String path(int document) {
+				return MappedInvertedIndex.this.path(document);
+			}
+		};
+		return matcher.search(ranges, limit, budget);
+	}
+
+	@Override
+	public ArrayList<SearchResult> search(String[] searchWords, boolean exact, int limit) {
+		return search(searchWords, exact, false, limit, new QueryBudget());
+	}
+
+	@Override
+	public ArrayList<SearchResult> search(String[] searchWords, boolean exact, boolean all, int limit) {
+		return search(searchWords, exact, all, limit, new QueryBudget());
+	}
+
+	@Override
+	public ArrayList<SearchResult> search(String[] searchWords, boolean exact, boolean all, int limit,
+			QueryBudget budget) {
+		int[] ranges = ranges(searchWords, exact, budget);
+		if (all) {
+			return conjunctiveSearch(ranges, limit, budget);
+		}
+		if (limit <= 0 || MaxScoreMatcher.countTerms(ranges) > MaxScoreMatcher.MAX_TERMS) {
+			return SearchResult.top(collect(ranges, budget), limit);
+		}
+		return topSearch(ranges, limit, budget);
+	}
+
+	/**
+	 * Finds the best results of a query by scoring every matching posting,
+	 * as searches that are not worth pruning do, so that pruning can be
+	 * compared against it.
+	 *
+	 * @param searchWords
+	 *            words to search for
+	 * @param exact
+	 *            true if searching for exact matches, false to search for
+	 *            partial matches
+	 * @param limit
+	 *            maximum number of results to return, or 0 or less for all of
+	 *            them
+	 * @return sorted ArrayList of at most limit SearchResults
+	 */
+	ArrayList<SearchResult> exhaustiveSearch(String[] searchWords, boolean exact, int limit) {
+		QueryBudget budget = new QueryBudget();
+		return SearchResult.top(collect(ranges(searchWords, exact, budget), budget), limit);
+	}
+
+	/**
+	 * Finds the documents that match every word of a query.
+	 *
+	 * @param ranges
+	 *            start and end of the range of term ids matched by each word
+	 * @param limit
+	 *            maximum number of results to return, or 0 or less for all of them
+	 * @param budget
+	 *            budget of the search
+	 * @return sorted ArrayList of at most limit SearchResults
+	 * @see ConjunctiveMatcher
+	 */
+	private ArrayList<SearchResult> conjunctiveSearch(int[] ranges, int limit, QueryBudget budget) {
+		ConjunctiveMatcher matcher = new ConjunctiveMatcher(numPaths) {
+			@Override
+			protected int size(int term) {
+				return intAt(termOffsetsStart, term + 1) - intAt(termOffsetsStart, term);
+			}
+
+			@Override
+			protected int document(int term, int posting) {
+				return intAt(postingsStart, 3 * (intAt(termOffsetsStart, term) + posting));
+			}
+
+			@Override
+			protected int frequency(int term, int posting) {
+				return intAt(postingsStart, 3 * (intAt(termOffsetsStart, term) + posting) + 1);
+			}
+
+			@Override
+			protected int initialPosition(int term, int posting) {
+				return intAt(postingsStart, 3 * (intAt(termOffsetsStart, term) + posting) + 2);
+			}
+
+			@Override
+			protected int score(int term, int posting) {
+				return scoring == Scoring.BM25 ? intAt(impactsStart, intAt(termOffsetsStart, term) + posting) : 0;
+			}
+
+			@Override
+			protected String path(int document) {
+				return MappedInvertedIndex.this.path(document);
+			}
+		};
+		return matcher.search(ranges, limit, budget);
+	}
+
+	@Override
+	public ArrayList<SearchResult> phraseSearch(String[] phraseWords, int limit) {
+		return phraseSearch(phraseWords, limit, new QueryBudget());
+	}
+
+	@Override
+	public ArrayList<SearchResult> phraseSearch(String[] phraseWords, int limit, QueryBudget budget) {
+		final int[] starts = new int[phraseWords.length];
+		final int[] sizes = new int[phraseWords.length];
+		for (int i = 0; i < phraseWords.length; i++) {
+			int term = findWord(phraseWords[i]);
+			if (term < 0) {
+				return new ArrayList<>();
+			}
+			starts[i] = intAt(termOffsetsStart, term);
+			sizes[i] = intAt(termOffsetsStart, term + 1) - starts[i];
+		}
+		for (int size : sizes) {
+			if (!budget.admit(size)) {
+				return new ArrayList<>();
+			}
+		}
+
+		PhraseMatcher matcher = new PhraseMatcher(phraseWords.length) {
+			@Override
+			protected int size(int word) {
+				return sizes[word];
+			}
+
+			@Override
+			protected int document(int word, int posting) {
+				return intAt(postingsStart, 3 * (starts[word] + posting));
+			}
+
+			@Override
+			protected int frequency(int word, int posting) {
+				return intAt(postingsStart, 3 * (starts[word] + posting) + 1);
+			}
+
+			@Override
+			protected int openPositions(int word, int posting) {
+				return intAt(positionOffsetsStart, starts[word] + posting);
+			}
+
+			@Override
+			protected int position(int word, int index) {
+				return intAt(positionsStart, index);
+			}
+
+			@Override
+			protected String path(int document) {
+				return MappedInvertedIndex.this.path(document);
+			}
+		};
+		return matcher.search(limit, budget);
+	}
+
+	@Override
+	public ArrayList<ArrayList<SearchResult>> searchAll(List<String[]> queries, boolean exact, int limit) {
+		QueryBatch batch = new QueryBatch(numPaths) {
+			@Override
+			protected void visit(int term) {
+				int end = 3 * intAt(termOffsetsStart, term + 1);
+				for (int i = 3 * intAt(termOffsetsStart, term); i < end; i += 3) {
+					addPosting(intAt(postingsStart, i), intAt(postingsStart, i + 1), intAt(postingsStart, i + 2));
+				}
+			}
+
+			@Override
+			protected String path(int document) {
+				return MappedInvertedIndex.this.path(document);
+			}
+		};
+
+		ArrayList<ArrayList<SearchResult>> results = new ArrayList<>();
+		for (String[] query : queries) {
+			// queries that match few terms are faster to prune on their own than to combine, and batches
+			// only combine frequencies
+			int[] ranges = ranges(query, exact, new QueryBudget());
+			if (scoring == Scoring.BM25) {
+				results.add(search(query, exact, limit));
+			}
+			else if (limit > 0 && MaxScoreMatcher.countTerms(ranges) <= MaxScoreMatcher.MAX_TERMS) {
+				results.add(topSearch(ranges, limit, new QueryBudget()));
+			}
+			else {
+				results.add(batch.search(ranges, limit));
+			}
+		}
+		return results;
+	}
+
+	@Override
+	public ArrayList<SearchResult> exactSearch(String[] searchWords) {
+		return search(searchWords, true, 0);
+	}
+
+	@Override
+	public ArrayList<SearchResult> exactSearch(String[] searchWords, boolean all) {
+		return search(searchWords, true, all, 0);
+	}
+
+	@Override
+	public ArrayList<SearchResult> partialSearch(String[] searchWords) {
+		return search(searchWords, false, 0);
+	}
+
+	@Override
+	public ArrayList<SearchResult> partialSearch(String[] searchWords, boolean all) {
+		return search(searchWords, false, all, 0);
+	}
+
+	/**
+	 * Reads the whole segment into a {@link FrozenInvertedIndex} on the heap.
+	 *
+	 * @return frozen index with the same contents and scoring as the segment
+	 */
+	public FrozenInvertedIndex toFrozen() {
+		String[] words = new String[numWords];
+		for (int i = 0; i < numWords; i++) {
+			words[i] = word(i);
+		}
+
+		String[] paths = new String[numPaths];
+		for (int i = 0; i < numPaths; i++) {
+			paths[i] = path(i);
+		}
+
+		return new FrozenInvertedIndex(new TermDictionary(words), readInts(termOffsetsStart, numWords + 1),
+				readInts(postingsStart, 3 * numPostings), readInts(positionOffsetsStart, numPostings + 1),
+				readInts(positionsStart, numPositions), paths).scoredBy(scoring);
+	}
+
+	/**
+	 * Reads a whole int section into an array.
+	 *
+	 * @param section
+	 *            byte offset of the section
+	 * @param length
+	 *            number of ints in the section
+	 * @return array of ints
+	 */
+	private int[] readInts(int section, int length) {
+		int[] values = new int[length];
+		for (int i = 0; i < length; i++) {
+			values[i] = intAt(section, i);
+		}
+		return values;
+	}
+
+	/**
+	 * Writes index to specified path in JSON format. The segment is read into
+	 * memory while writing.
+	 *
+	 * @param path
+	 *            path to write to
+	 */
+	@Override
+	public void toJSON(Path path) throws IOException {
+		toFrozen().toJSON(path);
+	}
+}
@@ -0,0 +1,359 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.PriorityQueue;
+
+/**
+ * Finds the best results of an any-word search without scoring every
+ * document. Each word of a query matches a range of terms, and the postings of
+ * each term must be sorted by document id. Each posting adds a score to its
+ * document, which is its frequency or its BM25 impact depending on the
+ * {@link Scoring}. The postings of every term are split into blocks of
+ * {@link #BLOCK_SIZE}, and the index stores the largest score in each block.
+ *
+ * A document can only enter the results once its total score reaches the
+ * score of the worst result kept so far. Terms are sorted by their largest
+ * score, and the terms with the smallest ones are non-essential as long as
+ * their largest scores add up to less than that: a document found only in
+ * them cannot enter, so candidates are only taken from the essential terms,
+ * and the non-essential terms are galloped forward to each candidate that
+ * could still enter. Whenever the largest scores of the current blocks of the
+ * essential terms add up to too little, every document until the end of the
+ * first of those blocks is skipped without being read.
+ *
+ * Documents are only skipped when their score is below the worst result kept,
+ * and ties are always scored, so the results are exactly the ones an
+ * exhaustive search ranks first.
+ */
+public abstract class MaxScoreMatcher {
+
+	/** The number of postings in each block. */
+	public static final int BLOCK_SIZE = 64;
+
+	/**
+	 * The largest number of terms a query is worth pruning for. Beyond that the
+	 * bounds of the terms add up to more than any result needs, so little is
+	 * skipped and an exhaustive search is faster.
+	 */
+	public static final int MAX_TERMS = 16;
+
+	/**
+	 * Stores how results are ranked.
+	 */
+	private final Scoring scoring;
+
+	/**
+	 * Gallops the postings of a term forward to a document.
+	 */
+	private final Leapfrog leapfrog;
+
+	/**
+	 * Initializes a matcher.
+	 *
+	 * @param scoring
+	 *            how results are ranked, which decides what
+	 *            {@link #score(int, int)} returns
+	 */
+	public MaxScoreMatcher(Scoring scoring) {
+		this.scoring = scoring;
+		this.leapfrog = new Leapfrog() {
+			@Override
+			protected int document(int term, int posting) {
+				return MaxScoreMatcher.this.document(term, posting);
+			}
+		};
+	}
+
+	/**
+	 * Returns the number of postings of a term.
+	 *
+	 * @param term
+	 *            term id
+	 * @return number of documents the term was found in
+	 */
+	protected abstract int size(int term);
+
+	/**
+	 * Returns the document id of a posting.
+	 *
+	 * @param term
+	 *            term id
+	 * @param posting
+	 *            index of the posting, between 0 and {@link #size(int)}
+	 * @return document id
+	 */
+	protected abstract int document(int term, int posting);
+
+	/**
+	 * Returns the number of positions of a posting.
+	 *
+	 * @param term
+	 *            term id
+	 * @param posting
+	 *            index of the posting
+	 * @return number of positions
+	 */
+	protected abstract int frequency(int term, int posting);
+
+	/**
+	 * Returns the first position of a posting.
+	 *
+	 * @param term
+	 *            term id
+	 * @param posting
+	 *            index of the posting
+	 * @return first position
+	 */
+	protected abstract int initialPosition(int term, int posting);
+
+	/**
+	 * Returns the score a posting adds to its document, which is its frequency
+	 * or its BM25 impact depending on the scoring.
+	 *
+	 * @param term
+	 *            term id
+	 * @param posting
+	 *            index of the posting
+	 * @return score of the posting
+	 */
+	protected abstract int score(int term, int posting);
+
+	/**
+	 * Returns the largest score of a block of postings of a term.
+	 *
+	 * @param term
+	 *            term id
+	 * @param block
+	 *            index of the block, which holds the postings from
+	 *            block * {@link #BLOCK_SIZE}
+	 * @return largest score in the block
+	 */
+	protected abstract int blockMaximum(int term, int block);
+
+	/**
+	 * Returns the path of a document.
+	 *
+	 * @param document
+	 *            document id
+	 * @return path
+	 */
+	protected abstract String path(int document);
+
+	/**
+	 * Returns the index of the first block of each term, plus the total number
+	 * of blocks.
+	 *
+	 * @param termOffsets
+	 *            start of the postings of each term, plus the total number of
+	 *            postings
+	 * @return start of the blocks of each term, plus the total number of blocks
+	 */
+	public static int[] blockOffsets(int[] termOffsets) {
+		int[] blockOffsets = new int[termOffsets.length];
+		for (int term = 0; term + 1 < termOffsets.length; term++) {
+			int size = termOffsets[term + 1] - termOffsets[term];
+			blockOffsets[term + 1] = blockOffsets[term] + (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		}
+		return blockOffsets;
+	}
+
+	/**
+	 * Returns the largest value of each block of postings.
+	 *
+	 * @param termOffsets
+	 *            start of the postings of each term, plus the total number of
+	 *            postings
+	 * @param blockOffsets
+	 *            start of the blocks of each term, as returned by
+	 *            {@link #blockOffsets(int[])}
+	 * @param values
+	 *            values of the postings, such as their impacts
+	 * @param stride
+	 *            number of ints per posting in values
+	 * @param offset
+	 *            index of the value within the ints of each posting
+	 * @return largest value of each block
+	 */
+	public static int[] blockMaxima(int[] termOffsets, int[] blockOffsets, int[] values, int stride, int offset) {
+		int[] blockMaxima = new int[blockOffsets[blockOffsets.length - 1]];
+		for (int term = 0; term + 1 < termOffsets.length; term++) {
+			for (int posting = termOffsets[term]; posting < termOffsets[term + 1]; posting++) {
+				int block = blockOffsets[term] + (posting - termOffsets[term]) / BLOCK_SIZE;
+				blockMaxima[block] = Math.max(blockMaxima[block], values[stride * posting + offset]);
+			}
+		}
+		return blockMaxima;
+	}
+
+	/**
+	 * Returns the value results are ranked by first.
+	 *
+	 * @param result
+	 *            result to rank
+	 * @return score or frequency of the result
+	 */
+	private int rank(SearchResult result) {
+		return scoring == Scoring.BM25 ? result.score() : result.frequency();
+	}
+
+	/**
+	 * Returns the number of terms matched by the words of a query.
+	 *
+	 * @param ranges
+	 *            start and end of the range of term ids matched by each word
+	 *            of the query, one pair after another
+	 * @return number of terms, counting repeated ranges every time
+	 */
+	public static int countTerms(int[] ranges) {
+		int count = 0;
+		for (int r = 0; r < ranges.length; r += 2) {
+			count += Math.max(0, ranges[r + 1] - ranges[r]);
+		}
+		return count;
+	}
+
+	/**
+	 * Finds the best results of a query.
+	 *
+	 * @param ranges
+	 *            start and end of the range of term ids matched by each word
+	 *            of the query, one pair after another; words that appear more
+	 *            than once should have their range repeated
+	 * @param limit
+	 *            maximum number of results to return, which must be more than
+	 *            0
+	 * @param budget
+	 *            budget of the search, whose deadline stops it early
+	 * @return sorted ArrayList of at most limit SearchResults
+	 */
+	public ArrayList<SearchResult> search(int[] ranges, int limit, QueryBudget budget) {
+		int count = countTerms(ranges);
+
+		// terms are sorted by their largest score, packed above their term id
+		long[] byMaximum = new long[count];
+		count = 0;
+		for (int r = 0; r < ranges.length; r += 2) {
+			for (int term = ranges[r]; term < ranges[r + 1]; term++) {
+				int maximum = 0;
+				int blocks = (size(term) + BLOCK_SIZE - 1) / BLOCK_SIZE;
+				for (int block = 0; block < blocks; block++) {
+					maximum = Math.max(maximum, blockMaximum(term, block));
+				}
+				byMaximum[count++] = ((long) maximum << 32) | term;
+			}
+		}
+		Arrays.sort(byMaximum);
+
+		// bounds[i] is the largest total score a document can have in the first i terms
+		int[] terms = new int[count];
+		int[] sizes = new int[count];
+		int[] postings = new int[count];
+		int[] documents = new int[count];
+		int[] bounds = new int[count + 1];
+		for (int i = 0; i < count; i++) {
+			terms[i] = (int) byMaximum[i];
+			sizes[i] = size(terms[i]);
+			documents[i] = sizes[i] > 0 ? document(terms[i], 0) : Integer.MAX_VALUE;
+			bounds[i + 1] = bounds[i] + (int) (byMaximum[i] >>> 32);
+		}
+
+		// the head of the heap is the worst result kept so far
+		PriorityQueue<SearchResult> heap = new PriorityQueue<>(limit, Collections.reverseOrder());
+		int threshold = 0;
+		int essential = 0;
+
+		// the documents up to windowEnd have at most windowBound in total, from the current blocks
+		int windowEnd = -1;
+		int windowBound = 0;
+
+		while (essential < count && !budget.step()) {
+			int target = Integer.MAX_VALUE;
+			for (int i = essential; i < count; i++) {
+				target = Math.min(target, documents[i]);
+			}
+			if (target == Integer.MAX_VALUE) {
+				break;
+			}
+
+			if (threshold > 0 && target > windowEnd) {
+				windowEnd = Integer.MAX_VALUE;
+				for (int i = essential; i < count; i++) {
+					if (documents[i] != Integer.MAX_VALUE) {
+						int last = Math.min(sizes[i], (postings[i] / BLOCK_SIZE + 1) * BLOCK_SIZE) - 1;
+						windowEnd = Math.min(windowEnd, document(terms[i], last));
+					}
+				}
+
+				// terms whose next document is past the window have nothing in it
+				windowBound = bounds[essential];
+				for (int i = essential; i < count; i++) {
+					if (documents[i] <= windowEnd) {
+						windowBound += blockMaximum(terms[i], postings[i] / BLOCK_SIZE);
+					}
+				}
+
+				if (windowBound < threshold) {
+					// no document in these blocks can enter, so all of them are skipped
+					for (int i = essential; i < count; i++) {
+						postings[i] = leapfrog.seek(terms[i], sizes[i], postings[i], windowEnd + 1);
+						documents[i] = postings[i] < sizes[i] ? document(terms[i], postings[i]) : Integer.MAX_VALUE;
+					}
+					continue;
+				}
+			}
+
+			int score = 0;
+			int frequency = 0;
+			int initialPosition = Integer.MAX_VALUE;
+			for (int i = essential; i < count; i++) {
+				if (documents[i] == target) {
+					score += score(terms[i], postings[i]);
+					frequency += frequency(terms[i], postings[i]);
+					initialPosition = Math.min(initialPosition, initialPosition(terms[i], postings[i]));
+					postings[i]++;
+					documents[i] = postings[i] < sizes[i] ? document(terms[i], postings[i]) : Integer.MAX_VALUE;
+				}
+			}
+
+			// the non-essential terms are checked from the largest, while the document can still enter
+			for (int i = essential - 1; i >= 0 && score + bounds[i + 1] >= threshold; i--) {
+				postings[i] = leapfrog.seek(terms[i], sizes[i], postings[i], target);
+				if (postings[i] < sizes[i] && document(terms[i], postings[i]) == target) {
+					score += score(terms[i], postings[i]);
+					frequency += frequency(terms[i], postings[i]);
+					initialPosition = Math.min(initialPosition, initialPosition(terms[i], postings[i]));
+				}
+			}
+
+			if (score < threshold) {
+				continue;
+			}
+
+			SearchResult result = scoring == Scoring.BM25
+					? new SearchResult(score, frequency, initialPosition, target, path(target))
+					: new SearchResult(frequency, initialPosition, target, path(target));
+			if (heap.size() < limit) {
+				heap.add(result);
+			}
+			else if (result.compareTo(heap.peek()) < 0) {
+				heap.poll();
+				heap.add(result);
+			}
+			else {
+				continue;
+			}
+
+			if (heap.size() == limit && rank(heap.peek()) > threshold) {
+				threshold = rank(heap.peek());
+				windowEnd = -1;
+				while (essential < count && bounds[essential + 1] < threshold) {
+					essential++;
+				}
+			}
+		}
+
+		ArrayList<SearchResult> top = new ArrayList<>(heap);
+		Collections.sort(top);
+		return top;
+	}
+}
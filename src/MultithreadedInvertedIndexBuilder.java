@@ -2,15 +2,19 @@ import java.io.IOException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 /**
  * Builds Inverted Index by going through directories and/or files and adds each word.
+ * Files are added to unsynchronized accumulators, one per busy worker, which are
+ * merged pairwise in parallel once every file is read. The result is added to the
+ * given index in a single merge.
  */
 public class MultithreadedInvertedIndexBuilder {
-	
+
 	Logger logger = LogManager.getLogger();
 	/**
 	 * Streams through a directory
@@ -22,64 +26,141 @@ public class MultithreadedInvertedIndexBuilder {
 	 */
 	public static void throughDirectory(Path path, InvertedIndex index, WorkQueue queue) throws IOException {
 		MultithreadedInvertedIndexBuilder builder = new MultithreadedInvertedIndexBuilder(queue);
-		builder.start(path, index);
+		builder.start(path);
 		queue.finish();
+		index.addAll(builder.reduce());
 	}
 
 	private final WorkQueue queue;
-	
-	/* 
+
+	/**
+	 * Accumulators that are not currently being added to by a task.
+	 */
+	private final ArrayList<InvertedIndex> accumulators;
+
+	/*
 	 * Private Constructor that implements a WorkQueue
 	 */
 	private MultithreadedInvertedIndexBuilder(WorkQueue queue) {
 		this.queue = queue;
+		this.accumulators = new ArrayList<>();
 	}
-	
+
 	/**
 	 * Private helper method that throughDirectory calls to start going through directories and assigning tasks
 	 */
-	private void start(Path path, InvertedIndex index) throws IOException {
+	private void start(Path path) throws IOException {
 		try (DirectoryStream<Path> directory = Files.newDirectoryStream(path);) {
 			for (Path file : directory) {
 				if (Files.isDirectory(file)) {
-					start(file, index);
+					start(file);
 				} else {
-					queue.execute(new Task(file, index));
+					queue.execute(new Task(file));
 				}
 			}
 			directory.close();
 		}
 	}
-	
+
+	/**
+	 * Takes an accumulator that no other task is using, or creates one if they are all in use.
+	 *
+	 * @return accumulator for the calling task to add to
+	 */
+	private InvertedIndex takeAccumulator() {
+		synchronized (accumulators) {
+			if (accumulators.isEmpty()) {
+				return new InvertedIndex();
+			}
+			return accumulators.remove(accumulators.size() - 1);
+		}
+	}
+
+	/**
+	 * Returns an accumulator so other tasks can add to it.
+	 *
+	 * @param accumulator
+	 *            accumulator to return
+	 */
+	private void returnAccumulator(InvertedIndex accumulator) {
+		synchronized (accumulators) {
+			accumulators.add(accumulator);
+		}
+	}
+
+	/**
+	 * Merges the accumulators pairwise in parallel, halving their number each round, until only one is left.
+	 * Must only be called once every task is finished.
+	 *
+	 * @return InvertedIndex with the contents of every accumulator
+	 */
+	private InvertedIndex reduce() {
+		ArrayList<InvertedIndex> level = new ArrayList<>(accumulators);
+		accumulators.clear();
+
+		while (level.size() > 1) {
+			ArrayList<InvertedIndex> next = new ArrayList<>();
+			for (int i = 0; i + 1 < level.size(); i += 2) {
+				queue.execute(new MergeTask(level.get(i), level.get(i + 1)));
+				next.add(level.get(i));
+			}
+			if (level.size() % 2 == 1) {
+				next.add(level.get(level.size() - 1));
+			}
+			queue.finish();
+			level = next;
+		}
+
+		return level.isEmpty() ? new InvertedIndex() : level.get(0);
+	}
+
 	/**
-	 * Runnable task that parses through an HTML file and adds to an InvertedIndex
+	 * Runnable task that parses through an HTML file and adds to an accumulator
 	 */
 	private class Task implements Runnable {
 
 		Path path;
-		InvertedIndex index;
-	
-		public Task(Path path, InvertedIndex index) {
+
+		public Task(Path path) {
 			this.path = path;
-			this.index = index;
 		}
-		
+
 		@Override
 		public void run() {
 			//logger.debug("Starting {}", path);
 			String filename = path.toString();
+			InvertedIndex accumulator = takeAccumulator();
 			try {
-				InvertedIndex local = new InvertedIndex();
-				InvertedIndexBuilder.throughHTMLFile(path, filename, local);
-				index.addAll(local);
-				
+				InvertedIndexBuilder.throughHTMLFile(path, filename, accumulator);
+
 			} catch (IOException e) {
 				Thread.currentThread().interrupt();
+			} finally {
+				returnAccumulator(accumulator);
 			}
 			//logger.debug("Finsihed {}", path);
 		}
-		
+
 	}
-	
-	
+
+	/**
+	 * Runnable task that merges one accumulator into another
+	 */
+	private class MergeTask implements Runnable {
+
+		InvertedIndex into;
+		InvertedIndex from;
+
+		public MergeTask(InvertedIndex into, InvertedIndex from) {
+			this.into = into;
+			this.from = from;
+		}
+
+		@Override
+		public void run() {
+			// the accumulator merged from is dropped afterwards, so its posting lists are not copied
+			into.moveAll(from);
+		}
+	}
+
 }
@@ -0,0 +1,257 @@
+import java.util.ArrayList;
+
+/**
+ * Finds the documents that contain every word of a phrase at consecutive
+ * positions. The postings of each word must be sorted by document id, and the
+ * positions of each posting must be sorted.
+ *
+ * Documents are intersected by a {@link Leapfrog}: starting from the rarest
+ * word, every other word gallops forward to the first document at or after the
+ * current candidate, so words with long posting lists are mostly skipped
+ * instead of scanned. In each document found by all words, the word with the
+ * fewest positions proposes the starting positions of the phrase, and every
+ * other word gallops through its positions to check that it appears at the
+ * right offset from that start.
+ *
+ * The frequency of a result is the number of times the phrase appears in the
+ * document, and its initial position is the position of the first word of the
+ * first appearance.
+ */
+public abstract class PhraseMatcher {
+
+	/** The number of positions checked one at a time before galloping. */
+	private static final int LINEAR_PROBES = 4;
+
+	/**
+	 * Stores the number of words in the phrase.
+	 */
+	private final int length;
+
+	/**
+	 * Initializes a matcher for a phrase.
+	 *
+	 * @param length
+	 *            number of words in the phrase
+	 */
+	public PhraseMatcher(int length) {
+		this.length = length;
+	}
+
+	/**
+	 * Returns the number of postings of a word of the phrase.
+	 *
+	 * @param word
+	 *            index of the word in the phrase
+	 * @return number of documents the word was found in
+	 */
+	protected abstract int size(int word);
+
+	/**
+	 * Returns the document id of a posting.
+	 *
+	 * @param word
+	 *            index of the word in the phrase
+	 * @param posting
+	 *            index of the posting, between 0 and {@link #size(int)}
+	 * @return document id
+	 */
+	protected abstract int document(int word, int posting);
+
+	/**
+	 * Returns the number of positions of a posting.
+	 *
+	 * @param word
+	 *            index of the word in the phrase
+	 * @param posting
+	 *            index of the posting
+	 * @return number of positions
+	 */
+	protected abstract int frequency(int word, int posting);
+
+	/**
+	 * Prepares the positions of a posting to be read with
+	 * {@link #position(int, int)}, and returns the index of its first position.
+	 * Only the positions of the last posting opened for each word need to be
+	 * readable.
+	 *
+	 * @param word
+	 *            index of the word in the phrase
+	 * @param posting
+	 *            index of the posting
+	 * @return index of the first position of the posting
+	 */
+	protected abstract int openPositions(int word, int posting);
+
+	/**
+	 * Returns a position of the posting that was last opened for a word.
+	 *
+	 * @param word
+	 *            index of the word in the phrase
+	 * @param index
+	 *            index of the position, counted from the index returned by
+	 *            {@link #openPositions(int, int)}
+	 * @return position
+	 */
+	protected abstract int position(int word, int index);
+
+	/**
+	 * Returns the path of a document.
+	 *
+	 * @param document
+	 *            document id
+	 * @return path
+	 */
+	protected abstract String path(int document);
+
+	/**
+	 * Returns the first position of the open posting of a word at or after the
+	 * given index that is at least the target. The next few positions are
+	 * checked one at a time first, since frequent words are usually found
+	 * close by, and then the search gallops forward and binary searches the
+	 * last step.
+	 *
+	 * @param word
+	 *            index of the word in the phrase
+	 * @param end
+	 *            index after the last position of the posting
+	 * @param from
+	 *            index of the position to start from
+	 * @param target
+	 *            position to find
+	 * @return index of the position, or end if there is none
+	 */
+	private int seekPosition(int word, int end, int from, int target) {
+		int limit = Math.min(end, from + LINEAR_PROBES);
+		while (from < limit) {
+			if (position(word, from) >= target) {
+				return from;
+			}
+			from++;
+		}
+		if (from >= end) {
+			return from;
+		}
+
+		int low = from - 1;
+		int step = 1;
+		while (low + step < end && position(word, low + step) < target) {
+			low += step;
+			step <<= 1;
+		}
+
+		int high = Math.min(low + step, end);
+		while (high - low > 1) {
+			int middle = (low + high) >>> 1;
+			if (position(word, middle) < target) {
+				low = middle;
+			}
+			else {
+				high = middle;
+			}
+		}
+		return high;
+	}
+
+	/**
+	 * Counts the appearances of the phrase in a document that every word was
+	 * found in.
+	 *
+	 * @param words
+	 *            words at the document, which are checked from the fewest to
+	 *            the most postings
+	 * @param cursors
+	 *            array of one position index per word to use as scratch space
+	 * @param ends
+	 *            array of one position index per word to use as scratch space
+	 * @return number of appearances, and the start of the first appearance or
+	 *         0 if there is none
+	 */
+	private long match(Leapfrog words, int[] cursors, int[] ends) {
+		// the word with the fewest positions proposes where the phrase starts
+		int anchor = 0;
+		int fewest = Integer.MAX_VALUE;
+		for (int word = 0; word < length; word++) {
+			int frequency = frequency(word, words.posting(word));
+			cursors[word] = openPositions(word, words.posting(word));
+			ends[word] = cursors[word] + frequency;
+			if (frequency < fewest) {
+				anchor = word;
+				fewest = frequency;
+			}
+		}
+
+		int count = 0;
+		int first = 0;
+		for (int i = cursors[anchor]; i < ends[anchor]; i++) {
+			int start = position(anchor, i) - anchor;
+			boolean found = true;
+			for (int j = 0; j < length && found; j++) {
+				int word = words.list(j);
+				if (word == anchor) {
+					continue;
+				}
+
+				cursors[word] = seekPosition(word, ends[word], cursors[word], start + word);
+				if (cursors[word] >= ends[word]) {
+					// this word has no positions left, so the phrase cannot appear again
+					return ((long) count << 32) | first;
+				}
+				found = position(word, cursors[word]) == start + word;
+			}
+
+			if (found) {
+				if (count == 0) {
+					first = start;
+				}
+				count++;
+			}
+		}
+		return ((long) count << 32) | first;
+	}
+
+	/**
+	 * Finds every document the phrase appears in.
+	 *
+	 * @param limit
+	 *            maximum number of results to return, or 0 or less for all of
+	 *            them
+	 * @param budget
+	 *            budget of the search, whose deadline stops it early
+	 * @return sorted ArrayList of at most limit SearchResults
+	 */
+	public ArrayList<SearchResult> search(int limit, QueryBudget budget) {
+		ArrayList<SearchResult> results = new ArrayList<>();
+		if (length == 0) {
+			return results;
+		}
+
+		int[] sizes = new int[length];
+		for (int word = 0; word < length; word++) {
+			sizes[word] = size(word);
+			if (sizes[word] == 0) {
+				return results;
+			}
+		}
+
+		// words are checked from the rarest, which is also the lead, since every document must contain it
+		Leapfrog words = new Leapfrog() {
+			@Override
+			protected int document(int word, int posting) {
+				return PhraseMatcher.this.document(word, posting);
+			}
+		};
+		words.start(sizes);
+		int[] cursors = new int[length];
+		int[] ends = new int[length];
+
+		while (words.next(budget)) {
+			int target = words.document();
+			long match = match(words, cursors, ends);
+			int count = (int) (match >>> 32);
+			if (count > 0) {
+				results.add(new SearchResult(count, (int) match, target, path(target)));
+			}
+		}
+		return SearchResult.top(results, limit);
+	}
+}
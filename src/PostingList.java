@@ -0,0 +1,344 @@
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Compact, append-only list of sorted and unique positions. Positions are
+ * stored as the gap from the previous position, encoded as variable-length
+ * integers (7 bits per byte), so small gaps only take a single byte.
+ */
+public class PostingList implements Iterable<Integer> {
+
+	/**
+	 * Stores the encoded gaps, the number of bytes in use, the number of
+	 * positions, and the first and last positions.
+	 */
+	private byte[] bytes;
+	private int length;
+	private int size;
+	private int first;
+	private int last;
+
+	/**
+	 * Initializes an empty posting list.
+	 */
+	public PostingList() {
+		bytes = new byte[4];
+		length = 0;
+		size = 0;
+	}
+
+	/**
+	 * Initializes a posting list with the same positions as another list.
+	 * Later changes to either list do not change the other.
+	 *
+	 * @param other
+	 *            list to copy
+	 */
+	public PostingList(PostingList other) {
+		bytes = Arrays.copyOf(other.bytes, Math.max(4, other.length));
+		length = other.length;
+		size = other.size;
+		first = other.first;
+		last = other.last;
+	}
+
+	/**
+	 * Initializes a posting list with the specified sorted positions.
+	 *
+	 * @param positions
+	 *            sorted and unique positions to add
+	 * @param count
+	 *            number of positions in the array to use
+	 */
+	private PostingList(int[] positions, int count) {
+		this();
+		for (int i = 0; i < count; i++) {
+			append(positions[i]);
+		}
+	}
+
+	/**
+	 * Writes the value as a variable-length integer to the end of the list.
+	 *
+	 * @param value
+	 *            value to write, treated as unsigned
+	 */
+	private void write(int value) {
+		if (length + 5 > bytes.length) {
+			bytes = Arrays.copyOf(bytes, Math.max(length + 5, bytes.length + (bytes.length >> 1)));
+		}
+		while ((value & ~0x7F) != 0) {
+			bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		bytes[length++] = (byte) value;
+	}
+
+	/**
+	 * Appends a position that is known to be larger than the last position.
+	 *
+	 * @param position
+	 *            position to append
+	 */
+	private void append(int position) {
+		if (size == 0) {
+			write(position);
+			first = position;
+		}
+		else {
+			write(position - last);
+		}
+		last = position;
+		size++;
+	}
+
+	/**
+	 * Adds the position to the list. Positions larger than the last position
+	 * are appended directly, otherwise the list is rebuilt in sorted order.
+	 * Duplicate positions are ignored.
+	 *
+	 * @param position
+	 *            position to add
+	 * @return true if the position was added, false if it was already present
+	 */
+	public boolean add(int position) {
+		if (size == 0 || position > last) {
+			append(position);
+			return true;
+		}
+
+		int[] positions = toArray();
+		int index = Arrays.binarySearch(positions, position);
+		if (index >= 0) {
+			return false;
+		}
+
+		index = -(index + 1);
+		int[] merged = new int[positions.length + 1];
+		System.arraycopy(positions, 0, merged, 0, index);
+		merged[index] = position;
+		System.arraycopy(positions, index, merged, index + 1, positions.length - index);
+		rebuild(merged, merged.length);
+		return true;
+	}
+
+	/**
+	 * Adds all the positions of the other list to this list. If every position
+	 * of the other list is larger than the last position of this list, the
+	 * encoded gaps are copied over without decoding them.
+	 *
+	 * @param other
+	 *            list to add positions from
+	 */
+	public void addAll(PostingList other) {
+		if (other.size == 0) {
+			return;
+		}
+
+		if (size == 0 || other.first > last) {
+			int skip = 0;
+			while ((other.bytes[skip++] & 0x80) != 0) {
+				// skip over the first position of the other list
+			}
+			append(other.first);
+
+			int remaining = other.length - skip;
+			if (length + remaining > bytes.length) {
+				bytes = Arrays.copyOf(bytes, Math.max(length + remaining, bytes.length + (bytes.length >> 1)));
+			}
+			System.arraycopy(other.bytes, skip, bytes, length, remaining);
+			length += remaining;
+			size += other.size - 1;
+			last = other.last;
+			return;
+		}
+
+		int[] mine = toArray();
+		int[] theirs = other.toArray();
+		int[] merged = new int[mine.length + theirs.length];
+		int i = 0, j = 0, k = 0;
+		while (i < mine.length && j < theirs.length) {
+			if (mine[i] < theirs[j]) {
+				merged[k++] = mine[i++];
+			}
+			else if (mine[i] > theirs[j]) {
+				merged[k++] = theirs[j++];
+			}
+			else {
+				merged[k++] = mine[i++];
+				j++;
+			}
+		}
+		while (i < mine.length) {
+			merged[k++] = mine[i++];
+		}
+		while (j < theirs.length) {
+			merged[k++] = theirs[j++];
+		}
+		rebuild(merged, k);
+	}
+
+	/**
+	 * Replaces the contents of this list with the specified sorted positions.
+	 *
+	 * @param positions
+	 *            sorted and unique positions
+	 * @param count
+	 *            number of positions in the array to use
+	 */
+	private void rebuild(int[] positions, int count) {
+		PostingList rebuilt = new PostingList(positions, count);
+		bytes = rebuilt.bytes;
+		length = rebuilt.length;
+		size = rebuilt.size;
+		first = rebuilt.first;
+		last = rebuilt.last;
+	}
+
+	/**
+	 * Checks to see if the list contains the specified position.
+	 *
+	 * @param position
+	 *            position to find
+	 * @return true if the list contains the position, false otherwise
+	 */
+	public boolean contains(int position) {
+		if (size == 0 || position < first || position > last) {
+			return false;
+		}
+
+		PrimitiveIterator.OfInt iterator = iterator();
+		while (iterator.hasNext()) {
+			int current = iterator.nextInt();
+			if (current >= position) {
+				return current == position;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the number of positions in the list.
+	 *
+	 * @return number of positions
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns whether the list has no positions.
+	 *
+	 * @return true if the list is empty
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Returns the smallest position in the list.
+	 *
+	 * @return first position
+	 * @throws NoSuchElementException
+	 *             if the list is empty
+	 */
+	public int first() {
+		if (size == 0) {
+			throw new NoSuchElementException();
+		}
+		return first;
+	}
+
+	/**
+	 * Returns the largest position in the list.
+	 *
+	 * @return last position
+	 * @throws NoSuchElementException
+	 *             if the list is empty
+	 */
+	public int last() {
+		if (size == 0) {
+			throw new NoSuchElementException();
+		}
+		return last;
+	}
+
+	/**
+	 * Returns the number of bytes used by the encoded positions.
+	 *
+	 * @return number of encoded bytes
+	 */
+	public int encodedLength() {
+		return length;
+	}
+
+	/**
+	 * Shrinks the backing array to the number of bytes in use.
+	 */
+	public void trimToSize() {
+		if (bytes.length > length) {
+			bytes = Arrays.copyOf(bytes, length);
+		}
+	}
+
+	/**
+	 * Decodes the positions into a sorted array.
+	 *
+	 * @return array of positions
+	 */
+	public int[] toArray() {
+		int[] positions = new int[size];
+		PrimitiveIterator.OfInt iterator = iterator();
+		for (int i = 0; i < size; i++) {
+			positions[i] = iterator.nextInt();
+		}
+		return positions;
+	}
+
+	/**
+	 * Returns an iterator that decodes the positions in increasing order.
+	 */
+	@Override
+	public PrimitiveIterator.OfInt iterator() {
+		return new PrimitiveIterator.OfInt() {
+			private int offset = 0;
+			private int index = 0;
+			private int current = 0;
+
+			@Override
+			public boolean hasNext() {
+				return index < size;
+			}
+
+			@Override
+			public int nextInt() {
+				if (index >= size) {
+					throw new NoSuchElementException();
+				}
+
+				int value = 0;
+				int shift = 0;
+				byte b;
+				do {
+					b = bytes[offset++];
+					value |= (b & 0x7F) << shift;
+					shift += 7;
+				} while ((b & 0x80) != 0);
+
+				current = (index == 0) ? value : current + value;
+				index++;
+				return current;
+			}
+		};
+	}
+
+	/**
+	 * Returns a string representation of this list, in the same format as a
+	 * sorted set of positions.
+	 */
+	@Override
+	public String toString() {
+		return Arrays.toString(toArray());
+	}
+}
@@ -0,0 +1,178 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Searches a batch of queries that share words. Each word of a query matches
+ * a range of term ids, which is a single term for exact searches and every
+ * term starting with the word for partial searches. The postings of every
+ * term in a range are traversed once and combined into the total frequency
+ * and first position of each document, and that combined list is reused by
+ * every later query with the same word. Queries then only merge the combined
+ * lists of their words, no matter how many terms each word matches.
+ *
+ * Combined lists are kept until they hold {@link #MAX_CACHED} ints, and then
+ * all of them are dropped, so the memory used by a batch stays bounded. A
+ * batch is not thread-safe; each thread should use its own.
+ */
+public abstract class QueryBatch {
+
+	/** The maximum number of ints kept in combined lists. */
+	public static final int MAX_CACHED = 1 << 22;
+
+	/**
+	 * Stores the combined list of each range, as (document id, frequency,
+	 * first position) triples, and their total number of ints.
+	 */
+	private final HashMap<Long, int[]> combined;
+	private int cached;
+
+	/**
+	 * Stores the frequency and first position of each document while a range
+	 * is being combined, and the documents found so far.
+	 */
+	private final int[] frequencies;
+	private final int[] firstPositions;
+	private final int[] found;
+	private int numFound;
+
+	/**
+	 * Stores the results of the current query by document id.
+	 */
+	private final SearchResult[] resultMap;
+
+	/**
+	 * Initializes an empty batch.
+	 *
+	 * @param numDocuments
+	 *            number of documents in the index
+	 */
+	public QueryBatch(int numDocuments) {
+		combined = new HashMap<>();
+		cached = 0;
+		frequencies = new int[numDocuments];
+		firstPositions = new int[numDocuments];
+		found = new int[numDocuments];
+		numFound = 0;
+		resultMap = new SearchResult[numDocuments];
+	}
+
+	/**
+	 * Adds every posting of a term with {@link #addPosting(int, int, int)}.
+	 *
+	 * @param term
+	 *            term id
+	 */
+	protected abstract void visit(int term);
+
+	/**
+	 * Returns the path of a document.
+	 *
+	 * @param document
+	 *            document id
+	 * @return path
+	 */
+	protected abstract String path(int document);
+
+	/**
+	 * Adds a posting of the term that is being visited.
+	 *
+	 * @param document
+	 *            document id of the posting
+	 * @param frequency
+	 *            number of positions of the posting
+	 * @param initialPosition
+	 *            first position of the posting
+	 */
+	protected void addPosting(int document, int frequency, int initialPosition) {
+		if (frequencies[document] == 0) {
+			frequencies[document] = frequency;
+			firstPositions[document] = initialPosition;
+			found[numFound++] = document;
+		}
+		else {
+			frequencies[document] += frequency;
+			firstPositions[document] = Math.min(firstPositions[document], initialPosition);
+		}
+	}
+
+	/**
+	 * Returns the combined list of a range of terms, traversing their postings
+	 * if the range was not combined yet.
+	 *
+	 * @param start
+	 *            first term id of the range
+	 * @param end
+	 *            term id after the last one in the range
+	 * @return (document id, frequency, first position) triples
+	 */
+	private int[] combine(int start, int end) {
+		Long key = ((long) start << 32) | end;
+		int[] list = combined.get(key);
+		if (list != null) {
+			return list;
+		}
+
+		for (int term = start; term < end; term++) {
+			visit(term);
+		}
+
+		list = new int[3 * numFound];
+		for (int i = 0; i < numFound; i++) {
+			int document = found[i];
+			list[3 * i] = document;
+			list[3 * i + 1] = frequencies[document];
+			list[3 * i + 2] = firstPositions[document];
+			frequencies[document] = 0;
+		}
+		numFound = 0;
+
+		if (cached + list.length > MAX_CACHED) {
+			combined.clear();
+			cached = 0;
+		}
+		combined.put(key, list);
+		cached += list.length;
+		return list;
+	}
+
+	/**
+	 * Searches a single query.
+	 *
+	 * @param ranges
+	 *            start and end of the range of term ids matched by each word
+	 *            of the query, one pair after another; words that appear more
+	 *            than once should have their range repeated
+	 * @param limit
+	 *            maximum number of results to return, or 0 or less for all of
+	 *            them
+	 * @return sorted ArrayList of at most limit SearchResults
+	 */
+	public ArrayList<SearchResult> search(int[] ranges, int limit) {
+		ArrayList<SearchResult> results = new ArrayList<>();
+		for (int r = 0; r < ranges.length; r += 2) {
+			if (ranges[r] >= ranges[r + 1]) {
+				continue;
+			}
+
+			int[] list = combine(ranges[r], ranges[r + 1]);
+			for (int i = 0; i < list.length; i += 3) {
+				int document = list[i];
+				SearchResult searchResult = resultMap[document];
+				if (searchResult == null) {
+					searchResult = new SearchResult(list[i + 1], list[i + 2], document, path(document));
+					resultMap[document] = searchResult;
+					results.add(searchResult);
+				}
+				else {
+					searchResult.addToFrequency(list[i + 1]);
+					searchResult.updateInitialPosition(list[i + 2]);
+				}
+			}
+		}
+
+		for (SearchResult result : results) {
+			resultMap[result.document] = null;
+		}
+		return SearchResult.top(results, limit);
+	}
+}
@@ -0,0 +1,161 @@
+/**
+ * Work a single search may still do, as set by its {@link QueryLimits}. The
+ * words of a search are expanded to terms in order, and each term is only
+ * searched if it is admitted by the budget. Long searches also check the
+ * deadline every few steps. Once a search runs out of any limit, its results
+ * are marked as truncated.
+ *
+ * A budget belongs to a single search, so it is not thread-safe.
+ */
+public class QueryBudget {
+
+	/** The number of steps between checks of the deadline. */
+	public static final int CHECK_INTERVAL = 1024;
+
+	/**
+	 * Stores the limits the budget was started from, or null if it is
+	 * unlimited.
+	 */
+	private final QueryLimits limits;
+
+	/**
+	 * Stores the largest number of terms and postings, and the deadline in
+	 * nanoseconds if there is one.
+	 */
+	private final int maxTerms;
+	private final long maxPostings;
+	private final boolean timed;
+	private final long deadline;
+
+	/**
+	 * Stores the terms and postings admitted so far, the number of steps
+	 * counted since the deadline was last checked, and the limits the search
+	 * ran out of.
+	 */
+	private int terms;
+	private long postings;
+	private int steps;
+	private boolean expired;
+	private final boolean[] violated;
+	private boolean truncated;
+
+	/**
+	 * Initializes a budget that never runs out.
+	 */
+	public QueryBudget() {
+		this(null, Integer.MAX_VALUE, Long.MAX_VALUE, false, 0);
+	}
+
+	/**
+	 * Initializes a budget.
+	 *
+	 * @param limits
+	 *            limits to count violations in, or null
+	 * @param maxTerms
+	 *            largest number of terms
+	 * @param maxPostings
+	 *            largest number of postings
+	 * @param timed
+	 *            true if the search has a deadline
+	 * @param deadline
+	 *            value of {@link System#nanoTime()} the search must finish by
+	 */
+	QueryBudget(QueryLimits limits, int maxTerms, long maxPostings, boolean timed, long deadline) {
+		this.limits = limits;
+		this.maxTerms = maxTerms;
+		this.maxPostings = maxPostings;
+		this.timed = timed;
+		this.deadline = deadline;
+		this.violated = new boolean[QueryLimits.Violation.values().length];
+	}
+
+	/**
+	 * Marks the search as truncated because it ran out of a limit, and counts
+	 * the first time it runs out of each limit.
+	 *
+	 * @param violation
+	 *            limit the search ran out of
+	 */
+	private void violate(QueryLimits.Violation violation) {
+		if (!violated[violation.ordinal()]) {
+			violated[violation.ordinal()] = true;
+			if (limits != null) {
+				limits.violated(violation, !truncated);
+			}
+		}
+		truncated = true;
+	}
+
+	/**
+	 * Decides whether a term may be searched, and takes its postings from the
+	 * budget if so. A term whose postings do not fit is not searched, but
+	 * smaller terms after it still may be.
+	 *
+	 * @param size
+	 *            number of postings of the term
+	 * @return true if the term may be searched
+	 */
+	public boolean admit(int size) {
+		if (terms >= maxTerms) {
+			violate(QueryLimits.Violation.TERMS);
+			return false;
+		}
+		if (size > maxPostings - postings) {
+			violate(QueryLimits.Violation.POSTINGS);
+			return false;
+		}
+		if (expired()) {
+			return false;
+		}
+		terms++;
+		postings += size;
+		return true;
+	}
+
+	/**
+	 * Returns whether the deadline of the search has passed.
+	 *
+	 * @return true if the search must stop
+	 */
+	public boolean expired() {
+		if (!expired && timed && System.nanoTime() - deadline >= 0) {
+			expired = true;
+			violate(QueryLimits.Violation.DEADLINE);
+		}
+		return expired;
+	}
+
+	/**
+	 * Counts a step of a search, and checks the deadline every
+	 * {@link #CHECK_INTERVAL} steps, so that loops can check it without
+	 * reading the clock every time.
+	 *
+	 * @return true if the search must stop
+	 */
+	public boolean step() {
+		if (++steps < CHECK_INTERVAL) {
+			return expired;
+		}
+		steps = 0;
+		return expired();
+	}
+
+	/**
+	 * Returns whether the search ran out of its budget, in which case its
+	 * results are only the ones found until then.
+	 *
+	 * @return true if the results are truncated
+	 */
+	public boolean truncated() {
+		return truncated;
+	}
+
+	/**
+	 * Returns the number of postings admitted so far.
+	 *
+	 * @return number of postings
+	 */
+	public long postings() {
+		return postings;
+	}
+}
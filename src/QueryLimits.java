@@ -0,0 +1,122 @@
+/**
+ * Limits on the work of each search, and counts of the searches that ran out
+ * of them. A search may expand its words to at most a number of terms, read
+ * at most a number of postings, and run for at most a number of milliseconds.
+ * Each search gets its own {@link QueryBudget} from {@link #start()}, and a
+ * search that runs out of its budget returns the results it found so far,
+ * which are marked as truncated.
+ */
+public class QueryLimits {
+
+	/**
+	 * Limits a search can run out of.
+	 */
+	public static enum Violation {
+		TERMS, POSTINGS, DEADLINE
+	}
+
+	/**
+	 * Stores the largest number of terms, the largest number of postings and
+	 * the number of milliseconds each search may use, with 0 or less for no
+	 * limit.
+	 */
+	private final int maxTerms;
+	private final long maxPostings;
+	private final long timeout;
+
+	/**
+	 * Stores the number of searches started, the number that were truncated,
+	 * and the number that ran out of each limit.
+	 */
+	private long searches;
+	private long truncated;
+	private final long[] violations;
+
+	/**
+	 * Initializes limits that no search can run out of.
+	 */
+	public QueryLimits() {
+		this(0, 0, 0);
+	}
+
+	/**
+	 * Initializes the specified limits.
+	 *
+	 * @param maxTerms
+	 *            largest number of terms the words of a search may expand to,
+	 *            or 0 or less for no limit
+	 * @param maxPostings
+	 *            largest number of postings a search may read, or 0 or less
+	 *            for no limit
+	 * @param timeout
+	 *            number of milliseconds a search may run for, or 0 or less for
+	 *            no limit
+	 */
+	public QueryLimits(int maxTerms, long maxPostings, long timeout) {
+		this.maxTerms = maxTerms;
+		this.maxPostings = maxPostings;
+		this.timeout = timeout;
+		this.violations = new long[Violation.values().length];
+	}
+
+	/**
+	 * Starts the budget of a search, whose deadline is counted from now.
+	 *
+	 * @return budget of the search
+	 */
+	public QueryBudget start() {
+		synchronized (this) {
+			searches++;
+		}
+		long deadline = timeout > 0 ? System.nanoTime() + timeout * 1000000 : 0;
+		return new QueryBudget(this, maxTerms > 0 ? maxTerms : Integer.MAX_VALUE,
+				maxPostings > 0 ? maxPostings : Long.MAX_VALUE, timeout > 0, deadline);
+	}
+
+	/**
+	 * Counts a search that ran out of one of the limits.
+	 *
+	 * @param violation
+	 *            limit the search ran out of
+	 * @param first
+	 *            true if this is the first limit the search ran out of
+	 */
+	synchronized void violated(Violation violation, boolean first) {
+		violations[violation.ordinal()]++;
+		if (first) {
+			truncated++;
+		}
+	}
+
+	/**
+	 * Returns the number of searches that were truncated.
+	 *
+	 * @return number of truncated searches
+	 */
+	public synchronized long truncated() {
+		return truncated;
+	}
+
+	/**
+	 * Returns the number of searches that ran out of a limit.
+	 *
+	 * @param violation
+	 *            limit to count
+	 * @return number of searches
+	 */
+	public synchronized long violations(Violation violation) {
+		return violations[violation.ordinal()];
+	}
+
+	/**
+	 * Returns a summary of the limits and how many searches ran out of them.
+	 */
+	@Override
+	public synchronized String toString() {
+		return String.format("max terms: %s, max postings: %s, timeout: %s, searches: %d, truncated: %d, "
+				+ "over terms: %d, over postings: %d, over deadline: %d", maxTerms > 0 ? maxTerms : "none",
+				maxPostings > 0 ? maxPostings : "none", timeout > 0 ? timeout + " ms" : "none", searches, truncated,
+				violations[Violation.TERMS.ordinal()], violations[Violation.POSTINGS.ordinal()],
+				violations[Violation.DEADLINE.ordinal()]);
+	}
+}
@@ -0,0 +1,14 @@
+/**
+ * How the words of a query are matched against documents.
+ */
+public enum QueryMode {
+
+	/** Documents that contain any of the words. */
+	ANY,
+
+	/** Only documents that contain every one of the words. */
+	ALL,
+
+	/** Only documents that contain the words next to each other, in order. */
+	PHRASE;
+}
@@ -0,0 +1,259 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * Reads the distinct queries of a query file in sorted order, without holding
+ * every query in memory. Each line is parsed into a query, whose words are
+ * sorted unless the query is a phrase, since the order of its words matters.
+ *
+ * The queries are sorted with an external merge sort: the file is read in runs
+ * of at most a fixed number of distinct queries, each run is sorted in memory
+ * and written to a temporary file, and the runs are then merged, skipping the
+ * queries that are in more than one run. A file that fits in a single run is
+ * never written out. Only one run, and one line of each run file, is held in
+ * memory at a time. The run files are deleted when the reader is closed.
+ */
+public class QueryReader implements Closeable {
+
+	/** The default number of distinct queries sorted in memory at once. */
+	public static final int DEFAULT_RUN = 100000;
+
+	/**
+	 * Stores the queries of the only run if the file fit in it, or else the
+	 * runs that are being merged, by their next query.
+	 */
+	private Iterator<String> memory;
+	private final PriorityQueue<Run> runs;
+
+	/**
+	 * Stores the run files, which are deleted once the queries are read.
+	 */
+	private final ArrayList<Path> files;
+
+	/**
+	 * Stores the current query and its words, or null before the first query.
+	 */
+	private String query;
+	private String[] words;
+
+	/**
+	 * Reads and sorts a query file in runs of {@link #DEFAULT_RUN} queries.
+	 *
+	 * @param path
+	 *            path to read queries from
+	 * @param phrase
+	 *            true if every line is a phrase
+	 * @throws IOException
+	 *             if the file cannot be read, or a run cannot be written
+	 */
+	public QueryReader(Path path, boolean phrase) throws IOException {
+		this(path, phrase, DEFAULT_RUN);
+	}
+
+	/**
+	 * Reads and sorts a query file in runs of the given number of queries.
+	 *
+	 * @param path
+	 *            path to read queries from
+	 * @param phrase
+	 *            true if every line is a phrase
+	 * @param run
+	 *            largest number of distinct queries to sort in memory at once
+	 * @throws IOException
+	 *             if the file cannot be read, or a run cannot be written
+	 */
+	public QueryReader(Path path, boolean phrase, int run) throws IOException {
+		run = Math.max(1, run);
+		runs = new PriorityQueue<>();
+		files = new ArrayList<>();
+
+		try (BufferedReader br = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+			TreeMap<String, String[]> queries = new TreeMap<>();
+			String line;
+			String[] words;
+			while ((line = br.readLine()) != null) {
+				words = WordParser.parseWords(line);
+				if (!phrase) {
+					Arrays.sort(words);
+				}
+
+				if (words.length > 0) {
+					queries.put(String.join(" ", words), words);
+				}
+
+				if (queries.size() >= run) {
+					spill(queries);
+					queries.clear();
+				}
+			}
+
+			if (files.isEmpty()) {
+				memory = queries.keySet().iterator();
+			}
+			else {
+				spill(queries);
+				for (Path file : files) {
+					Run next = new Run(file);
+					if (next.advance()) {
+						runs.add(next);
+					}
+				}
+			}
+		}
+		catch (IOException | RuntimeException e) {
+			close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Writes a sorted run of queries to a new temporary file.
+	 *
+	 * @param queries
+	 *            sorted queries of the run
+	 * @throws IOException
+	 *             if the run cannot be written
+	 */
+	private void spill(TreeMap<String, String[]> queries) throws IOException {
+		if (queries.isEmpty()) {
+			return;
+		}
+
+		Path file = Files.createTempFile("queries", ".run");
+		files.add(file);
+		try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			for (String query : queries.keySet()) {
+				writer.write(query);
+				writer.newLine();
+			}
+		}
+	}
+
+	/**
+	 * Moves to the next distinct query in sorted order.
+	 *
+	 * @return true if there is a next query, false once every query was read
+	 * @throws IOException
+	 *             if a run cannot be read
+	 */
+	public boolean next() throws IOException {
+		String last = query;
+		query = null;
+		if (memory != null) {
+			if (memory.hasNext()) {
+				query = memory.next();
+			}
+		}
+		else {
+			// the same query may be the next one of several runs, but is only returned once
+			while (query == null && !runs.isEmpty()) {
+				Run run = runs.poll();
+				if (!run.line.equals(last)) {
+					query = run.line;
+				}
+				if (run.advance()) {
+					runs.add(run);
+				}
+			}
+		}
+
+		// the words are the query split again, since it is the words joined by spaces
+		words = query == null ? null : query.split(" ");
+		return query != null;
+	}
+
+	/**
+	 * Returns the current query.
+	 *
+	 * @return words of the query joined by spaces
+	 */
+	public String query() {
+		return query;
+	}
+
+	/**
+	 * Returns the words of the current query.
+	 *
+	 * @return words of the query, sorted unless it is a phrase
+	 */
+	public String[] words() {
+		return words;
+	}
+
+	/**
+	 * Closes and deletes the run files.
+	 *
+	 * @throws IOException
+	 *             if a run file cannot be closed or deleted
+	 */
+	@Override
+	public void close() throws IOException {
+		IOException error = null;
+		for (Run run : runs) {
+			try {
+				run.reader.close();
+			}
+			catch (IOException e) {
+				error = e;
+			}
+		}
+		runs.clear();
+		for (Path file : files) {
+			try {
+				Files.deleteIfExists(file);
+			}
+			catch (IOException e) {
+				error = e;
+			}
+		}
+		files.clear();
+		if (error != null) {
+			throw error;
+		}
+	}
+
+	/**
+	 * A sorted run file being merged, ordered by its next query.
+	 */
+	private static class Run implements Comparable<Run> {
+
+		private final BufferedReader reader;
+		private String line;
+
+		public Run(Path file) throws IOException {
+			this.reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+		}
+
+		/**
+		 * Reads the next query of the run, and closes the run once there is
+		 * none left.
+		 *
+		 * @return true if there is a next query
+		 * @throws IOException
+		 *             if the run cannot be read
+		 */
+		public boolean advance() throws IOException {
+			line = reader.readLine();
+			if (line == null) {
+				reader.close();
+				return false;
+			}
+			return true;
+		}
+
+		@Override
+		public int compareTo(Run other) {
+			return line.compareTo(other.line);
+		}
+	}
+}
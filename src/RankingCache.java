@@ -0,0 +1,356 @@
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Splits the results of searches into pages that are found through cursors.
+ * A cursor names a ranking and the offset of a page in it. Each ranking is
+ * kept for a short time after it was last used, so the next and previous
+ * pages of a search come from the same ranking instead of searching again,
+ * and stay in the same order even if the index changes in the meantime.
+ *
+ * The first page of a search only asks the index for the best results up to
+ * that page. Once a later page is asked for, the ranking is extended by
+ * {@link #DEEP_PAGES} pages at once, so paging through the results only
+ * searches the index again every few pages, and the results of the pages
+ * already ranked are kept as they were. If a ranking has expired, the page is
+ * found by searching again up to that page.
+ *
+ * Every search of the index runs with a budget from the {@link QueryLimits} of
+ * the cache. A ranking whose search ran out of its budget is marked as
+ * truncated, and is searched again whenever a page past its results is asked
+ * for.
+ */
+public class RankingCache {
+
+	/** The default number of milliseconds a ranking is kept after it was last used. */
+	public static final long DEFAULT_LIFETIME = 2 * 60 * 1000;
+
+	/** The default maximum number of rankings kept. */
+	public static final int DEFAULT_ENTRIES = 256;
+
+	/** The number of pages a ranking is extended by once a later page is asked for. */
+	public static final int DEEP_PAGES = 10;
+
+	/** The largest number of results that are ranked for a single search. */
+	public static final int MAX_DEPTH = 10000;
+
+	/**
+	 * Stores the rankings by id, from least to most recently used.
+	 */
+	private final LinkedHashMap<Long, Ranking> rankings;
+
+	/**
+	 * Stores the limits of the cache.
+	 */
+	private final int maxEntries;
+	private final long lifetime;
+
+	/**
+	 * Stores the limits each search of the index runs with.
+	 */
+	private final QueryLimits limits;
+
+	/**
+	 * Stores the id of the next ranking. It starts at a random value so that
+	 * cursors from before a restart do not name newer rankings.
+	 */
+	private long nextId;
+
+	/**
+	 * Initializes the cache with the default limits.
+	 */
+	public RankingCache() {
+		this(DEFAULT_ENTRIES, DEFAULT_LIFETIME, new QueryLimits());
+	}
+
+	/**
+	 * Initializes the cache with the default limits, whose searches run with
+	 * the specified limits.
+	 *
+	 * @param limits
+	 *            limits each search of the index runs with
+	 */
+	public RankingCache(QueryLimits limits) {
+		this(DEFAULT_ENTRIES, DEFAULT_LIFETIME, limits);
+	}
+
+	/**
+	 * Initializes the cache with the specified limits.
+	 *
+	 * @param maxEntries
+	 *            maximum number of rankings kept
+	 * @param lifetime
+	 *            number of milliseconds a ranking is kept after it was last
+	 *            used
+	 * @param limits
+	 *            limits each search of the index runs with
+	 */
+	public RankingCache(int maxEntries, long lifetime, QueryLimits limits) {
+		this.rankings = new LinkedHashMap<>(16, 0.75f, true);
+		this.maxEntries = maxEntries;
+		this.lifetime = lifetime;
+		this.limits = limits;
+		this.nextId = new Random().nextInt(Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Returns a ranking that has not expired, after dropping every expired
+	 * one.
+	 *
+	 * @param id
+	 *            id of the ranking
+	 * @param now
+	 *            current time in milliseconds
+	 * @return ranking, or null if there is none
+	 */
+	private synchronized Ranking lookup(long id, long now) {
+		Iterator<Ranking> eldest = rankings.values().iterator();
+		while (eldest.hasNext() && eldest.next().expires <= now) {
+			eldest.remove();
+		}
+
+		Ranking ranking = rankings.get(id);
+		if (ranking != null) {
+			ranking.expires = now + lifetime;
+		}
+		return ranking;
+	}
+
+	/**
+	 * Keeps a ranking, then drops the least recently used rankings until the
+	 * cache is within its limit.
+	 *
+	 * @param id
+	 *            id of the ranking, or a negative number for a new id
+	 * @param ranking
+	 *            ranking to keep
+	 * @return id of the ranking
+	 */
+	private synchronized long store(long id, Ranking ranking) {
+		if (id < 0) {
+			id = nextId++;
+		}
+		rankings.put(id, ranking);
+
+		Iterator<Ranking> eldest = rankings.values().iterator();
+		while (rankings.size() > maxEntries && eldest.hasNext()) {
+			eldest.next();
+			eldest.remove();
+		}
+		return id;
+	}
+
+	/**
+	 * Returns the cursor of a page.
+	 *
+	 * @param id
+	 *            id of the ranking
+	 * @param offset
+	 *            index of the first result of the page
+	 * @return cursor
+	 */
+	private static String cursor(long id, int offset) {
+		return Long.toString(id, 36) + "." + offset;
+	}
+
+	/**
+	 * Returns a page of the results of a search. The cursor is ignored if it
+	 * cannot be read, and its ranking is ignored if it belongs to another
+	 * search.
+	 *
+	 * @param key
+	 *            text that identifies the search, such as its query and mode
+	 * @param cursor
+	 *            cursor of the page, or null for the first page
+	 * @param pageSize
+	 *            number of results on each page
+	 * @param search
+	 *            search of the index to run if the page is not ranked yet
+	 * @return page of results
+	 */
+	public Page page(String key, String cursor, int pageSize, Search search) {
+		pageSize = Math.max(1, Math.min(pageSize, MAX_DEPTH));
+
+		long id = -1;
+		int offset = 0;
+		if (cursor != null) {
+			int dot = cursor.indexOf('.');
+			try {
+				id = Long.parseLong(cursor.substring(0, dot), 36);
+				offset = Integer.parseInt(cursor.substring(dot + 1));
+			}
+			catch (NumberFormatException | IndexOutOfBoundsException e) {
+				id = -1;
+				offset = 0;
+			}
+			if (offset < 0 || offset >= MAX_DEPTH) {
+				id = -1;
+				offset = 0;
+			}
+		}
+
+		long now = System.currentTimeMillis();
+		Ranking ranking = id < 0 ? null : lookup(id, now);
+		if (ranking == null) {
+			// the ranking expired, so the page is ranked again under a new id
+			id = -1;
+		}
+		else if (!ranking.key.equals(key)) {
+			// the cursor belongs to another search
+			ranking = null;
+			id = -1;
+			offset = 0;
+		}
+
+		// one more result than the page shows tells whether there is a next page
+		int needed = offset + pageSize + 1;
+		if (ranking == null || (!ranking.complete && ranking.results.size() < needed)) {
+			int depth = offset == 0 ? needed : offset + DEEP_PAGES * pageSize + 1;
+			depth = Math.min(depth, MAX_DEPTH);
+			QueryBudget budget = limits.start();
+			ArrayList<SearchResult> found = search.run(depth, budget);
+			boolean truncated = budget.truncated();
+			boolean complete = !truncated && found.size() < depth;
+			if (ranking != null) {
+				// the pages already ranked keep their results, even if the index changed since
+				HashSet<String> ranked = new HashSet<>();
+				for (SearchResult result : ranking.results) {
+					ranked.add(result.path);
+				}
+				ArrayList<SearchResult> extended = new ArrayList<>(ranking.results);
+				for (SearchResult result : found) {
+					if (!ranked.contains(result.path)) {
+						extended.add(result);
+					}
+				}
+				found = extended;
+			}
+			ranking = new Ranking(key, found, complete, truncated, now + lifetime);
+			id = store(id, ranking);
+		}
+
+		List<SearchResult> results = ranking.results;
+		int from = Math.min(offset, results.size());
+		int to = Math.min(offset + pageSize, results.size());
+		String next = to < results.size() && to < MAX_DEPTH ? cursor(id, to) : null;
+		String previous = offset > 0 ? cursor(id, Math.max(0, offset - pageSize)) : null;
+		return new Page(new ArrayList<>(results.subList(from, to)), from, previous, next, ranking.truncated);
+	}
+
+	/**
+	 * Returns the limits each search of the index runs with, which count the
+	 * searches that ran out of them.
+	 *
+	 * @return limits of the searches
+	 */
+	public QueryLimits limits() {
+		return limits;
+	}
+
+	/**
+	 * Returns the number of rankings kept, including expired ones that have
+	 * not been dropped yet.
+	 *
+	 * @return number of rankings
+	 */
+	public synchronized int size() {
+		return rankings.size();
+	}
+
+	/**
+	 * Search of the index to run when a page is not ranked yet.
+	 */
+	public static interface Search {
+
+		/**
+		 * Runs the search.
+		 *
+		 * @param limit
+		 *            maximum number of results to find
+		 * @param budget
+		 *            work the search may do
+		 * @return sorted ArrayList of at most limit SearchResults
+		 */
+		public ArrayList<SearchResult> run(int limit, QueryBudget budget);
+	}
+
+	/**
+	 * Page of the results of a search.
+	 */
+	public static class Page {
+
+		/** The results on the page. */
+		public final ArrayList<SearchResult> results;
+
+		/** The index of the first result of the page in the ranking. */
+		public final int offset;
+
+		/** The cursors of the previous and next pages, or null if there is none. */
+		public final String previous;
+		public final String next;
+
+		/** Whether the search ran out of its budget, so some results may be missing. */
+		public final boolean truncated;
+
+		/**
+		 * Initializes a page.
+		 *
+		 * @param results
+		 *            results on the page
+		 * @param offset
+		 *            index of the first result of the page
+		 * @param previous
+		 *            cursor of the previous page, or null
+		 * @param next
+		 *            cursor of the next page, or null
+		 * @param truncated
+		 *            true if the search ran out of its budget
+		 */
+		public Page(ArrayList<SearchResult> results, int offset, String previous, String next, boolean truncated) {
+			this.results = results;
+			this.offset = offset;
+			this.previous = previous;
+			this.next = next;
+			this.truncated = truncated;
+		}
+	}
+
+	/**
+	 * Best results of a search, up to some depth.
+	 */
+	private static class Ranking {
+
+		private final String key;
+		private final ArrayList<SearchResult> results;
+
+		/**
+		 * Whether the ranking holds every result of the search, because the
+		 * search found fewer results than it was asked for.
+		 */
+		private final boolean complete;
+
+		/**
+		 * Whether the search ran out of its budget.
+		 */
+		private final boolean truncated;
+
+		/**
+		 * Time in milliseconds after which the ranking is dropped. It is only
+		 * changed while the cache is locked.
+		 */
+		private long expires;
+
+		public Ranking(String key, ArrayList<SearchResult> results, boolean complete, boolean truncated,
+				long expires) {
+			this.key = key;
+			this.results = results;
+			this.complete = complete;
+			this.truncated = truncated;
+			this.expires = expires;
+		}
+	}
+}
@@ -1,73 +1,277 @@
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * A simple custom lock that allows simultaneously read operations, but
- * disallows simultaneously write and read/write operations.
+ * A custom lock that allows simultaneously read operations, but disallows
+ * simultaneously write and read/write operations.
  *
- * Does not implement any form or priority to read or write operations. The
- * first thread that acquires the appropriate lock should be allowed to
- * continue.
+ * Writers are preferred: once a writer waits, readers that arrive after it
+ * wait for it instead of keeping it out. Readers that were already waiting
+ * when a writer finishes go before the next writer, so neither readers nor
+ * writers can be starved, and writers get the lock in the order they asked for
+ * it. Each waiting writer has its own condition, so finishing only wakes the
+ * threads that may go next.
+ *
+ * Both locks are reentrant. A thread that holds the read/write lock may also
+ * lock it for reading, but a thread that holds the read lock may not ask for
+ * the read/write lock, since it would wait for itself.
+ *
+ * Reads of a few plain fields may instead be done optimistically, without
+ * locking: a stamp is taken with {@link #tryOptimisticRead()}, the fields are
+ * copied into local variables, and the copies are only used if
+ * {@link #validate(long)} shows no writer locked the lock in between, or else
+ * read again under the read lock. Nothing may be done with the copies before
+ * they are validated. Reads that follow references into a structure that
+ * writers change, such as looking up a key in a map, must not be optimistic:
+ * without the lock they may see the structure half changed, and may never
+ * finish, so they would never get to validate.
+ *
+ * Waiting for either lock is not interrupted. An interrupted thread keeps
+ * waiting, and its interrupt status is set again once it has the lock.
  */
 public class ReadWriteLock {
+
+	/**
+	 * Guards the state of the lock, and the conditions waiting readers and
+	 * writers wait on.
+	 */
+	private final ReentrantLock mutex;
+	private final Condition readable;
+
+	/**
+	 * Stores the number of read locks held, and the number of readers waiting
+	 * for the lock.
+	 */
 	private int readers;
-	private int writers;
+	private int waitingReaders;
+
+	/**
+	 * Stores the number of the current reader phase. Readers that are waiting
+	 * when a writer finishes are let in by starting a new phase, even if other
+	 * writers are waiting.
+	 */
+	private long phase;
+
+	/**
+	 * Stores the thread that holds the read/write lock and how many times it
+	 * holds it, and the conditions of the waiting writers, in the order they
+	 * asked for the lock.
+	 */
+	private Thread owner;
+	private int writes;
+	private final ArrayDeque<Condition> writers;
+
+	/**
+	 * Stores how many read locks each thread holds.
+	 */
+	private final ThreadLocal<int[]> held;
+
+	/**
+	 * Stores a version that is odd while the read/write lock is held, and is
+	 * increased every time it is locked or unlocked.
+	 */
+	private final AtomicLong version;
 
 	/**
 	 * Initializes a multi-reader single-writer lock.
 	 */
 	public ReadWriteLock() {
+		mutex = new ReentrantLock();
+		readable = mutex.newCondition();
 		readers = 0;
-		writers = 0;
+		waitingReaders = 0;
+		phase = 0;
+		owner = null;
+		writes = 0;
+		writers = new ArrayDeque<>();
+		held = new ThreadLocal<int[]>() {
+			@Override
+			protected int[] initialValue() {
+				return new int[1];
+			}
+		};
+		version = new AtomicLong(2);
 	}
 
 	/**
-	 * Will wait until there are no active writers in the system, and then will
-	 * increase the number of active readers.
-	 * @throws InterruptedException 
+	 * Will wait until there are no active or waiting writers in the system,
+	 * and then will increase the number of active readers. Threads that
+	 * already hold a read or read/write lock do not wait.
 	 */
-	public synchronized void lockReadOnly() {
-		while (writers > 0) {
-			try {
-				this.wait();
-			} catch (InterruptedException e) {
-				Thread.currentThread().interrupt();
+	public void lockReadOnly() {
+		int[] count = held.get();
+		Thread current = Thread.currentThread();
+
+		mutex.lock();
+		try {
+			if (count[0] == 0 && owner != current && (owner != null || !writers.isEmpty())) {
+				// let in by the first writer to finish, even if other writers are still waiting
+				long waited = phase;
+				waitingReaders++;
+				try {
+					while (owner != null || (!writers.isEmpty() && phase == waited)) {
+						readable.awaitUninterruptibly();
+					}
+				}
+				finally {
+					waitingReaders--;
+				}
 			}
+			readers++;
 		}
-		readers++;
+		finally {
+			mutex.unlock();
+		}
+		count[0]++;
 	}
 
 	/**
-	 * Will decrease the number of active readers, and notify any waiting
-	 * threads if necessary.
+	 * Will decrease the number of active readers, and notify the first waiting
+	 * writer if it may go next.
 	 */
-	public synchronized void unlockReadOnly() {
-		readers--;
-		if (readers == 0) {
-			this.notifyAll();
+	public void unlockReadOnly() {
+		int[] count = held.get();
+		if (count[0] == 0) {
+			throw new IllegalMonitorStateException("Read lock is not held by this thread");
+		}
+		count[0]--;
+
+		mutex.lock();
+		try {
+			readers--;
+			if (readers == 0 && owner == null && !writers.isEmpty()) {
+				writers.peekFirst().signal();
+			}
+		}
+		finally {
+			mutex.unlock();
 		}
 	}
 
 	/**
-	 * Will wait until there are no active readers or writers in the system, and
-	 * then will increase the number of active writers.
-	 * @throws InterruptedException 
+	 * Will wait until there are no active readers or writers in the system,
+	 * and every writer that asked for the lock earlier is done, and then will
+	 * increase the number of active writers.
 	 */
-	public synchronized void lockReadWrite() {
-		while (writers > 0 || readers > 0) {
-			try {
-				this.wait();
-			} catch (InterruptedException e) {
-				Thread.currentThread().interrupt();
+	public void lockReadWrite() {
+		Thread current = Thread.currentThread();
+		mutex.lock();
+		try {
+			if (owner == current) {
+				writes++;
+				return;
+			}
+			if (held.get()[0] > 0) {
+				throw new IllegalMonitorStateException("Read lock cannot be upgraded to a read/write lock");
 			}
+
+			if (owner != null || readers > 0 || !writers.isEmpty()) {
+				Condition turn = mutex.newCondition();
+				writers.addLast(turn);
+				try {
+					while (writers.peekFirst() != turn || owner != null || readers > 0) {
+						turn.awaitUninterruptibly();
+					}
+				}
+				finally {
+					writers.remove(turn);
+				}
+			}
+			acquire(current);
+		}
+		finally {
+			mutex.unlock();
 		}
-		writers++;
 	}
 
 	/**
-	 * Will decrease the number of active writers, and notify any waiting
-	 * threads if necessary.
+	 * Will increase the number of active writers if there are no active readers
+	 * or writers in the system and no writer is waiting, without waiting.
+	 *
+	 * @return true if the lock was acquired, false otherwise
+	 */
+	public boolean tryLockReadWrite() {
+		Thread current = Thread.currentThread();
+		mutex.lock();
+		try {
+			if (owner == current) {
+				writes++;
+				return true;
+			}
+			if (owner != null || readers > 0 || !writers.isEmpty()) {
+				return false;
+			}
+			acquire(current);
+			return true;
+		}
+		finally {
+			mutex.unlock();
+		}
+	}
+
+	/**
+	 * Makes a thread the writer. Must be called while the mutex is held.
+	 *
+	 * @param current
+	 *            thread to make the writer
+	 */
+	private void acquire(Thread current) {
+		owner = current;
+		writes = 1;
+		version.incrementAndGet();
+	}
+
+	/**
+	 * Will decrease the number of active writers, and notify the readers that
+	 * waited for it, or else the next waiting writer.
+	 */
+	public void unlockReadWrite() {
+		mutex.lock();
+		try {
+			if (owner != Thread.currentThread()) {
+				throw new IllegalMonitorStateException("Read/write lock is not held by this thread");
+			}
+			if (--writes > 0) {
+				return;
+			}
+			owner = null;
+			version.incrementAndGet();
+
+			if (waitingReaders > 0) {
+				phase++;
+				readable.signalAll();
+			}
+			else if (!writers.isEmpty() && readers == 0) {
+				writers.peekFirst().signal();
+			}
+		}
+		finally {
+			mutex.unlock();
+		}
+	}
+
+	/**
+	 * Returns a stamp to read optimistically with, without locking.
+	 *
+	 * @return stamp to validate once read, or 0 if the read/write lock is held
+	 */
+	public long tryOptimisticRead() {
+		long stamp = version.get();
+		return (stamp & 1) == 0 ? stamp : 0;
+	}
+
+	/**
+	 * Returns whether no writer locked the lock since the stamp was taken, so
+	 * that what was read since is consistent.
+	 *
+	 * @param stamp
+	 *            stamp from {@link #tryOptimisticRead()}
+	 * @return true if what was read may be used
 	 */
-	public synchronized void unlockReadWrite() {
-		writers--;
-		this.notifyAll();
+	public boolean validate(long stamp) {
+		// unlike a volatile read, a compare-and-set keeps the reads before it from being moved after it
+		return stamp != 0 && version.compareAndSet(stamp, stamp);
 	}
 }
@@ -0,0 +1,190 @@
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Writes the results of numbered queries to a file as soon as they are ready,
+ * in the same JSON format as {@link JSONWriter#asNestedObject}. Queries may be
+ * finished in any order by any number of threads, but are written in the order
+ * of their numbers. Results that are finished early wait in a reorder buffer
+ * until every query before them is written. The buffer holds at most a fixed
+ * number of queries, and threads that finish a query too far ahead wait for
+ * room, so memory stays bounded no matter how many queries there are.
+ */
+public class ResultsWriter implements Closeable {
+
+	/**
+	 * Stores the writer of the output file.
+	 */
+	private final BufferedWriter writer;
+
+	/**
+	 * Stores the results waiting to be written, by query number, and the
+	 * maximum number of them.
+	 */
+	private final HashMap<Integer, Entry> buffer;
+	private final int capacity;
+
+	/**
+	 * Stores the number of the next query to write.
+	 */
+	private int next;
+
+	/**
+	 * Stores the first error from writing, which is thrown again by close.
+	 */
+	private IOException error;
+
+	/**
+	 * Opens the output file and writes the start of the JSON array.
+	 *
+	 * @param path
+	 *            path to write to
+	 * @param capacity
+	 *            maximum number of finished queries to buffer; must be at
+	 *            least the number of queries any single thread finishes
+	 *            before moving on to later ones
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	public ResultsWriter(Path path, int capacity) throws IOException {
+		this.writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+		this.buffer = new HashMap<>();
+		this.capacity = Math.max(1, capacity);
+		this.next = 0;
+
+		writer.write("[");
+		writer.newLine();
+	}
+
+	/**
+	 * Adds the results of a query. Waits while the query is too far ahead of
+	 * the next query to write, then writes every query that is now in order.
+	 * Errors from writing are kept and thrown by {@link #close()}. The results
+	 * are always added, even if the thread is interrupted while it waits, so
+	 * threads waiting for later queries are never stuck behind this one; the
+	 * interrupt is kept as an error instead.
+	 *
+	 * @param number
+	 *            number of the query in sorted order, starting from 0
+	 * @param query
+	 *            query the results were found for
+	 * @param results
+	 *            sorted results of the query
+	 */
+	public synchronized void put(int number, String query, ArrayList<SearchResult> results) {
+		boolean interrupted = false;
+		try {
+			while (number >= next + capacity && !interrupted) {
+				try {
+					this.wait();
+				}
+				catch (InterruptedException e) {
+					interrupted = true;
+					if (error == null) {
+						error = new InterruptedIOException("Interrupted while waiting to write query " + number);
+					}
+				}
+			}
+		}
+		finally {
+			buffer.put(number, new Entry(query, results));
+			flush();
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Marks a query as failed, so that the queries after it are still written.
+	 * Nothing is written for the query itself, and {@link #close()} throws an
+	 * error instead.
+	 *
+	 * @param number
+	 *            number of the query in sorted order, starting from 0
+	 * @param query
+	 *            query that could not be searched
+	 */
+	public synchronized void fail(int number, String query) {
+		if (error == null) {
+			error = new IOException("Could not search query " + number + ": " + query);
+		}
+		buffer.put(number, new Entry(query, null));
+		flush();
+	}
+
+	/**
+	 * Writes every query that is now in order, and wakes up the threads that
+	 * wait for room. Must be called while synchronized.
+	 */
+	private void flush() {
+		Entry entry;
+		while ((entry = buffer.remove(next)) != null) {
+			if (error == null && entry.results != null) {
+				try {
+					if (next > 0) {
+						writer.write(",");
+						writer.newLine();
+					}
+					JSONWriter.asQueryObject(writer, entry.query, entry.results);
+				}
+				catch (IOException e) {
+					error = e;
+				}
+			}
+			next++;
+		}
+		this.notifyAll();
+	}
+
+	/**
+	 * Writes the end of the JSON array and closes the file. Results still
+	 * waiting for an earlier query are not written.
+	 *
+	 * @throws IOException
+	 *             if writing any results failed, or if queries are missing
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		try {
+			if (error != null) {
+				throw error;
+			}
+			if (next > 0) {
+				writer.newLine();
+			}
+			writer.write("]");
+			writer.newLine();
+		}
+		finally {
+			writer.close();
+		}
+
+		if (!buffer.isEmpty()) {
+			throw new IOException("Results of " + buffer.size() + " queries were never written, query " + next
+					+ " is missing");
+		}
+	}
+
+	/**
+	 * Results of a query waiting to be written, or null results if the query
+	 * failed.
+	 */
+	private static class Entry {
+
+		private final String query;
+		private final ArrayList<SearchResult> results;
+
+		public Entry(String query, ArrayList<SearchResult> results) {
+			this.query = query;
+			this.results = results;
+		}
+	}
+}
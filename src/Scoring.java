@@ -0,0 +1,16 @@
+/**
+ * How the documents matched by a query are ranked.
+ */
+public enum Scoring {
+
+	/** By the total number of times the words appear, which favors long documents. */
+	FREQUENCY,
+
+	/**
+	 * By the total BM25 impact of the words, which accounts for how rare each
+	 * word is and for the length of each document.
+	 *
+	 * @see BM25
+	 */
+	BM25;
+}
@@ -1,10 +1,7 @@
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.List;
 import java.util.TreeMap;
 
 /**
@@ -12,37 +9,170 @@ import java.util.TreeMap;
  */
 public class SearchIndex implements SearchIndexInterface {
 
+	/** The number of queries searched together when streaming results. */
+	public static final int STREAM_BATCH = 256;
+
 	/**
 	 * Stores a mapping of words to an ArrayList of SearchResults.
 	 */
 	private final TreeMap<String, ArrayList<SearchResult>> index;
-	private final InvertedIndex invertedIndex;
+	private final InvertedIndexInterface invertedIndex;
+
+	/**
+	 * Stores the maximum number of results to keep for each query, or 0 for all of them.
+	 */
+	private final int limit;
+
+	/**
+	 * Stores how the words of each query are matched.
+	 */
+	private final QueryMode mode;
 
 	/**
 	 * Initializes the index.
 	 */
-	public SearchIndex(InvertedIndex invertedIndex) {
+	public SearchIndex(InvertedIndexInterface invertedIndex) {
+		this(invertedIndex, 0);
+	}
+
+	/**
+	 * Initializes the index to keep only the best results of each query.
+	 *
+	 * @param invertedIndex
+	 *            index to search through
+	 * @param limit
+	 *            maximum number of results to keep for each query, or 0 or less for all of them
+	 */
+	public SearchIndex(InvertedIndexInterface invertedIndex, int limit) {
+		this(invertedIndex, limit, QueryMode.ANY);
+	}
+
+	/**
+	 * Initializes the index to keep only the best results of each query, and to match the words of each query
+	 * the specified way.
+	 *
+	 * @param invertedIndex
+	 *            index to search through
+	 * @param limit
+	 *            maximum number of results to keep for each query, or 0 or less for all of them
+	 * @param mode
+	 *            how the words of each query are matched
+	 */
+	public SearchIndex(InvertedIndexInterface invertedIndex, int limit, QueryMode mode) {
 		index = new TreeMap<>();
 		this.invertedIndex = invertedIndex;
+		this.limit = limit;
+		this.mode = mode;
 	}
 	
+	/**
+	 * Searches every query in a batch, matching its words the specified way.
+	 *
+	 * @param invertedIndex
+	 *            index to search through
+	 * @param queries
+	 *            words of each query to search for
+	 * @param exact
+	 *            true if searching for exact matches, false to search for partial matches; phrases always match
+	 *            exactly
+	 * @param mode
+	 *            how the words of each query are matched
+	 * @param limit
+	 *            maximum number of results to keep for each query, or 0 or less for all of them
+	 * @return sorted results of each query, in the same order as the queries
+	 */
+	static ArrayList<ArrayList<SearchResult>> searchAll(InvertedIndexInterface invertedIndex, List<String[]> queries,
+			boolean exact, QueryMode mode, int limit) {
+		if (mode == QueryMode.ANY) {
+			return invertedIndex.searchAll(queries, exact, limit);
+		}
+
+		ArrayList<ArrayList<SearchResult>> results = new ArrayList<>();
+		for (String[] query : queries) {
+			if (mode == QueryMode.PHRASE) {
+				results.add(invertedIndex.phraseSearch(query, limit));
+			}
+			else {
+				results.add(invertedIndex.search(query, exact, true, limit));
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Adds words from given file to index and an ArrayList of its SearchResults. The distinct queries are read
+	 * in sorted order by a {@link QueryReader} and searched in batches of {@link #STREAM_BATCH}, so the queries
+	 * are never all held at once, but the results of every query are kept until {@link #toJSON(Path)}; use
+	 * {@link #streamFromFile(Path, Boolean, Path)} to write them without keeping them.
+	 *
+	 * @param path
+	 *            path to read words from
+	 * @param exact
+	 *            true if searching for exact matches, false to search for partial matches
+	 */
 	@Override
 	public void addFromFile(Path path, Boolean exact) throws IOException {
-		try (BufferedReader br = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
-			String line;
-			String[] words;
-			while ((line = br.readLine()) != null) {
-				words = WordParser.parseWords(line);
-				Arrays.sort(words);
-				
-				if (words.length > 0) {
-					ArrayList<SearchResult> results = exact ? invertedIndex.exactSearch(words) : invertedIndex.partialSearch(words); 
-					index.put(String.join(" ", words), results);
+		try (QueryReader reader = new QueryReader(path, mode == QueryMode.PHRASE)) {
+			ArrayList<String> keys = new ArrayList<>();
+			ArrayList<String[]> words = new ArrayList<>();
+			while (nextBatch(reader, keys, words)) {
+				ArrayList<ArrayList<SearchResult>> results = searchAll(invertedIndex, words, exact, mode, limit);
+				for (int i = 0; i < keys.size(); i++) {
+					index.put(keys.get(i), results.get(i));
 				}
-				
 			}
 		}
-		
+	}
+
+	/**
+	 * Searches the queries in batches of {@link #STREAM_BATCH}, writing the results of each batch before
+	 * reading and searching the next one, so only one batch of queries and results is held at a time.
+	 *
+	 * @param path
+	 *            path to read words from
+	 * @param exact
+	 *            true if searching for exact matches, false to search for partial matches
+	 * @param output
+	 *            path to write results to
+	 */
+	@Override
+	public void streamFromFile(Path path, Boolean exact, Path output) throws IOException {
+		try (QueryReader reader = new QueryReader(path, mode == QueryMode.PHRASE);
+				ResultsWriter writer = new ResultsWriter(output, STREAM_BATCH)) {
+			ArrayList<String> keys = new ArrayList<>();
+			ArrayList<String[]> words = new ArrayList<>();
+			int first = 0;
+			while (nextBatch(reader, keys, words)) {
+				ArrayList<ArrayList<SearchResult>> results = searchAll(invertedIndex, words, exact, mode, limit);
+				for (int i = 0; i < keys.size(); i++) {
+					writer.put(first + i, keys.get(i), results.get(i));
+				}
+				first += keys.size();
+			}
+		}
+	}
+
+	/**
+	 * Reads the next batch of up to {@link #STREAM_BATCH} queries, replacing the previous batch.
+	 *
+	 * @param reader
+	 *            reader to read queries from
+	 * @param keys
+	 *            list to put the queries in
+	 * @param words
+	 *            list to put the words of each query in
+	 * @return true if any queries were read, false once every query was read
+	 * @throws IOException
+	 *             if the queries cannot be read
+	 */
+	static boolean nextBatch(QueryReader reader, List<String> keys, List<String[]> words) throws IOException {
+		keys.clear();
+		words.clear();
+		while (keys.size() < STREAM_BATCH && reader.next()) {
+			keys.add(reader.query());
+			words.add(reader.words());
+		}
+		return !keys.isEmpty();
 	}
 
 	@Override
@@ -15,6 +15,20 @@ public interface SearchIndexInterface {
 	 */
 	public void addFromFile(Path path, Boolean exact) throws IOException;
 	
+	/**
+	 * Searches the queries in the given file like {@link #addFromFile(Path, Boolean)}, but writes the results of
+	 * each query to the output file as soon as they are found instead of adding them to the index. The output is
+	 * the same as adding the results and then calling {@link #toJSON(Path)}.
+	 *
+	 * @param path
+	 *            path to read words from
+	 * @param exact
+	 *            true if searching for exact matches, false to search for partial matches
+	 * @param output
+	 *            path to write results to
+	 */
+	public void streamFromFile(Path path, Boolean exact, Path output) throws IOException;
+	
 	/**
 	 * Writes index to specified path in JSON format.
 	 *
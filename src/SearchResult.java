@@ -1,24 +1,50 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.PriorityQueue;
+
 /**
- * Data structure to store the frequency, initialPosition and path of a word.
+ * Data structure to store the frequency, initialPosition and path of a word,
+ * and the BM25 score of the document when searches are ranked by it.
  */
 public class SearchResult implements Comparable<SearchResult> {
 
 	/**
-	 * Stores the frequency, initialPosition and path.
+	 * Stores the score, frequency, initialPosition, document id and path. The
+	 * score is 0 unless the search is ranked by {@link Scoring#BM25}.
 	 */
+	private int score;
 	private int frequency;
 	private int initialPosition;
+	public final int document;
 	public final String path;
 	
 	/**
-	 * Initializes the frequency, initialPosition, and path.
+	 * Initializes the frequency, initialPosition, document id and path.
 	 */
-	public SearchResult(int frequency, int initialPosition, String path) {
+	public SearchResult(int frequency, int initialPosition, int document, String path) {
+		this(0, frequency, initialPosition, document, path);
+	}
+
+	/**
+	 * Initializes the score, frequency, initialPosition, document id and path.
+	 */
+	public SearchResult(int score, int frequency, int initialPosition, int document, String path) {
+		this.score = score;
 		this.frequency = frequency;
 		this.initialPosition = initialPosition; 
+		this.document = document;
 		this.path = path;
 	}
 	
+	/**
+	 * Getter for score.
+	 *
+	 * @return score
+	 */
+	public int score() {
+		return score;
+	}
+
 	/**
 	 * Getter for frequency.
 	 *
@@ -37,6 +63,16 @@ public class SearchResult implements Comparable<SearchResult> {
 		return initialPosition;
 	}
 	
+	/**
+	 * Adds to score specified value.
+	 *
+	 * @param add
+	 * 			  number to add to score
+	 */
+	public void addToScore(int add) {
+		score += add;
+	}
+
 	/**
 	 * Adds to frequency specified value.
 	 *
@@ -75,11 +111,15 @@ public class SearchResult implements Comparable<SearchResult> {
 	}
 	
 	/**
-	 * By default, {@link #SearchResult} objects will be sorted first by their frequency, 
-	 * then their initial position, and lastly their path.
+	 * By default, {@link #SearchResult} objects will be sorted first by their score, then
+	 * their frequency, then their initial position, and lastly their path. Scores are 0
+	 * unless searches are ranked by BM25, so otherwise the frequency comes first.
 	 */
 	@Override
 	public int compareTo(SearchResult other) {
+		if (score != other.score) {
+			return Integer.compare(other.score, score);
+		}
 		if (Integer.compare(other.frequency, frequency) == 0) {
 			if (Integer.compare(initialPosition, other.initialPosition) == 0) {
 				return path.compareTo(other.path);
@@ -89,6 +129,42 @@ public class SearchResult implements Comparable<SearchResult> {
 		return Integer.compare(other.frequency, frequency);
 	}
 	
+	/**
+	 * Returns the first results of the list in sorted order, without sorting
+	 * the whole list. The results are selected with a heap that holds at most
+	 * limit results, so this takes O(n log limit) time instead of O(n log n).
+	 * If every result is needed, the given list is sorted and returned.
+	 *
+	 * @param results
+	 *            unsorted results to select from
+	 * @param limit
+	 *            maximum number of results to return, or 0 or less for all of
+	 *            them
+	 * @return sorted list of at most limit results
+	 */
+	public static ArrayList<SearchResult> top(ArrayList<SearchResult> results, int limit) {
+		if (limit <= 0 || limit >= results.size()) {
+			Collections.sort(results);
+			return results;
+		}
+
+		// the head of the heap is the worst result kept so far
+		PriorityQueue<SearchResult> heap = new PriorityQueue<>(limit, Collections.reverseOrder());
+		for (SearchResult result : results) {
+			if (heap.size() < limit) {
+				heap.add(result);
+			}
+			else if (result.compareTo(heap.peek()) < 0) {
+				heap.poll();
+				heap.add(result);
+			}
+		}
+
+		ArrayList<SearchResult> top = new ArrayList<>(heap);
+		Collections.sort(top);
+		return top;
+	}
+
 	@Override
 	public String toString() {
 		return "Path: " + path + ", Frequency: " + frequency + ", Initial position: " + initialPosition; 
@@ -1,13 +1,10 @@
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.util.ArrayList;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import org.apache.commons.lang3.StringEscapeUtils;
-
 // More XSS Prevention:
 // https://www.owasp.org/index.php/XSS_(Cross_Site_Scripting)_Prevention_Cheat_Sheet
 
@@ -17,13 +14,29 @@ import org.apache.commons.lang3.StringEscapeUtils;
 @SuppressWarnings("serial")
 public class SearchServlet extends BaseServlet {
 
-	private InvertedIndex index;
+	/** The default number of results to show for a search. */
+	public static final int DEFAULT_PAGE_SIZE = 10;
+
+	private InvertedIndexInterface index;
 	private WebPageSnippets snippets;
+	private int pageSize;
+	private RankingCache rankings;
+
+	public SearchServlet(InvertedIndexInterface index, WebPageSnippets snippets) {
+		this(index, snippets, DEFAULT_PAGE_SIZE);
+	}
 
-	public SearchServlet(InvertedIndex index, WebPageSnippets snippets) {
+	public SearchServlet(InvertedIndexInterface index, WebPageSnippets snippets, int pageSize) {
+		this(index, snippets, pageSize, new RankingCache());
+	}
+
+	public SearchServlet(InvertedIndexInterface index, WebPageSnippets snippets, int pageSize,
+			RankingCache rankings) {
 		super();
 		this.index = index;
 		this.snippets = snippets;
+		this.pageSize = pageSize;
+		this.rankings = rankings;
 	}
 
 	@Override
@@ -41,20 +54,20 @@ public class SearchServlet extends BaseServlet {
 		PrintWriter out = response.getWriter();
 		
 		if (request.getParameter("words") != null) {
-			ArrayList<SearchResult> results = null;
-			String word = request.getParameter("words");
-			word = StringEscapeUtils.escapeHtml4(word);
-			String[] words = WordParser.parseWords(word);
-			results = index.partialSearch(words);
-			if (results.isEmpty()) {
-				out.print("Sorry. Could not find a source with any of those words.");
+			String query = request.getParameter("words");
+			// the all option only keeps sources with every word
+			boolean all = request.getParameter("all") != null;
+			RankingCache.Page page = searchPage(index, rankings, query, all, request.getParameter("cursor"), pageSize);
+			if (page.results.isEmpty()) {
+				out.printf("Sorry. Could not find a source with %s of those words.", all ? "all" : "any");
 			}
 			else {
-				for (SearchResult result : results) {
+				for (SearchResult result : page.results) {
 					out.printf("<p><a href=%s>%s</a><br>", result.path, result.path);
 					out.printf("%s </p>", snippets.get(result.path));
 				}
 			}
+			printPager(out, request, query, all, page);
 		}		
 		
 		finishResponse(response);
@@ -75,6 +88,9 @@ public class SearchServlet extends BaseServlet {
 		out.println("\t<div class=\"form-group\">");
 		out.println("\t\t<input type=\"text\" name=\"words\" class=\"form-control\" id=\"user\" placeholder=\"Search\">");
 		out.println("\t</div>\n");
+		out.println("\t<div class=\"checkbox\">");
+		out.println("\t\t<label><input type=\"checkbox\" name=\"all\"> All words</label>");
+		out.println("\t</div>\n");
 		
 		
 		out.println("\t<button type=\"submit\" name=\"search\" class=\"btn btn-primary\">Search</button></p>");
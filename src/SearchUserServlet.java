@@ -1,6 +1,5 @@
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.util.ArrayList;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -14,13 +13,26 @@ import org.eclipse.jetty.util.log.Logger;
 public class SearchUserServlet extends BaseServlet {
 	private static Logger log = Log.getRootLogger();
 
-	private InvertedIndex index;
+	private InvertedIndexInterface index;
 	private WebPageSnippets snippets;
+	private int pageSize;
+	private RankingCache rankings;
 
-	public SearchUserServlet(InvertedIndex index, WebPageSnippets snippets) {
+	public SearchUserServlet(InvertedIndexInterface index, WebPageSnippets snippets) {
+		this(index, snippets, SearchServlet.DEFAULT_PAGE_SIZE);
+	}
+
+	public SearchUserServlet(InvertedIndexInterface index, WebPageSnippets snippets, int pageSize) {
+		this(index, snippets, pageSize, new RankingCache());
+	}
+
+	public SearchUserServlet(InvertedIndexInterface index, WebPageSnippets snippets, int pageSize,
+			RankingCache rankings) {
 		super();
 		this.index = index;
 		this.snippets = snippets;
+		this.pageSize = pageSize;
+		this.rankings = rankings;
 	}
 
 	@Override
@@ -39,29 +51,35 @@ public class SearchUserServlet extends BaseServlet {
 		PrintWriter out = response.getWriter();
 		
 		if (request.getParameter("words") != null) {
-			ArrayList<SearchResult> results = null;
-			String word = request.getParameter("words");
-			word = StringEscapeUtils.escapeHtml4(word);
-			Status status = dbhandler.addSearchHistory(user, word);
+			String query = request.getParameter("words");
+			String cursor = request.getParameter("cursor");
 			
-			if (status == Status.OK) {
-				log.debug("Words added to search history.");
-			}
-			else {
-				log.debug("Words could not be added to search history.");
+			// the other pages of a search are not searches of their own
+			if (cursor == null) {
+				String word = StringEscapeUtils.escapeHtml4(query);
+				Status status = dbhandler.addSearchHistory(user, word);
+				
+				if (status == Status.OK) {
+					log.debug("Words added to search history.");
+				}
+				else {
+					log.debug("Words could not be added to search history.");
+				}
 			}
 			
-			String[] words = WordParser.parseWords(word);
-			results = index.partialSearch(words);
-			if (results.isEmpty()) {
-				out.print("Sorry. Could not find a source with any of those words.");
+			// the all option only keeps sources with every word
+			boolean all = request.getParameter("all") != null;
+			RankingCache.Page page = searchPage(index, rankings, query, all, cursor, pageSize);
+			if (page.results.isEmpty()) {
+				out.printf("Sorry. Could not find a source with %s of those words.", all ? "all" : "any");
 			}
 			else {
-				for (SearchResult result : results) {
+				for (SearchResult result : page.results) {
 					out.printf("<a href=/save?url=%s>%s</a><br>", result.path, result.path);
 					out.printf("%s </p>", snippets.get(result.path));
 				}
 			}
+			printPager(out, request, query, all, page);
 		}	
 		
 		out.println();
@@ -88,6 +106,9 @@ public class SearchUserServlet extends BaseServlet {
 		out.println("\t<div class=\"form-group\">");
 		out.println("\t\t<input type=\"text\" name=\"words\" class=\"form-control\" id=\"user\" placeholder=\"Search\">");
 		out.println("\t</div>\n");
+		out.println("\t<div class=\"checkbox\">");
+		out.println("\t\t<label><input type=\"checkbox\" name=\"all\"> All words</label>");
+		out.println("\t</div>\n");
 		
 		out.println("\t<button type=\"submit\" name=\"search\" class=\"btn btn-primary\">Search</button></p>");
 		out.println();
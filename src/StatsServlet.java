@@ -0,0 +1,51 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.lang3.StringEscapeUtils;
+
+/**
+ * Displays the statistics of the search result cache, so the cache can be
+ * sized from its hit and miss ratios, and how many searches ran out of their
+ * budgets.
+ */
+@SuppressWarnings("serial")
+public class StatsServlet extends BaseServlet {
+
+	private CachedInvertedIndex cache;
+	private QueryLimits limits;
+
+	public StatsServlet(CachedInvertedIndex cache) {
+		this(cache, null);
+	}
+
+	public StatsServlet(CachedInvertedIndex cache, QueryLimits limits) {
+		super();
+		this.cache = cache;
+		this.limits = limits;
+	}
+
+	@Override
+	public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		prepareResponse("Statistics", response);
+
+		PrintWriter out = response.getWriter();
+		if (cache == null) {
+			out.println("<p>The search result cache is disabled.</p>");
+		}
+		else {
+			out.printf("<p>Hit ratio: %.1f%%<br>", 100 * cache.hitRatio());
+			out.printf("Miss ratio: %.1f%%</p>%n", 100 * cache.missRatio());
+			out.printf("<p>%s</p>%n", StringEscapeUtils.escapeHtml4(cache.toString()));
+		}
+
+		if (limits != null) {
+			out.printf("<p>Truncated searches: %d</p>%n", limits.truncated());
+			out.printf("<p>%s</p>%n", StringEscapeUtils.escapeHtml4(limits.toString()));
+		}
+
+		finishResponse(response);
+	}
+}
@@ -0,0 +1,280 @@
+import java.util.Arrays;
+
+/**
+ * Compact, immutable dictionary of sorted words. The term id of a word is its
+ * index in sorted order, so all words that start with the same prefix have a
+ * contiguous range of term ids.
+ *
+ * Words are front coded in blocks of {@link #BLOCK_SIZE}: the first word of
+ * each block is stored in full, and every other word only stores the number
+ * of leading characters it shares with the word before it, followed by the
+ * rest of its characters. All blocks are packed into a single char array, so
+ * the dictionary needs no object per word. Lookups binary search the first
+ * words of the blocks, then decode at most one block.
+ */
+public class TermDictionary {
+
+	/** The number of words in each block. */
+	public static final int BLOCK_SIZE = 16;
+
+	/**
+	 * Stores the packed blocks, and the start of each block in the packed
+	 * chars.
+	 */
+	private final char[] data;
+	private final int[] blockOffsets;
+
+	/** Stores the number of words, and the length of the longest word. */
+	private final int size;
+	private final int maxLength;
+
+	/**
+	 * Initializes the dictionary from sorted words. Lengths are stored as a
+	 * single char, so words can be at most {@link Character#MAX_VALUE}
+	 * characters long.
+	 *
+	 * @param sortedWords
+	 *            words in sorted order, without duplicates
+	 * @throws IllegalArgumentException
+	 *             if a word is too long
+	 */
+	public TermDictionary(String[] sortedWords) {
+		size = sortedWords.length;
+		blockOffsets = new int[(size + BLOCK_SIZE - 1) / BLOCK_SIZE];
+
+		int length = 0;
+		int longest = 0;
+		for (int term = 0; term < size; term++) {
+			String word = sortedWords[term];
+			if (word.length() > Character.MAX_VALUE) {
+				throw new IllegalArgumentException("Word is too long: " + word.substring(0, 32) + "...");
+			}
+			longest = Math.max(longest, word.length());
+			if (term % BLOCK_SIZE == 0) {
+				length += 1 + word.length();
+			}
+			else {
+				length += 2 + word.length() - sharedPrefix(sortedWords[term - 1], word);
+			}
+		}
+		maxLength = longest;
+
+		data = new char[length];
+		int offset = 0;
+		for (int term = 0; term < size; term++) {
+			String word = sortedWords[term];
+			if (term % BLOCK_SIZE == 0) {
+				blockOffsets[term / BLOCK_SIZE] = offset;
+				data[offset++] = (char) word.length();
+				word.getChars(0, word.length(), data, offset);
+				offset += word.length();
+			}
+			else {
+				int shared = sharedPrefix(sortedWords[term - 1], word);
+				data[offset++] = (char) shared;
+				data[offset++] = (char) (word.length() - shared);
+				word.getChars(shared, word.length(), data, offset);
+				offset += word.length() - shared;
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of leading characters both words have in common.
+	 *
+	 * @param previous
+	 *            first word
+	 * @param word
+	 *            second word
+	 * @return length of the shared prefix
+	 */
+	private static int sharedPrefix(String previous, String word) {
+		int limit = Math.min(previous.length(), word.length());
+		int shared = 0;
+		while (shared < limit && previous.charAt(shared) == word.charAt(shared)) {
+			shared++;
+		}
+		return shared;
+	}
+
+	/**
+	 * Compares a decoded word to a key in the same order as
+	 * {@link String#compareTo(String)}. If truncated, the word is first cut to
+	 * the length of the key, so every word that starts with the key compares
+	 * as equal to it.
+	 *
+	 * @param chars
+	 *            array holding the word
+	 * @param from
+	 *            start of the word in the array
+	 * @param length
+	 *            length of the word
+	 * @param key
+	 *            key to compare to
+	 * @param truncated
+	 *            true to compare only the first key.length() characters
+	 * @return negative, zero or positive if the word is less than, equal to or
+	 *         greater than the key
+	 */
+	private static int compare(char[] chars, int from, int length, String key, boolean truncated) {
+		int limit = Math.min(length, key.length());
+		for (int i = 0; i < limit; i++) {
+			int difference = chars[from + i] - key.charAt(i);
+			if (difference != 0) {
+				return difference;
+			}
+		}
+		if (truncated && length >= key.length()) {
+			return 0;
+		}
+		return length - key.length();
+	}
+
+	/**
+	 * Returns the number of words that come before the key. If truncated, words
+	 * that start with the key are counted as well.
+	 *
+	 * @param key
+	 *            key to rank
+	 * @param truncated
+	 *            true to also count the words that start with the key
+	 * @return number of words before the key
+	 */
+	private int rank(String key, boolean truncated) {
+		// find the last block whose first word is counted
+		int low = 0;
+		int high = blockOffsets.length - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int offset = blockOffsets[middle];
+			int compare = compare(data, offset + 1, data[offset], key, truncated);
+			if (compare < 0 || (truncated && compare == 0)) {
+				low = middle + 1;
+			}
+			else {
+				high = middle - 1;
+			}
+		}
+
+		int block = low - 1;
+		if (block < 0) {
+			return 0;
+		}
+
+		// decode the block until the first word that is not counted
+		char[] word = new char[maxLength];
+		int offset = blockOffsets[block];
+		int length = data[offset++];
+		System.arraycopy(data, offset, word, 0, length);
+		offset += length;
+
+		int term = block * BLOCK_SIZE + 1;
+		int end = Math.min(size, (block + 1) * BLOCK_SIZE);
+		for (; term < end; term++) {
+			int shared = data[offset++];
+			int suffix = data[offset++];
+			System.arraycopy(data, offset, word, shared, suffix);
+			offset += suffix;
+			length = shared + suffix;
+
+			int compare = compare(word, 0, length, key, truncated);
+			if (compare > 0 || (!truncated && compare == 0)) {
+				break;
+			}
+		}
+		return term;
+	}
+
+	/**
+	 * Returns the number of words in the dictionary.
+	 *
+	 * @return number of words
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the term id of the word.
+	 *
+	 * @param word
+	 *            word to find
+	 * @return term id of the word, or (-(insertion point) - 1) if the
+	 *         dictionary does not contain it
+	 */
+	public int find(String word) {
+		int term = rank(word, false);
+		if (term < size && word(term).equals(word)) {
+			return term;
+		}
+		return -(term + 1);
+	}
+
+	/**
+	 * Returns the first term id of the words that start with the prefix.
+	 *
+	 * @param prefix
+	 *            prefix to find
+	 * @return first term id of the prefix range
+	 */
+	public int prefixStart(String prefix) {
+		return rank(prefix, false);
+	}
+
+	/**
+	 * Returns the term id after the last word that starts with the prefix.
+	 *
+	 * @param prefix
+	 *            prefix to find
+	 * @return end of the prefix range, exclusive
+	 */
+	public int prefixEnd(String prefix) {
+		return rank(prefix, true);
+	}
+
+	/**
+	 * Returns the word with the specified term id.
+	 *
+	 * @param term
+	 *            term id of the word
+	 * @return word
+	 */
+	public String word(int term) {
+		if (term < 0 || term >= size) {
+			throw new IndexOutOfBoundsException("Term id: " + term);
+		}
+
+		char[] word = new char[maxLength];
+		int offset = blockOffsets[term / BLOCK_SIZE];
+		int length = data[offset++];
+		System.arraycopy(data, offset, word, 0, length);
+		offset += length;
+
+		for (int i = term - term % BLOCK_SIZE; i < term; i++) {
+			int shared = data[offset++];
+			int suffix = data[offset++];
+			System.arraycopy(data, offset, word, shared, suffix);
+			offset += suffix;
+			length = shared + suffix;
+		}
+		return new String(word, 0, length);
+	}
+
+	/**
+	 * Returns every word in sorted order.
+	 *
+	 * @return array of words
+	 */
+	public String[] toArray() {
+		String[] words = new String[size];
+		for (int term = 0; term < size; term++) {
+			words[term] = word(term);
+		}
+		return words;
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(toArray());
+	}
+}
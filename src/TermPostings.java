@@ -0,0 +1,140 @@
+import java.util.Arrays;
+
+/**
+ * Postings of a single term, stored as parallel arrays of document ids and
+ * their posting lists sorted by document id. Documents are usually added in
+ * increasing id order, in which case adding is a simple append.
+ */
+public class TermPostings {
+
+	/**
+	 * Stores the sorted document ids, the posting list of each document, and
+	 * the number of documents in use.
+	 */
+	private int[] documents;
+	private PostingList[] lists;
+	private int size;
+
+	/**
+	 * Initializes an empty set of postings.
+	 */
+	public TermPostings() {
+		documents = new int[2];
+		lists = new PostingList[2];
+		size = 0;
+	}
+
+	/**
+	 * Initializes postings with copies of the documents and posting lists of
+	 * other postings. Later changes to either do not change the other.
+	 *
+	 * @param other
+	 *            postings to copy
+	 */
+	public TermPostings(TermPostings other) {
+		documents = Arrays.copyOf(other.documents, Math.max(2, other.size));
+		lists = new PostingList[documents.length];
+		for (int i = 0; i < other.size; i++) {
+			lists[i] = new PostingList(other.lists[i]);
+		}
+		size = other.size;
+	}
+
+	/**
+	 * Returns the index of the document in the arrays, or a negative insertion
+	 * point if the document is not present.
+	 *
+	 * @param document
+	 *            document id to find
+	 * @return index of document, or (-(insertion point) - 1)
+	 */
+	private int indexOf(int document) {
+		if (size == 0 || document > documents[size - 1]) {
+			return -(size + 1);
+		}
+		return Arrays.binarySearch(documents, 0, size, document);
+	}
+
+	/**
+	 * Returns the posting list of the document, or null if the term was not
+	 * found in the document.
+	 *
+	 * @param document
+	 *            document id to find
+	 * @return posting list or null
+	 */
+	public PostingList get(int document) {
+		int index = indexOf(document);
+		return index >= 0 ? lists[index] : null;
+	}
+
+	/**
+	 * Checks to see if the term was found in the document.
+	 *
+	 * @param document
+	 *            document id to find
+	 * @return true if the term was found in the document, false otherwise
+	 */
+	public boolean contains(int document) {
+		return indexOf(document) >= 0;
+	}
+
+	/**
+	 * Sets the posting list of the document, replacing any existing list.
+	 *
+	 * @param document
+	 *            document id to set
+	 * @param list
+	 *            posting list of the document
+	 */
+	public void put(int document, PostingList list) {
+		int index = indexOf(document);
+		if (index >= 0) {
+			lists[index] = list;
+			return;
+		}
+
+		index = -(index + 1);
+		if (size == documents.length) {
+			int capacity = size + (size >> 1) + 1;
+			documents = Arrays.copyOf(documents, capacity);
+			lists = Arrays.copyOf(lists, capacity);
+		}
+		System.arraycopy(documents, index, documents, index + 1, size - index);
+		System.arraycopy(lists, index, lists, index + 1, size - index);
+		documents[index] = document;
+		lists[index] = list;
+		size++;
+	}
+
+	/**
+	 * Returns the number of documents the term was found in.
+	 *
+	 * @return number of documents
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the document id at the specified index, in increasing order.
+	 *
+	 * @param index
+	 *            index between 0 and {@link #size()}
+	 * @return document id
+	 */
+	public int document(int index) {
+		return documents[index];
+	}
+
+	/**
+	 * Returns the posting list at the specified index.
+	 *
+	 * @param index
+	 *            index between 0 and {@link #size()}
+	 * @return posting list
+	 */
+	public PostingList list(int index) {
+		return lists[index];
+	}
+}
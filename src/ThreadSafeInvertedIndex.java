@@ -1,22 +1,56 @@
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
 
 /**
- * Data structure to store words, their path, and their positions.
+ * Data structure to store words, their path, and their positions. The words
+ * are split into shards by {@link InvertedIndex#partitionOf(String, int)},
+ * each with its own index and lock, so merges into different shards can run at
+ * the same time. All shards share one document table. The inherited index is
+ * left empty, and every method that would read it reads the shards instead.
  */
 public class ThreadSafeInvertedIndex extends InvertedIndex {
+
+	/** The default number of shards to use when not specified. */
+	public static final int DEFAULT_SHARDS = 16;
+
 	/**
-	 * Stores a mapping of words to the positions the words were found.
+	 * Stores the shards and the lock of each shard.
 	 */
-	private ReadWriteLock lock;
-	
+	private final InvertedIndex[] shards;
+	private final ReadWriteLock[] locks;
+
 	/**
-	 * Initializes the index.
+	 * Stores the paths and document ids shared by all shards.
+	 */
+	private final DocumentTable documents;
+
+	/**
+	 * Initializes the index with the default number of shards.
 	 */
 	public ThreadSafeInvertedIndex() {
+		this(DEFAULT_SHARDS);
+	}
+
+	/**
+	 * Initializes the index with the specified number of shards.
+	 *
+	 * @param numShards
+	 *            number of shards; should be at least 1
+	 */
+	public ThreadSafeInvertedIndex(int numShards) {
 		super();
-		lock = new ReadWriteLock();
+		documents = new DocumentTable();
+		shards = new InvertedIndex[numShards];
+		locks = new ReadWriteLock[numShards];
+		for (int i = 0; i < numShards; i++) {
+			shards[i] = new InvertedIndex(documents);
+			locks[i] = new ReadWriteLock();
+		}
 	}
 
 	/**
@@ -30,11 +64,14 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 	 */
 	@Override
 	public void add(String word, String file, int position) {
-		lock.lockReadWrite();
-
-		super.add(word, file, position);
-
-		lock.unlockReadWrite();
+		int shard = partitionOf(word, shards.length);
+		locks[shard].lockReadWrite();
+		try {
+			shards[shard].add(word, file, position);
+		}
+		finally {
+			locks[shard].unlockReadWrite();
+		}
 	}
 
 	/**
@@ -48,26 +85,159 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 	 */
 	@Override
 	public void addAll(String[] words, String filename, int start)  {
-		lock.lockReadWrite();
-		
-		super.addAll(words, filename, start);
-		
-		lock.unlockReadWrite();
+		InvertedIndex local = new InvertedIndex();
+		local.addAll(words, filename, start);
+		addAll(local);
 	}
-	
+
 	/**
-	 * Adds all the contents of given InvertedIndex to this InvertedIndex
-	 * 
+	 * Adds all the contents of given InvertedIndex to this InvertedIndex. The
+	 * given index is split by shard, and each part is merged into whichever
+	 * shard is free first, only waiting when every remaining shard is busy.
+	 *
 	 * @param other
 	 *            given InvertedIndex
 	 */
 	@Override
 	public void addAll(InvertedIndex other) {
-		lock.lockReadWrite();
-		
-		super.addAll(other);
-		
-		lock.unlockReadWrite();
+		InvertedIndex[] parts = other.partition(shards.length);
+
+		int remaining = 0;
+		for (InvertedIndex part : parts) {
+			if (part != null) {
+				remaining++;
+			}
+		}
+
+		while (remaining > 0) {
+			boolean merged = false;
+			int waiting = -1;
+			for (int i = 0; i < parts.length; i++) {
+				if (parts[i] == null) {
+					continue;
+				}
+
+				if (locks[i].tryLockReadWrite()) {
+					try {
+						shards[i].moveAll(parts[i]);
+					}
+					finally {
+						locks[i].unlockReadWrite();
+					}
+					parts[i] = null;
+					remaining--;
+					merged = true;
+				}
+				else {
+					waiting = i;
+				}
+			}
+
+			// every remaining shard is busy, so wait for one of them
+			if (!merged && waiting >= 0) {
+				locks[waiting].lockReadWrite();
+				try {
+					shards[waiting].moveAll(parts[waiting]);
+				}
+				finally {
+					locks[waiting].unlockReadWrite();
+				}
+				parts[waiting] = null;
+				remaining--;
+			}
+		}
+	}
+
+	/**
+	 * Adds all the contents of given InvertedIndex to this InvertedIndex. The
+	 * other index is partitioned first, so its posting lists are always copied.
+	 *
+	 * @param other
+	 *            given InvertedIndex
+	 */
+	@Override
+	protected void moveAll(InvertedIndex other) {
+		addAll(other);
+	}
+
+	/**
+	 * Adds all the contents of this index to another index, one shard at a
+	 * time. Each shard is locked for reading while it is added, and its
+	 * posting lists are always copied.
+	 *
+	 * @param index
+	 *            index to add to
+	 * @param copy
+	 *            ignored, since the shards are still in use
+	 */
+	@Override
+	protected void mergeInto(InvertedIndex index, boolean copy) {
+		for (int i = 0; i < shards.length; i++) {
+			locks[i].lockReadOnly();
+			try {
+				index.addAll(shards[i]);
+			}
+			finally {
+				locks[i].unlockReadOnly();
+			}
+		}
+	}
+
+	/**
+	 * Splits this index into parts by {@link #partitionOf(String, int)}, one
+	 * shard at a time. Each shard is locked for reading while it is split.
+	 *
+	 * @param parts
+	 *            number of parts
+	 * @return array of parts, with null for parts that have no words
+	 */
+	@Override
+	public InvertedIndex[] partition(int parts) {
+		InvertedIndex[] partitions = new InvertedIndex[parts];
+		for (int i = 0; i < shards.length; i++) {
+			InvertedIndex[] shardParts;
+			locks[i].lockReadOnly();
+			try {
+				shardParts = shards[i].partition(parts);
+			}
+			finally {
+				locks[i].unlockReadOnly();
+			}
+
+			for (int part = 0; part < parts; part++) {
+				if (shardParts[part] == null) {
+					continue;
+				}
+				if (partitions[part] == null) {
+					partitions[part] = shardParts[part];
+				}
+				else {
+					partitions[part].moveAll(shardParts[part]);
+				}
+			}
+		}
+		return partitions;
+	}
+
+	/**
+	 * Creates an immutable, array-backed snapshot of this index for searching.
+	 * Every shard is locked for reading while the snapshot is created.
+	 *
+	 * @return frozen snapshot of this index
+	 */
+	@Override
+	public FrozenInvertedIndex freeze() {
+		for (ReadWriteLock lock : locks) {
+			lock.lockReadOnly();
+		}
+		try {
+			return freeze(Arrays.asList(shards), documents);
+		}
+		finally {
+			for (ReadWriteLock lock : locks) {
+				lock.unlockReadOnly();
+			}
+		}
 	}
 
 	/**
@@ -78,11 +248,7 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 	 */
 	@Override
 	public void toJSON(Path path) throws IOException {
-		lock.lockReadOnly();
-		
-		super.toJSON(path);
-		
-		lock.unlockReadOnly();
+		freeze().toJSON(path);
 	}
 
 	/**
@@ -90,13 +256,20 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 	 */
 	@Override
 	public String toString() {
-		lock.lockReadOnly();
-
+		for (ReadWriteLock lock : locks) {
+			lock.lockReadOnly();
+		}
 		try {
-			return super.toString();
-		} finally {
-
-			lock.unlockReadOnly();
+			InvertedIndex combined = new InvertedIndex(documents);
+			for (InvertedIndex shard : shards) {
+				combined.addAll(shard);
+			}
+			return combined.toString();
+		}
+		finally {
+			for (ReadWriteLock lock : locks) {
+				lock.unlockReadOnly();
+			}
 		}
 	}
 
@@ -109,13 +282,14 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 	 */
 	@Override
 	public boolean containsWord(String word) {
-		lock.lockReadOnly();
+		int shard = partitionOf(word, shards.length);
+		locks[shard].lockReadOnly();
 		try {
-			return super.containsWord(word);
+			return shards[shard].containsWord(word);
 		} finally {
-			lock.unlockReadOnly();
+			locks[shard].unlockReadOnly();
 		}
-		
+
 	}
 
 	/**
@@ -129,11 +303,12 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 	 */
 	@Override
 	public boolean containsPath(String word, String path) {
-		lock.lockReadOnly();
+		int shard = partitionOf(word, shards.length);
+		locks[shard].lockReadOnly();
 		try {
-			return super.containsPath(word, path);
+			return shards[shard].containsPath(word, path);
 		} finally {
-			lock.unlockReadOnly();
+			locks[shard].unlockReadOnly();
 		}
 	}
 
@@ -150,48 +325,331 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 	 */
 	@Override
 	public boolean containsPosition(String word, String path, Integer position) {
-		lock.lockReadOnly();
+		int shard = partitionOf(word, shards.length);
+		locks[shard].lockReadOnly();
 		try {
-			return super.containsPosition(word, path, position);
+			return shards[shard].containsPosition(word, path, position);
 		} finally {
-			lock.unlockReadOnly();
+			locks[shard].unlockReadOnly();
 		}
 	}
 
 	/**
-	 * Searches for exact matches of specified words given and returns a list of SearchResults 
+	 * Finds the documents a phrase appears in. The shard of every word is
+	 * locked for reading, in shard order, until the phrase has been matched.
+	 */
+	@Override
+	public ArrayList<SearchResult> phraseSearch(String[] phraseWords, int limit, QueryBudget budget) {
+		boolean[] used = new boolean[shards.length];
+		for (String word : phraseWords) {
+			used[partitionOf(word, shards.length)] = true;
+		}
+
+		for (int i = 0; i < shards.length; i++) {
+			if (used[i]) {
+				locks[i].lockReadOnly();
+			}
+		}
+		try {
+			TermPostings[] phrase = new TermPostings[phraseWords.length];
+			for (int i = 0; i < phraseWords.length; i++) {
+				phrase[i] = shards[partitionOf(phraseWords[i], shards.length)].termPostings(phraseWords[i]);
+			}
+			return phraseSearch(phrase, documents, limit, budget);
+		}
+		finally {
+			for (int i = 0; i < shards.length; i++) {
+				if (used[i]) {
+					locks[i].unlockReadOnly();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Finds the documents that match any or every search word. The shards of
+	 * every word are locked for reading, in shard order, until the search is
+	 * done. The terms each word matches are admitted by the budget in
+	 * dictionary order, even when they are spread over several shards, so a
+	 * truncated search finds the same results as on a single index.
+	 */
+	@Override
+	public ArrayList<SearchResult> search(String[] searchWords, boolean exact, boolean all, int limit,
+			QueryBudget budget) {
+		if (!all) {
+			return SearchResult.top(collect(searchWords, exact, budget), limit);
+		}
+
+		ArrayList<ArrayList<String>> groups = groupByShard(searchWords, !exact);
+		lockReadOnly(groups);
+		try {
+			ArrayList<TermPostings> matched = new ArrayList<>();
+			int[] ranges = new int[2 * searchWords.length];
+			for (int i = 0; i < searchWords.length; i++) {
+				ranges[2 * i] = matched.size();
+				MatchedTerms terms = new MatchedTerms(searchWords[i], exact, groups);
+				while (terms.next() && budget.admit(terms.postings().size())) {
+					matched.add(terms.postings());
+				}
+				ranges[2 * i + 1] = matched.size();
+			}
+			return conjunctiveSearch(matched, ranges, documents, limit, budget);
+		}
+		finally {
+			unlockReadOnly(groups);
+		}
+	}
+
+	/**
+	 * Returns a copy of the postings of the word, or null if the word is not
+	 * in the index. The shard of the word is locked for reading while the
+	 * postings are copied.
 	 *
-	 * @param searchWords
-	 *            words to find exact searches for
-	 * @return ArrayList of SearchResults
+	 * @param word
+	 *            word to find
+	 * @return copy of the postings of the word or null
+	 */
+	@Override
+	protected TermPostings termPostings(String word) {
+		int shard = partitionOf(word, shards.length);
+		locks[shard].lockReadOnly();
+		try {
+			TermPostings postings = shards[shard].termPostings(word);
+			return postings == null ? null : new TermPostings(postings);
+		}
+		finally {
+			locks[shard].unlockReadOnly();
+		}
+	}
+
+	/**
+	 * Adds copies of the postings of every term a word matches to a list, in
+	 * dictionary order. The shards the word may match in are locked for
+	 * reading while their postings are copied.
 	 */
 	@Override
-	public ArrayList<SearchResult> exactSearch(String[] searchWords) {
-		lock.lockReadOnly();
+	protected void matchPostings(String word, boolean exact, ArrayList<TermPostings> matched, QueryBudget budget) {
+		ArrayList<ArrayList<String>> groups = groupByShard(new String[] { word }, !exact);
+		lockReadOnly(groups);
 		try {
-			return super.exactSearch(searchWords);
+			MatchedTerms terms = new MatchedTerms(word, exact, groups);
+			while (terms.next() && budget.admit(terms.postings().size())) {
+				matched.add(new TermPostings(terms.postings()));
+			}
 		}
 		finally {
-			lock.unlockReadOnly();
+			unlockReadOnly(groups);
 		}
 	}
 
 	/**
-	 * Searches for partial matches of specified words given and returns a list of SearchResults 
+	 * Groups the search words by the shard they need to be searched in. Words
+	 * are searched in their own shard, except for partial searches of words
+	 * shorter than two characters, whose matches may be in any shard.
 	 *
 	 * @param searchWords
-	 *            words to find partial searches for
-	 * @return ArrayList of SearchResults
+	 *            words to group
+	 * @param partial
+	 *            true if grouping for a partial search
+	 * @return words to search for in each shard
+	 */
+	private ArrayList<ArrayList<String>> groupByShard(String[] searchWords, boolean partial) {
+		ArrayList<ArrayList<String>> groups = new ArrayList<>();
+		for (int i = 0; i < shards.length; i++) {
+			groups.add(new ArrayList<>());
+		}
+
+		for (String word : searchWords) {
+			if (partial && word.length() < 2) {
+				for (ArrayList<String> group : groups) {
+					group.add(word);
+				}
+			}
+			else {
+				groups.get(partitionOf(word, shards.length)).add(word);
+			}
+		}
+		return groups;
+	}
+
+	/**
+	 * Locks every shard that has words to search for reading, in shard order.
+	 *
+	 * @param groups
+	 *            words to search for in each shard
+	 */
+	private void lockReadOnly(ArrayList<ArrayList<String>> groups) {
+		for (int i = 0; i < shards.length; i++) {
+			if (!groups.get(i).isEmpty()) {
+				locks[i].lockReadOnly();
+			}
+		}
+	}
+
+	/**
+	 * Unlocks every shard locked by {@link #lockReadOnly(ArrayList)}.
+	 *
+	 * @param groups
+	 *            words to search for in each shard
+	 */
+	private void unlockReadOnly(ArrayList<ArrayList<String>> groups) {
+		for (int i = 0; i < shards.length; i++) {
+			if (!groups.get(i).isEmpty()) {
+				locks[i].unlockReadOnly();
+			}
+		}
+	}
+
+	/**
+	 * Finds every document that matches the search words, without sorting the
+	 * results. The shards of every word are locked for reading, in shard
+	 * order, until the search is done, and the terms each word matches are
+	 * admitted by the budget in dictionary order across the shards. Since the
+	 * shards share their document ids, the results of every shard are combined
+	 * as they are found.
+	 *
+	 * @param searchWords
+	 *            words to search for
+	 * @param exact
+	 *            true for exact matches, false for partial matches
+	 * @param budget
+	 *            budget that admits the terms to search
+	 * @return unsorted list of combined results
 	 */
 	@Override
-	public ArrayList<SearchResult> partialSearch(String[] searchWords) {
-		lock.lockReadOnly();
+	protected ArrayList<SearchResult> collect(String[] searchWords, boolean exact, QueryBudget budget) {
+		ArrayList<ArrayList<String>> groups = groupByShard(searchWords, !exact);
+		lockReadOnly(groups);
 		try {
-			return super.partialSearch(searchWords);
+			ArrayList<SearchResult> results = new ArrayList<>();
+			HashMap<Integer, SearchResult> resultMap = new HashMap<>();
+			for (String word : searchWords) {
+				MatchedTerms terms = new MatchedTerms(word, exact, groups);
+				while (terms.next() && budget.admit(terms.postings().size())) {
+					terms.shard().wordSearch(terms.term(), resultMap, results);
+				}
+			}
+			return results;
 		}
 		finally {
-			lock.unlockReadOnly();
+			unlockReadOnly(groups);
 		}
 	}
-	
-}
\ No newline at end of file
+
+	/**
+	 * Walks the terms a search word matches in every shard it was grouped
+	 * with, in dictionary order, like the sorted terms of a single index. The
+	 * shards must be locked for reading while the terms are walked.
+	 */
+	private class MatchedTerms {
+
+		private final String word;
+		private final boolean exact;
+
+		/**
+		 * Stores the terms of each shard from the word on, or null for shards
+		 * the word is not searched in, and the next matching term of each
+		 * shard, or null once a shard has no more.
+		 */
+		private final ArrayList<Iterator<Map.Entry<String, Integer>>> cursors;
+		private final ArrayList<Map.Entry<String, Integer>> heads;
+
+		/**
+		 * Stores the shard and id of the current term.
+		 */
+		private int shard;
+		private int term;
+
+		/**
+		 * Initializes the walk before the first matching term.
+		 *
+		 * @param word
+		 *            word to match
+		 * @param exact
+		 *            true to only match the word itself, false to match every
+		 *            word starting with it
+		 * @param groups
+		 *            words to search for in each shard
+		 */
+		public MatchedTerms(String word, boolean exact, ArrayList<ArrayList<String>> groups) {
+			this.word = word;
+			this.exact = exact;
+			this.cursors = new ArrayList<>();
+			this.heads = new ArrayList<>();
+			for (int i = 0; i < shards.length; i++) {
+				cursors.add(groups.get(i).contains(word) ? shards[i].termsFrom(word) : null);
+				heads.add(null);
+				advance(i);
+			}
+			this.shard = -1;
+			this.term = -1;
+		}
+
+		/**
+		 * Moves the next matching term of a shard into its head.
+		 *
+		 * @param i
+		 *            index of the shard
+		 */
+		private void advance(int i) {
+			Iterator<Map.Entry<String, Integer>> cursor = cursors.get(i);
+			Map.Entry<String, Integer> next = cursor != null && cursor.hasNext() ? cursor.next() : null;
+			if (next != null && !(exact ? next.getKey().equals(word) : next.getKey().startsWith(word))) {
+				next = null;
+			}
+			heads.set(i, next);
+		}
+
+		/**
+		 * Moves to the smallest matching term that has not been walked yet.
+		 *
+		 * @return true if there was one, false if every matching term was
+		 *         walked
+		 */
+		public boolean next() {
+			int smallest = -1;
+			for (int i = 0; i < heads.size(); i++) {
+				Map.Entry<String, Integer> head = heads.get(i);
+				if (head != null && (smallest < 0 || head.getKey().compareTo(heads.get(smallest).getKey()) < 0)) {
+					smallest = i;
+				}
+			}
+			if (smallest < 0) {
+				return false;
+			}
+
+			shard = smallest;
+			term = heads.get(smallest).getValue();
+			advance(smallest);
+			return true;
+		}
+
+		/**
+		 * Returns the shard of the current term.
+		 *
+		 * @return shard of the current term
+		 */
+		public InvertedIndex shard() {
+			return shards[shard];
+		}
+
+		/**
+		 * Returns the id of the current term in its shard.
+		 *
+		 * @return id of the current term
+		 */
+		public int term() {
+			return term;
+		}
+
+		/**
+		 * Returns the postings of the current term.
+		 *
+		 * @return postings of the current term
+		 */
+		public TermPostings postings() {
+			return shards[shard].termPostings(term);
+		}
+	}
+
+}
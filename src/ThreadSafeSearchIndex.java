@@ -1,11 +1,9 @@
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.List;
 import java.util.TreeMap;
+import java.util.concurrent.Semaphore;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -16,30 +14,128 @@ public class ThreadSafeSearchIndex implements SearchIndexInterface {
 	 * Stores a mapping of words to an ArrayList of SearchResults.
 	 */
 	private final TreeMap<String, ArrayList<SearchResult>> index;
-	private final ThreadSafeInvertedIndex invertedIndex;
+	private final InvertedIndexInterface invertedIndex;
 	private final WorkQueue queue;
+	private final int limit;
+	private final QueryMode mode;
 	private final ReadWriteLock lock;
 	Logger logger = LogManager.getLogger();
 
 	/**
 	 * Initializes the index.
 	 */
-	public ThreadSafeSearchIndex(ThreadSafeInvertedIndex invertedIndex, WorkQueue queue) {
+	public ThreadSafeSearchIndex(InvertedIndexInterface invertedIndex, WorkQueue queue) {
+		this(invertedIndex, queue, 0);
+	}
+
+	/**
+	 * Initializes the index to keep only the best results of each query.
+	 *
+	 * @param invertedIndex
+	 *            index to search through
+	 * @param queue
+	 *            work queue to search with
+	 * @param limit
+	 *            maximum number of results to keep for each query, or 0 or less for all of them
+	 */
+	public ThreadSafeSearchIndex(InvertedIndexInterface invertedIndex, WorkQueue queue, int limit) {
+		this(invertedIndex, queue, limit, QueryMode.ANY);
+	}
+
+	/**
+	 * Initializes the index to keep only the best results of each query, and to match the words of each query
+	 * the specified way.
+	 *
+	 * @param invertedIndex
+	 *            index to search through
+	 * @param queue
+	 *            work queue to search with
+	 * @param limit
+	 *            maximum number of results to keep for each query, or 0 or less for all of them
+	 * @param mode
+	 *            how the words of each query are matched
+	 */
+	public ThreadSafeSearchIndex(InvertedIndexInterface invertedIndex, WorkQueue queue, int limit, QueryMode mode) {
 		index = new TreeMap<>();
 		this.invertedIndex = invertedIndex; 
 		this.queue = queue;
+		this.limit = limit;
+		this.mode = mode;
 		lock = new ReadWriteLock();
 	}
 	
+	/**
+	 * Adds words from given file to index and an ArrayList of its SearchResults. The distinct queries are read
+	 * in sorted order by a {@link QueryReader}, and split into batches of {@link SearchIndex#STREAM_BATCH}, which
+	 * are searched in parallel. Reading waits while a few batches per worker are being searched, so the queries
+	 * are never all held at once, but the results of every query are kept until {@link #toJSON(Path)}; use
+	 * {@link #streamFromFile(Path, Boolean, Path)} to write them without keeping them.
+	 *
+	 * @param path
+	 *            path to read words from
+	 * @param exact
+	 *            true if searching for exact matches, false to search for partial matches
+	 */
 	@Override
 	public void addFromFile(Path path, Boolean exact) throws IOException {
-		try (BufferedReader br = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
-			String line;
-			while ((line = br.readLine()) != null) {
-				queue.execute(new Task(line, exact));
+		submit(path, exact, null);
+	}
+
+	/**
+	 * Searches the queries in batches of {@link SearchIndex#STREAM_BATCH}, which are read and queued in order so
+	 * the earliest unwritten query is always being searched. Each batch is written as soon as every batch before it
+	 * is written. Reading waits while a few batches per worker are being searched, so only those batches of queries
+	 * and results are held in memory, however long the query file is.
+	 *
+	 * @param path
+	 *            path to read words from
+	 * @param exact
+	 *            true if searching for exact matches, false to search for partial matches
+	 * @param output
+	 *            path to write results to
+	 */
+	@Override
+	public void streamFromFile(Path path, Boolean exact, Path output) throws IOException {
+		int batches = 2 * Math.max(1, queue.size());
+		try (ResultsWriter writer = new ResultsWriter(output, batches * SearchIndex.STREAM_BATCH)) {
+			submit(path, exact, writer);
+		}
+	}
+
+	/**
+	 * Reads the queries in batches and queues a task to search each of them, waiting for room before reading the
+	 * next batch while two batches per worker are queued or being searched. Since the writer holds at least that
+	 * many batches, no worker waits for the writer.
+	 *
+	 * @param path
+	 *            path to read words from
+	 * @param exact
+	 *            true if searching for exact matches, false to search for partial matches
+	 * @param writer
+	 *            writer to write results to, or null to add them to the index
+	 * @throws IOException
+	 *             if the queries cannot be read
+	 */
+	private void submit(Path path, boolean exact, ResultsWriter writer) throws IOException {
+		Semaphore room = new Semaphore(2 * Math.max(1, queue.size()));
+		try (QueryReader reader = new QueryReader(path, mode == QueryMode.PHRASE)) {
+			int first = 0;
+			while (true) {
+				// each batch gets its own lists, since they are searched after the next batch is read
+				ArrayList<String> keys = new ArrayList<>();
+				ArrayList<String[]> words = new ArrayList<>();
+				room.acquireUninterruptibly();
+				if (!SearchIndex.nextBatch(reader, keys, words)) {
+					room.release();
+					break;
+				}
+				queue.execute(new Task(keys, words, exact, writer, first, room));
+				first += keys.size();
 			}
 		}
-		queue.finish();
+		finally {
+			queue.finish();
+		}
 	}
 	
 	@Override
@@ -50,34 +146,71 @@ public class ThreadSafeSearchIndex implements SearchIndexInterface {
 	}
 	
 	/*
-	 * Runnable task that finds and adds search results to a SearchIndex
+	 * Runnable task that searches a batch of queries and adds their results to a SearchIndex, or writes them if
+	 * streaming
 	 */
 	private class Task implements Runnable {
 		
-		private String line;
+		private List<String> queries;
+		private List<String[]> words;
 		private boolean exact;
+		private ResultsWriter writer;
+		private int first;
+		private Semaphore room;
 		
-		public Task(String line, boolean exact) {
-			this.line = line;
+		public Task(List<String> queries, List<String[]> words, boolean exact, ResultsWriter writer, int first,
+				Semaphore room) {
+			this.queries = queries;
+			this.words = words;
 			this.exact = exact;
+			this.writer = writer;
+			this.first = first;
+			this.room = room;
 		}
 		
 		@Override
 		public void run() {
-			logger.debug("Starting {}", line);
-			String[] words = WordParser.parseWords(line);
-			if (words.length > 0) {
-				Arrays.sort(words);
-				ArrayList<SearchResult> results = exact ? invertedIndex.exactSearch(words) : invertedIndex.partialSearch(words);
-				String stringwords = String.join(" ", words);
-				lock.lockReadWrite();
-				index.put(stringwords, results);
-				lock.unlockReadWrite();
+			try {
+				search();
+			}
+			finally {
+				room.release();
 			}
-			logger.debug("Finished {}", line);
+		}
+		
+		/**
+		 * Searches the batch, and writes its results or adds them to the index.
+		 */
+		private void search() {
+			logger.debug("Starting {} queries from {}", queries.size(), queries.get(0));
+			ArrayList<ArrayList<SearchResult>> results = null;
+			try {
+				results = SearchIndex.searchAll(invertedIndex, words, exact, mode, limit);
+			}
+			finally {
+				// every query is handed to the writer even if the search failed, so the queries after it are not stuck
+				if (writer != null) {
+					for (int i = 0; i < queries.size(); i++) {
+						if (results == null) {
+							writer.fail(first + i, queries.get(i));
+						}
+						else {
+							writer.put(first + i, queries.get(i), results.get(i));
+						}
+					}
+				}
+			}
+			if (writer != null) {
+				logger.debug("Streamed {} queries from {}", queries.size(), queries.get(0));
+				return;
+			}
+			lock.lockReadWrite();
+			for (int i = 0; i < queries.size(); i++) {
+				index.put(queries.get(i), results.get(i));
+			}
+			lock.unlockReadWrite();
+			logger.debug("Finished {} queries from {}", queries.size(), queries.get(0));
 		}
 	}
 
-	
-
 }
@@ -1,10 +1,25 @@
+import java.lang.reflect.Method;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.HashSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+/**
+ * Crawls web pages from a seed and adds their words to an index. By default
+ * every page is fetched, cleaned and indexed by one task on a work queue of
+ * {@link WorkQueue#DEFAULT} threads, so only that many pages are fetched at
+ * once. With a number of fetchers, pages are fetched on a separate executor
+ * instead, which uses a virtual thread per fetch when the running Java
+ * supports them, and a pool of that many threads otherwise. Up to that many
+ * fetches wait on their sockets at once, while cleaning and indexing the
+ * fetched pages stays on a work queue with one thread per core.
+ */
 public class WebCrawler {
 	private final ThreadSafeInvertedIndex index;
 	private final WorkQueue queue;
@@ -12,18 +27,48 @@ public class WebCrawler {
 	private WebPageSnippets snippets;
 	private int max;
 	Logger logger = LogManager.getLogger();
-	
+
+	/**
+	 * Stores the largest number of fetches at once, or 0 to fetch on the work
+	 * queue, and the fetches that may still start while crawling.
+	 */
+	private final int fetchers;
+	private Semaphore permits;
+
+	/**
+	 * Stores the executor pages are fetched on while crawling, and the number
+	 * of pages that are being fetched or indexed.
+	 */
+	private ExecutorService fetcher;
+	private int pending;
+
 	public WebCrawler(ThreadSafeInvertedIndex index, WebPageSnippets snippets) {
+		this(index, snippets, 0);
+	}
+
+	/**
+	 * Initializes a crawler that fetches pages separately from indexing them.
+	 *
+	 * @param index
+	 * 			index to add the words of the pages to
+	 * @param snippets
+	 * 			snippets to add the text of the pages to
+	 * @param fetchers
+	 * 			largest number of pages to fetch at once, or 0 or less to fetch
+	 * 			each page on the same work queue that indexes it
+	 */
+	public WebCrawler(ThreadSafeInvertedIndex index, WebPageSnippets snippets, int fetchers) {
 		this.index = index;
 		this.snippets = snippets;
-		queue = new WorkQueue();
+		this.fetchers = Math.max(0, fetchers);
+		queue = this.fetchers > 0 ? new WorkQueue(Runtime.getRuntime().availableProcessors()) : new WorkQueue();
 		urls = new HashSet<>();
 		max = 50;
 	}
-	
+
 	/**
 	 * Starts the web crawl process
-	 * 
+	 *
 	 * @param seed
 	 * 			URL to starts the crawl with
 	 * @param limit
@@ -32,25 +77,145 @@ public class WebCrawler {
 	public void crawl(URL seed, int limit) {
 		max = limit;
 		urls.add(seed);
-		
+
+		if (fetchers > 0) {
+			fetcher = newFetcher(fetchers);
+			permits = new Semaphore(fetchers);
+			fetch(seed);
+			synchronized (this) {
+				while (pending > 0) {
+					try {
+						this.wait();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						break;
+					}
+				}
+			}
+			fetcher.shutdown();
+			return;
+		}
+
 		queue.execute(new Task(seed));
-		
+
 		queue.finish();
-		
+
+	}
+
+	/**
+	 * Returns the work queue pages are indexed on, which also fetches them if
+	 * there are no fetchers.
+	 *
+	 * @return work queue of the crawler
+	 */
+	public WorkQueue queue() {
+		return queue;
 	}
-	
+
+	/**
+	 * Returns an executor that runs every task on a new virtual thread, or
+	 * on a fixed pool of daemon threads if the running Java has no virtual
+	 * threads. The executor is looked up by reflection, so the crawler still
+	 * builds and runs on older versions.
+	 *
+	 * @param threads
+	 * 			number of threads of the pool if there are no virtual threads
+	 * @return executor to fetch pages on
+	 */
+	private ExecutorService newFetcher(int threads) {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			ExecutorService executor = (ExecutorService) factory.invoke(null);
+			logger.debug("Fetching up to {} pages at once on virtual threads", threads);
+			return executor;
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			logger.debug("Fetching up to {} pages at once on a pool of threads", threads);
+			return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "fetcher");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+	}
+
+	/**
+	 * Starts fetching a page, which is indexed on the work queue once fetched.
+	 *
+	 * @param url
+	 * 			URL of the page
+	 */
+	private void fetch(URL url) {
+		synchronized (this) {
+			pending++;
+		}
+		fetcher.execute(new FetchTask(url));
+	}
+
+	/**
+	 * Counts a page that was fetched and indexed, or could not be, and wakes
+	 * up the crawl once there is none left.
+	 */
+	private synchronized void finished() {
+		pending--;
+		if (pending == 0) {
+			this.notifyAll();
+		}
+	}
+
+	/**
+	 * Adds the links of a fetched page that were not seen yet to the crawl, up
+	 * to its limit, then adds the words of the page to the index.
+	 *
+	 * @param seed
+	 * 			URL of the page
+	 * @param html
+	 * 			HTML of the page
+	 */
+	private void process(URL seed, String html) {
+		try {
+			for (URL url : LinkParser.listLinks(seed, html)) {
+				synchronized (urls) {
+					if (urls.size() >= max) {
+						break;
+					}
+					if (urls.add(url)) {
+						if (fetchers > 0) {
+							fetch(url);
+						}
+						else {
+							queue.execute(new Task(url));
+						}
+					}
+				}
+			}
+		} catch (MalformedURLException e) {
+			logger.debug("Could not fetch links for {}", seed);
+		}
+
+		html = HTMLCleaner.stripHTML(html);
+		String link = seed.toString();
+		snippets.add(link, html);
+		String[] words = WordParser.parseWords(html);
+		InvertedIndex local = new InvertedIndex();
+		local.addAll(words, link);
+		index.addAll(local);
+	}
+
 	/*
-	 * Runnable task that goes through each URL in given seed and assign them each a task, which 
+	 * Runnable task that goes through each URL in given seed and assign them each a task, which
 	 * adds each word from seed to InvertedIndex
 	 */
 	public class Task implements Runnable {
 
 		URL seed;
-		
+
 		public Task(URL seed) {
 			this.seed = seed;
 		}
-		
+
 		@Override
 		public void run() {
 			logger.debug("Finding links from {}", seed);
@@ -58,33 +223,69 @@ public class WebCrawler {
 			if (html == null) {
 				return;
 			}
+			process(seed, html);
+		}
+
+	}
+
+	/*
+	 * Runnable task that fetches a page and hands it to the work queue to be indexed, so the thread it runs on
+	 * only ever waits on the network
+	 */
+	private class FetchTask implements Runnable {
+
+		private final URL seed;
+
+		public FetchTask(URL seed) {
+			this.seed = seed;
+		}
+
+		@Override
+		public void run() {
+			String html = null;
 			try {
-				for (URL url : LinkParser.listLinks(seed, html)) {
-					synchronized (urls) {
-						if (urls.size() >= max) {
-							break;
-						}
-						if (urls.add(url)) {
-							queue.execute(new Task(url));
-						}
-					}
+				permits.acquire();
+				try {
+					logger.debug("Fetching {}", seed);
+					html = LinkParser.fetchHTML(seed);
+				} finally {
+					permits.release();
 				}
-			} catch (MalformedURLException e) {
-				logger.debug("Could not fetch links for {}", seed);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (RuntimeException e) {
+				logger.debug("Could not fetch {}", seed, e);
+			}
+
+			if (html == null) {
+				finished();
+				return;
 			}
-			
-			html = HTMLCleaner.stripHTML(html);
-			snippets.add(seed.toString(), html);
-			String[] words = WordParser.parseWords(html);
-			InvertedIndex local = new InvertedIndex();
-			local.addAll(words, seed.toString());
-			index.addAll(local);
-			
+			queue.execute(new IndexTask(seed, html));
 		}
-		
 	}
-	
-	
-	
-	
+
+	/*
+	 * Runnable task that adds the links and words of a fetched page
+	 */
+	private class IndexTask implements Runnable {
+
+		private final URL seed;
+		private final String html;
+
+		public IndexTask(URL seed, String html) {
+			this.seed = seed;
+			this.html = html;
+		}
+
+		@Override
+		public void run() {
+			try {
+				process(seed, html);
+			} finally {
+				finished();
+			}
+		}
+	}
+
 }
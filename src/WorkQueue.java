@@ -1,16 +1,45 @@
-import java.util.LinkedList;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 /**
- * A simple work queue implementation based on the IBM developerWorks article by
- * Brian Goetz. It is up to the user of this class to keep track of whether
- * there is any pending work remaining.
+ * A work queue in which every worker thread has its own deque of work, based
+ * on the work-stealing scheduler of the Cilk and Java fork/join frameworks.
+ * Work requested by a worker thread, such as the links found by a crawl task,
+ * is pushed onto the deque of that worker, which runs its newest work first.
+ * Work requested from any other thread is added to a shared inbox and is taken
+ * in the order it was requested, so callers that queue work in order, such as
+ * streamed searches, still have the earliest work started first. A worker
+ * whose deque and the inbox are empty steals the oldest work from the deques
+ * of the other workers, and only waits once there is no work anywhere.
+ *
+ * None of the deques or the inbox are locked, so workers only contend with
+ * each other when they steal from the same deque. It is up to the user of this
+ * class to keep track of whether there is any pending work remaining.
+ *
+ * The inbox may be given a capacity, so that a thread that requests work
+ * faster than the workers finish it, such as one reading a large input, does
+ * not queue more than that many requests. Once the inbox is full, the
+ * requesting thread either waits for room or runs the request itself, as
+ * chosen by the {@link Overflow} of the queue. The deques of the workers are
+ * never bounded, since a worker that waited for room could leave no worker to
+ * make it.
+ *
+ * The queue keeps statistics of its work: histograms of how long each work
+ * request waited to be started and how long it ran, the number of requests
+ * pending, running, completed and failed, and how busy the workers were. Each
+ * worker records into its own histograms, which are only added together when
+ * they are read, so the statistics add no contention between workers.
  *
  * @see <a href=
  *      "http://www.ibm.com/developerworks/library/j-jtp0730/index.html">Java
  *      Theory and Practice: Thread Pools and Work Queues</a>
+ * @see <a href="http://gee.cs.oswego.edu/dl/papers/fj.pdf">A Java Fork/Join
+ *      Framework</a>
  */
 public class WorkQueue {
 
@@ -20,17 +49,73 @@ public class WorkQueue {
 	 */
 	private final PoolWorker[] workers;
 
-	/** Queue of pending work requests. */
-	private final LinkedList<Runnable> queue;
+	/** Queue of work requested from threads that are not workers. */
+	private final ConcurrentLinkedQueue<Job> inbox;
 
 	/** Used to signal the queue should be shutdown. */
 	private volatile boolean shutdown;
 
 	/** The default number of threads to use when not specified. */
 	public static final int DEFAULT = 5;
-	
-	private int pending;
-	
+
+	/** The number of times a worker yields and looks for work again before it waits. */
+	private static final int SPINS = 4;
+
+	/**
+	 * What a thread that is not a worker does when it requests work while the
+	 * inbox is full.
+	 */
+	public static enum Overflow {
+		/** Waits until a worker takes work from the inbox. */
+		BLOCK,
+		/** Runs the work itself, before requesting any more. */
+		CALLER_RUNS
+	}
+
+	/**
+	 * Stores the largest number of requests in the inbox, or 0 or less for no
+	 * limit, and what happens to requests once it is full.
+	 */
+	private final int capacity;
+	private final Overflow overflow;
+
+	/**
+	 * Stores the number of requests in the inbox, or about to be added to it,
+	 * and the number of threads that are about to wait, or are waiting, on
+	 * {@link #space} for room in it.
+	 */
+	private final AtomicInteger queued;
+	private final AtomicInteger blocked;
+
+	/** Monitor that requesting threads wait on while the inbox is full. */
+	private final Object space;
+
+	/** The number of work requests that have not finished yet. */
+	private final AtomicInteger pending;
+
+	/**
+	 * The number of workers that found no work and are about to wait, or are
+	 * waiting, on {@link #idle}.
+	 */
+	private final AtomicInteger sleeping;
+
+	/** Monitors that idle workers and callers of {@link #finish()} wait on. */
+	private final Object idle;
+	private final Object done;
+
+	/**
+	 * Stores the most work requests that were ever pending at once, and the
+	 * number that failed with an exception.
+	 */
+	private final AtomicInteger peakPending;
+	private final AtomicLong failed;
+
+	/** The number of work requests that were run by the thread that requested them. */
+	private final AtomicLong callerRuns;
+
+	/** The value of {@link System#nanoTime()} when the workers were started. */
+	private final long started;
+
 	Logger logger = LogManager.getLogger();
 
 	/**
@@ -49,40 +134,173 @@ public class WorkQueue {
 	 *            number of worker threads; should be greater than 1
 	 */
 	public WorkQueue(int threads) {
-		this.queue = new LinkedList<>();
+		this(threads, 0, Overflow.BLOCK);
+	}
+
+	/**
+	 * Starts a work queue with the specified number of threads, whose inbox
+	 * holds at most the specified number of requests.
+	 *
+	 * @param threads
+	 *            number of worker threads; should be greater than 1
+	 * @param capacity
+	 *            largest number of requests in the inbox, or 0 or less for no
+	 *            limit
+	 * @param overflow
+	 *            what a thread that requests work does while the inbox is full
+	 */
+	public WorkQueue(int threads, int capacity, Overflow overflow) {
+		this.inbox = new ConcurrentLinkedQueue<>();
+		this.capacity = capacity;
+		this.overflow = overflow;
+		this.queued = new AtomicInteger();
+		this.blocked = new AtomicInteger();
+		this.space = new Object();
 		this.workers = new PoolWorker[threads];
 
 		this.shutdown = false;
-		
-		this.pending = 0;
 
-		// start the threads so they are waiting in the background
+		this.pending = new AtomicInteger();
+		this.sleeping = new AtomicInteger();
+		this.idle = new Object();
+		this.done = new Object();
+
+		this.peakPending = new AtomicInteger();
+		this.failed = new AtomicLong();
+		this.callerRuns = new AtomicLong();
+		this.started = System.nanoTime();
+
+		// create every worker before starting any, since each steals from the others
+		for (int i = 0; i < threads; i++) {
+			workers[i] = new PoolWorker(i);
+		}
 		for (int i = 0; i < threads; i++) {
-			workers[i] = new PoolWorker();
 			workers[i].start();
 		}
 	}
 
 	/**
 	 * Adds a work request to the queue. A thread will process this request when
-	 * available.
+	 * available. Requests from the worker threads of this queue are pushed onto
+	 * the deque of that worker, and requests from any other thread are added to
+	 * the inbox. If the inbox is full, this waits for room or runs the request
+	 * before returning, as chosen by the {@link Overflow} of the queue.
 	 *
 	 * @param r
 	 *            work request (in the form of a {@link Runnable} object)
 	 */
 	public void execute(Runnable r) {
-		synchronized (queue) {
-			queue.addLast(r);
-			pending++;
-			queue.notifyAll();
-		}
-	}
-	
-	private void decrememntPending() {
-		synchronized (queue) {
-			pending--;
-			if (pending == 0) {
-				queue.notifyAll();
+		Thread current = Thread.currentThread();
+		boolean worker = current instanceof PoolWorker && ((PoolWorker) current).owner() == this;
+		if (!worker && capacity > 0 && !reserve()) {
+			runHere(r);
+			return;
+		}
+
+		int count = pending.incrementAndGet();
+		int peak = peakPending.get();
+		while (count > peak && !peakPending.compareAndSet(peak, count)) {
+			peak = peakPending.get();
+		}
+
+		Job job = new Job(r, System.nanoTime());
+		if (worker) {
+			((PoolWorker) current).deque.addLast(job);
+		}
+		else {
+			inbox.add(job);
+		}
+
+		// the request is visible before the count is read, so a worker that is
+		// not counted yet will find it when it looks again before waiting
+		if (sleeping.get() > 0) {
+			synchronized (idle) {
+				idle.notify();
+			}
+		}
+	}
+
+	/**
+	 * Takes room in the inbox for a request, waiting for room if the queue
+	 * blocks while it is full. Once the queue is shutdown, room is always
+	 * given, since no worker would make it.
+	 *
+	 * @return true if there is room for the request, or false if the caller
+	 *         must run it instead
+	 */
+	private boolean reserve() {
+		while (true) {
+			int count = queued.get();
+			if (count < capacity || shutdown) {
+				if (queued.compareAndSet(count, count + 1)) {
+					return true;
+				}
+				continue;
+			}
+			if (overflow == Overflow.CALLER_RUNS) {
+				return false;
+			}
+
+			synchronized (space) {
+				blocked.incrementAndGet();
+				try {
+					// counted first, so a worker that takes a request after this check will wake this thread
+					if (queued.get() >= capacity && !shutdown) {
+						space.wait();
+					}
+				}
+				catch (InterruptedException e) {
+					// still gets the work done, without waiting
+					Thread.currentThread().interrupt();
+					return false;
+				}
+				finally {
+					blocked.decrementAndGet();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gives back the room of a request taken from the inbox, and wakes up a
+	 * thread waiting for it.
+	 */
+	private void release() {
+		queued.decrementAndGet();
+		if (blocked.get() > 0) {
+			synchronized (space) {
+				space.notify();
+			}
+		}
+	}
+
+	/**
+	 * Runs a request on the thread that requested it, because the inbox is
+	 * full.
+	 *
+	 * @param r
+	 *            work request
+	 */
+	private void runHere(Runnable r) {
+		callerRuns.incrementAndGet();
+		try {
+			r.run();
+		}
+		catch (RuntimeException ex) {
+			failed.incrementAndGet();
+			System.err.println("Warning: Work queue encountered an " + "exception while running.");
+			logger.debug("Work queue encountered a runtime exception", ex);
+		}
+	}
+
+	/**
+	 * Counts a finished work request, and wakes up the callers of
+	 * {@link #finish()} once there is none left.
+	 */
+	private void decrementPending() {
+		if (pending.decrementAndGet() == 0) {
+			synchronized (done) {
+				done.notifyAll();
 			}
 		}
 	}
@@ -91,10 +309,10 @@ public class WorkQueue {
 	 * Waits for all pending work to be finished.
 	 */
 	public void finish() {
-		synchronized (queue) {
-			while (pending > 0) {
+		synchronized (done) {
+			while (pending.get() > 0) {
 				try {
-					queue.wait();
+					done.wait();
 				} catch (InterruptedException e) {
 					Thread.currentThread().interrupt();
 				}
@@ -110,8 +328,11 @@ public class WorkQueue {
 		// safe to do unsynchronized due to volatile keyword
 		shutdown = true;
 
-		synchronized (queue) {
-			queue.notifyAll();
+		synchronized (idle) {
+			idle.notifyAll();
+		}
+		synchronized (space) {
+			space.notifyAll();
 		}
 	}
 
@@ -125,51 +346,284 @@ public class WorkQueue {
 	}
 
 	/**
-	 * Waits until work is available in the work queue. When work is found, will
-	 * remove the work from the queue and run it. If a shutdown is detected,
-	 * will exit instead of grabbing new work from the queue. These threads will
-	 * continue running in the background until a shutdown is requested.
+	 * Returns how long each work request waited from being requested until a
+	 * worker started it.
+	 *
+	 * @return histogram of waiting times
+	 */
+	public LatencyHistogram waitTimes() {
+		LatencyHistogram waits = new LatencyHistogram();
+		for (PoolWorker worker : workers) {
+			waits.add(worker.waits);
+		}
+		return waits;
+	}
+
+	/**
+	 * Returns how long each work request ran for, including the ones that
+	 * failed.
+	 *
+	 * @return histogram of running times
+	 */
+	public LatencyHistogram runTimes() {
+		LatencyHistogram runs = new LatencyHistogram();
+		for (PoolWorker worker : workers) {
+			runs.add(worker.runs);
+		}
+		return runs;
+	}
+
+	/**
+	 * Returns the number of work requests that are waiting to be started or
+	 * running.
+	 *
+	 * @return number of pending requests
+	 */
+	public int pending() {
+		return pending.get();
+	}
+
+	/**
+	 * Returns the most work requests that were ever pending at once.
+	 *
+	 * @return largest number of pending requests
+	 */
+	public int peakPending() {
+		return peakPending.get();
+	}
+
+	/**
+	 * Returns the number of work requests that are running now.
+	 *
+	 * @return number of running requests
+	 */
+	public int running() {
+		int running = 0;
+		for (PoolWorker worker : workers) {
+			running += worker.running.get();
+		}
+		return running;
+	}
+
+	/**
+	 * Returns the number of work requests that were run by the thread that
+	 * requested them, because the inbox was full.
+	 *
+	 * @return number of requests run by callers
+	 */
+	public long callerRuns() {
+		return callerRuns.get();
+	}
+
+	/**
+	 * Returns the number of work requests that ran without an exception,
+	 * including the ones run by callers.
+	 *
+	 * @return number of completed requests
+	 */
+	public long completed() {
+		long finished = callerRuns.get();
+		for (PoolWorker worker : workers) {
+			finished += worker.runs.count();
+		}
+		return Math.max(0, finished - failed.get());
+	}
+
+	/**
+	 * Returns the number of work requests that failed with an exception.
+	 *
+	 * @return number of failed requests
+	 */
+	public long failed() {
+		return failed.get();
+	}
+
+	/**
+	 * Returns the share of the time since the queue was started that the
+	 * workers spent running work, counting only finished work.
+	 *
+	 * @return utilization from 0 to 1
+	 */
+	public double utilization() {
+		long elapsed = System.nanoTime() - started;
+		long busy = 0;
+		for (PoolWorker worker : workers) {
+			busy += worker.runs.total();
+		}
+		return elapsed <= 0 ? 0 : Math.min(1, (double) busy / elapsed / workers.length);
+	}
+
+	/**
+	 * Returns a summary of the statistics of the queue.
+	 */
+	@Override
+	public String toString() {
+		return String.format("workers: %d, utilization: %.1f%%, pending: %d, peak pending: %d, running: %d, "
+				+ "completed: %d, failed: %d, run by callers: %d, wait: [%s], run: [%s]", workers.length,
+				100 * utilization(), pending(), peakPending(), running(), completed(), failed(), callerRuns(),
+				waitTimes(), runTimes());
+	}
+
+	/**
+	 * Returns whether any work is waiting in the inbox or a deque.
+	 *
+	 * @return true if there is work to take
+	 */
+	private boolean hasWork() {
+		if (!inbox.isEmpty()) {
+			return true;
+		}
+		for (PoolWorker worker : workers) {
+			if (!worker.deque.isEmpty()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Takes work from its own deque first, then from the inbox, and then steals
+	 * from the other workers in turn. Waits until work is requested whenever
+	 * none is found. If a shutdown is detected, will exit instead of grabbing
+	 * new work. These threads will continue running in the background until a
+	 * shutdown is requested.
 	 */
 	private class PoolWorker extends Thread {
 
-		@Override
-		public void run() {
-			Runnable r = null;
-
-			while (true) {
-				synchronized (queue) {
-					while (queue.isEmpty() && !shutdown) {
-						try {
-							queue.wait();
-						}
-						catch (InterruptedException ex) {
-							System.err.println("Warning: Work queue interrupted.");
-							Thread.currentThread().interrupt();
-						}
-					}
+		/** The work requested by this worker, with the newest work last. */
+		private final ConcurrentLinkedDeque<Job> deque;
+
+		/** The position of this worker in the pool. */
+		private final int index;
+
+		/**
+		 * Stores how long the work this worker started waited and ran, and
+		 * whether it is running work now.
+		 */
+		private final LatencyHistogram waits;
+		private final LatencyHistogram runs;
+		private final AtomicInteger running;
+
+		public PoolWorker(int index) {
+			this.deque = new ConcurrentLinkedDeque<>();
+			this.index = index;
+			this.waits = new LatencyHistogram();
+			this.runs = new LatencyHistogram();
+			this.running = new AtomicInteger();
+		}
+
+		/**
+		 * Returns the work queue this worker belongs to.
+		 *
+		 * @return work queue
+		 */
+		public WorkQueue owner() {
+			return WorkQueue.this;
+		}
+
+		/**
+		 * Takes the next work request for this worker.
+		 *
+		 * @return work request, or null if there is none
+		 */
+		private Job take() {
+			Job job = deque.pollLast();
+			if (job != null) {
+				return job;
+			}
+			job = inbox.poll();
+			if (job != null) {
+				if (capacity > 0) {
+					release();
+				}
+				return job;
+			}
+			// steal the oldest work, which is the furthest from what its owner is working on
+			for (int i = 1; i < workers.length; i++) {
+				job = workers[(index + i) % workers.length].deque.pollFirst();
+				if (job != null) {
+					return job;
+				}
+			}
+			return null;
+		}
 
-					// exit while for one of two reasons:
-					// (a) queue has work, or (b) shutdown has been called
+		/**
+		 * Waits until work may have been requested, unless some was requested
+		 * after this worker last looked.
+		 */
+		private void await() {
+			synchronized (idle) {
+				sleeping.incrementAndGet();
+				try {
+					if (!shutdown && !hasWork()) {
+						idle.wait();
+					}
+				}
+				catch (InterruptedException ex) {
+					System.err.println("Warning: Work queue interrupted.");
+				}
+				finally {
+					sleeping.decrementAndGet();
+				}
+			}
+		}
 
-					if (shutdown) {
-						break;
+		@Override
+		public void run() {
+			int spins = 0;
+			// the time the last work finished, or 0 if the worker went looking for work since
+			long finished = 0;
+			while (!shutdown) {
+				Job job = take();
+				if (job == null) {
+					finished = 0;
+					// work usually arrives soon after a worker runs out, which is cheaper to wait for by yielding
+					if (spins++ < SPINS) {
+						Thread.yield();
 					}
 					else {
-						r = queue.removeFirst();
+						spins = 0;
+						await();
 					}
+					continue;
 				}
+				spins = 0;
 
+				// work taken right after other work starts when that work finished, which saves reading the clock
+				long start = finished != 0 ? Math.max(finished, job.queued) : System.nanoTime();
+				waits.record(start - job.queued);
+				// only this worker writes its state, so ordered stores are enough
+				running.lazySet(1);
 				try {
-					r.run();
+					job.task.run();
 				}
 				catch (RuntimeException ex) {
 					// catch runtime exceptions to avoid leaking threads
+					failed.incrementAndGet();
 					System.err.println("Warning: Work queue encountered an " + "exception while running.");
 					logger.debug("Work queue encountered a runtime exception", ex);
 				}
-				
-				decrememntPending();
+				finished = System.nanoTime();
+				runs.record(finished - start);
+				running.lazySet(0);
+
+				decrementPending();
 			}
 		}
 	}
+
+	/**
+	 * Work request with the time it was requested at.
+	 */
+	private static class Job {
+
+		private final Runnable task;
+		private final long queued;
+
+		public Job(Runnable task, long queued) {
+			this.task = task;
+			this.queued = queued;
+		}
+	}
 }